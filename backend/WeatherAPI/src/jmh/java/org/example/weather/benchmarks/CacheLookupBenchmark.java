@@ -0,0 +1,127 @@
+package org.example.weather.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.LocalWeatherCache;
+import org.example.weather.cache.LocationKeyResolver;
+import org.example.weather.cache.WeatherCache;
+import org.example.weather.cache.WeatherCodec;
+import org.example.weather.cache.WeatherRedisSerializer;
+import org.example.weather.models.WeatherData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of answering a cache lookup for a raw city query: normalizing and resolving the key, then reading the entry
+ * from the local tier, or from Redis with the local tier disabled. Redis is replaced by a stub that decodes the
+ * stored bytes of the entry on every read, so the Redis paths measure the codec and the reactive plumbing of
+ * {@link WeatherCache} without the network round trip.
+ *
+ * <p>Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args="CacheLookupBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheLookupBenchmark {
+
+    @Param({"LOCAL", "REDIS_JSON", "REDIS_BINARY"})
+    public String tier;
+
+    private LocationKeyResolver keyResolver;
+
+    private WeatherCache weatherCache;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        WeatherData data = objectMapper.readValue(
+                new ClassPathResource("fixtures/current-london.json").getInputStream(), WeatherData.class);
+        CachedWeather entry = CachedWeather.of(data, Duration.ofHours(1), Duration.ofHours(2));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        keyResolver = new LocationKeyResolver();
+
+        LocalWeatherCache localCache = new LocalWeatherCache();
+        ReflectionTestUtils.setField(localCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(localCache, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(localCache, "enabled", tier.equals("LOCAL"));
+        ReflectionTestUtils.setField(localCache, "maximumWeight", 1_000_000L);
+        ReflectionTestUtils.setField(localCache, "maxTtl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(localCache, "encodedResponses", true);
+        ReflectionTestUtils.invokeMethod(localCache, "init");
+        localCache.put("london", entry);
+
+        WeatherCodec codec = tier.equals("REDIS_BINARY") ? WeatherCodec.BINARY : WeatherCodec.JSON;
+        WeatherRedisSerializer serializer = new WeatherRedisSerializer(codec, objectMapper);
+        byte[] stored = serializer.serialize(entry);
+        weatherCache = new WeatherCache();
+        ReflectionTestUtils.setField(weatherCache, "redisTemplate", stubTemplate(serializer, stored));
+        ReflectionTestUtils.setField(weatherCache, "localCache", localCache);
+        ReflectionTestUtils.setField(weatherCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(weatherCache, "graceTtl", Duration.ofHours(6));
+        ReflectionTestUtils.invokeMethod(weatherCache, "initCache");
+    }
+
+    @Benchmark
+    public CachedWeather lookup() {
+        return weatherCache.lookup(keyResolver.resolve(keyResolver.normalize("  London "))).block();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ReactiveRedisTemplate<String, CachedWeather> stubTemplate(WeatherRedisSerializer serializer,
+                                                                            byte[] stored) {
+        ReactiveValueOperations<String, CachedWeather> valueOperations = (ReactiveValueOperations<String, CachedWeather>)
+                Proxy.newProxyInstance(CacheLookupBenchmark.class.getClassLoader(),
+                        new Class<?>[]{ReactiveValueOperations.class},
+                        (proxy, method, args) -> {
+                            if (method.getName().equals("get")) {
+                                return Mono.fromSupplier(() -> serializer.deserialize(stored));
+                            }
+                            throw new UnsupportedOperationException(method.getName());
+                        });
+        ReactiveRedisConnectionFactory connectionFactory = (ReactiveRedisConnectionFactory)
+                Proxy.newProxyInstance(CacheLookupBenchmark.class.getClassLoader(),
+                        new Class<?>[]{ReactiveRedisConnectionFactory.class},
+                        (proxy, method, args) -> {
+                            throw new UnsupportedOperationException(method.getName());
+                        });
+        RedisSerializationContext<String, CachedWeather> context = RedisSerializationContext
+                .<String, CachedWeather>newSerializationContext(new StringRedisSerializer())
+                .value(serializer)
+                .build();
+        return new ReactiveRedisTemplate<>(connectionFactory, context) {
+            @Override
+            public ReactiveValueOperations<String, CachedWeather> opsForValue() {
+                return valueOperations;
+            }
+        };
+    }
+}
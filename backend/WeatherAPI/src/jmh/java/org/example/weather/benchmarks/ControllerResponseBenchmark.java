@@ -0,0 +1,91 @@
+package org.example.weather.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.EncodedWeather;
+import org.example.weather.controllers.WeatherController;
+import org.example.weather.models.WeatherData;
+import org.example.weather.services.WeatherService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the response of {@code GET /getWeather/{city}} once the service has produced the cache entry:
+ * encoding the body (or reusing the body encoded by the local tier), the conditional request checks and the
+ * headers. {@code conditional} sends an {@code If-None-Match} that matches, so the 304 path is measured. The
+ * exchange is created per invocation, as the controller marks it when the request is not modified.
+ *
+ * <p>Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args="ControllerResponseBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ControllerResponseBenchmark {
+
+    @Param({"true", "false"})
+    public boolean preEncoded;
+
+    @Param({"false", "true"})
+    public boolean conditional;
+
+    private WeatherController controller;
+
+    private String eTag;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        WeatherData data = objectMapper.readValue(
+                new ClassPathResource("fixtures/current-london.json").getInputStream(), WeatherData.class);
+        CachedWeather entry = CachedWeather.of(data, Duration.ofHours(1), Duration.ofHours(2));
+        EncodedWeather encoded = EncodedWeather.encode(objectMapper, data);
+        if (preEncoded) {
+            entry.setEncoded(encoded);
+        }
+        eTag = "\"" + encoded.contentHash() + "\"";
+
+        WeatherService weatherService = new WeatherService() {
+            @Override
+            public Mono<CachedWeather> getCachedWeather(String city) {
+                return Mono.just(entry);
+            }
+        };
+        controller = new WeatherController();
+        ReflectionTestUtils.setField(controller, "weatherService", weatherService);
+        ReflectionTestUtils.setField(controller, "objectMapper", objectMapper);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> getWeather() {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/weatherAPI/v1/getWeather/London");
+        if (conditional) {
+            request.header(HttpHeaders.IF_NONE_MATCH, eTag);
+        }
+        return controller.getWeather("London", MockServerWebExchange.from(request)).block();
+    }
+}
@@ -0,0 +1,156 @@
+package org.example.weather.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AsyncAppender;
+import org.apache.logging.log4j.core.appender.OutputStreamAppender;
+import org.apache.logging.log4j.core.config.AppenderRef;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.example.weather.filters.CorrelationIdFilter;
+import org.example.weather.models.WeatherData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the log statements of a cache hit in {@code WeatherService}, in the logging modes of the
+ * application:
+ * <ul>
+ *     <li>{@code SYNC_CONCAT}: the former statements, concatenating their arguments and the whole
+ *     {@link WeatherData} at INFO, written by the calling thread;</li>
+ *     <li>{@code SYNC}: parameterized statements with the data at DEBUG, written by the calling thread
+ *     ({@code weather.logging.appender=Console});</li>
+ *     <li>{@code ASYNC}: the same statements handed to the {@code AsyncConsole} appender;</li>
+ *     <li>{@code ASYNC_SAMPLED}: as {@code ASYNC}, with the INFO logs of only 1% of the requests kept by the
+ *     {@code DynamicThresholdFilter}, as with {@code weather.logging.sample-rate=0.01}.</li>
+ * </ul>
+ * The appenders use the pattern and settings of {@code log4j2-spring.xml} but write to a null stream, so the
+ * results show the cost on the request thread without the console I/O, which only adds to the synchronous modes.
+ *
+ * <p>Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args="LoggingBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private static final String PATTERN =
+            "%d{HH:mm:ss.SSS} [%t] %-5level %logger{36} %equals{[%X{requestId}] }{[] }{}- %msg%n";
+
+    private static final String CITY = "London";
+
+    @Param({"SYNC_CONCAT", "SYNC", "ASYNC", "ASYNC_SAMPLED"})
+    public String mode;
+
+    private LoggerContext loggerContext;
+
+    private Logger logger;
+
+    private WeatherData data;
+
+    private double sampleRate;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        data = objectMapper.readValue(
+                new ClassPathResource("fixtures/current-london.json").getInputStream(), WeatherData.class);
+        sampleRate = mode.equals("ASYNC_SAMPLED") ? 0.01 : 1.0;
+
+        ConfigurationBuilder<BuiltConfiguration> builder = ConfigurationBuilderFactory.newConfigurationBuilder();
+        builder.setConfigurationName("LoggingBenchmark");
+        builder.setStatusLevel(Level.ERROR);
+        builder.add(builder.newFilter("DynamicThresholdFilter", Filter.Result.NEUTRAL, Filter.Result.DENY)
+                .addAttribute("key", CorrelationIdFilter.SAMPLED_KEY)
+                .addAttribute("defaultThreshold", Level.TRACE)
+                .addComponent(builder.newComponent("KeyValuePair")
+                        .addAttribute("key", "false")
+                        .addAttribute("value", "WARN")));
+        builder.add(builder.newRootLogger(Level.INFO));
+        loggerContext = new LoggerContext("LoggingBenchmark");
+        loggerContext.start(builder.build());
+
+        Configuration configuration = loggerContext.getConfiguration();
+        Appender sink = OutputStreamAppender.newBuilder()
+                .setName("Console")
+                .setTarget(OutputStream.nullOutputStream())
+                .setLayout(PatternLayout.newBuilder().withConfiguration(configuration).withPattern(PATTERN).build())
+                .build();
+        sink.start();
+        configuration.addAppender(sink);
+        Appender appender = sink;
+        if (mode.startsWith("ASYNC")) {
+            appender = AsyncAppender.newBuilder()
+                    .setName("AsyncConsole")
+                    .setAppenderRefs(new AppenderRef[]{AppenderRef.createAppenderRef("Console", null, null)})
+                    .setConfiguration(configuration)
+                    .setBufferSize(8192)
+                    .setBlocking(false)
+                    .build();
+            appender.start();
+            configuration.addAppender(appender);
+        }
+        configuration.getRootLogger().addAppender(appender, null, null);
+        loggerContext.updateLoggers();
+        logger = loggerContext.getLogger("org.example.weather.services.WeatherService");
+    }
+
+    @TearDown
+    public void tearDown() {
+        loggerContext.stop();
+    }
+
+    @Benchmark
+    public void cacheHit() {
+        ThreadContext.put(CorrelationIdFilter.REQUEST_ID_KEY, "2f50065934425a2a");
+        ThreadContext.put(CorrelationIdFilter.SAMPLED_KEY,
+                Boolean.toString(sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate));
+        try {
+            if (mode.equals("SYNC_CONCAT")) {
+                logger.info("Fetching weather data for: " + CITY);
+                logger.info("Returning cached weather data for city: " + CITY);
+                logger.info("Data : " + data);
+            } else {
+                logger.info("Fetching weather data for: {}", CITY);
+                logger.info("Returning cached weather data for city: {}", CITY);
+                logger.debug("Data : {}", this::getData);
+            }
+        } finally {
+            ThreadContext.remove(CorrelationIdFilter.REQUEST_ID_KEY);
+            ThreadContext.remove(CorrelationIdFilter.SAMPLED_KEY);
+        }
+    }
+
+    private WeatherData getData() {
+        return data;
+    }
+}
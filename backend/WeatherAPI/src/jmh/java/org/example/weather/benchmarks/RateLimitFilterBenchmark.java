@@ -0,0 +1,90 @@
+package org.example.weather.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.filters.RateLimitFilter;
+import org.example.weather.filters.RateLimitMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of {@link RateLimitFilter} with local buckets, against passing the same exchange straight to
+ * the rest of the chain. The limit is set high enough that no request is rejected, so both paths do the same work
+ * apart from the filter itself. {@code clients} is the number of distinct API keys the requests rotate through.
+ *
+ * <p>Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args="RateLimitFilterBenchmark -prof gc"}; add
+ * {@code -t 8} to measure contention on shared buckets.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimitFilterBenchmark {
+
+    @Param({"1", "10000"})
+    public int clients;
+
+    private final WebFilterChain chain = exchange -> Mono.empty();
+
+    private RateLimitFilter filter;
+
+    private MockServerWebExchange[] exchanges;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        filter = new RateLimitFilter();
+        ReflectionTestUtils.setField(filter, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "mode", RateLimitMode.LOCAL);
+        ReflectionTestUtils.setField(filter, "capacity", 1_000_000_000L);
+        ReflectionTestUtils.setField(filter, "period", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(filter, "maxKeys", 100_000L);
+        ReflectionTestUtils.setField(filter, "apiKeyHeader", "X-API-Key");
+        ReflectionTestUtils.setField(filter, "pathPrefix", "/weatherAPI/");
+        ReflectionTestUtils.invokeMethod(filter, "init");
+
+        exchanges = new MockServerWebExchange[clients];
+        for (int i = 0; i < clients; i++) {
+            exchanges[i] = MockServerWebExchange.from(MockServerHttpRequest.get("/weatherAPI/v1/getWeather/London")
+                    .remoteAddress(new InetSocketAddress("10.0.0.1", 40000))
+                    .header("X-API-Key", "client-" + i));
+        }
+    }
+
+    @Benchmark
+    public Void withoutFilter() {
+        return chain.filter(nextExchange()).block();
+    }
+
+    @Benchmark
+    public Void withFilter() {
+        return filter.filter(nextExchange(), chain).block();
+    }
+
+    private MockServerWebExchange nextExchange() {
+        MockServerWebExchange exchange = exchanges[next];
+        next = next + 1 == clients ? 0 : next + 1;
+        return exchange;
+    }
+}
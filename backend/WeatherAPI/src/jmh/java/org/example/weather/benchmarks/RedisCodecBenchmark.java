@@ -0,0 +1,70 @@
+package org.example.weather.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.WeatherCodec;
+import org.example.weather.cache.WeatherRedisSerializer;
+import org.example.weather.models.WeatherData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode throughput of the Redis value codecs for a realistic {@code current.json} entry. The encoded
+ * size of an entry is printed once per fork as {@code # Entry size}.
+ *
+ * <p>Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args="RedisCodecBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisCodecBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    public WeatherCodec codec;
+
+    private WeatherRedisSerializer serializer;
+
+    private CachedWeather entry;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        WeatherData data = objectMapper.readValue(
+                new ClassPathResource("fixtures/current-london.json").getInputStream(), WeatherData.class);
+        entry = CachedWeather.of(data, Duration.ofMinutes(15), Duration.ofMinutes(60));
+        serializer = new WeatherRedisSerializer(codec, objectMapper);
+        encoded = serializer.serialize(entry);
+        System.out.println("# Entry size (" + codec + "): " + encoded.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return serializer.serialize(entry);
+    }
+
+    @Benchmark
+    public CachedWeather decode() {
+        return serializer.deserialize(encoded);
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.weather.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.weather.models.Condition;
+import org.example.weather.models.CurrentWeather;
+import org.example.weather.models.Location;
+import org.example.weather.models.WeatherData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the two ways of turning a {@code current.json} response into {@link WeatherData}: the former
+ * {@code Map} + {@code convertValue} path with a new {@link ObjectMapper} per call, and the typed single-pass decode
+ * that {@code WeatherService} now performs through the shared WebClient decoder.
+ *
+ * <p>Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args="UpstreamDecodeBenchmark -prof gc"} to also get
+ * the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UpstreamDecodeBenchmark {
+
+    private static final ResolvableType WEATHER_DATA = ResolvableType.forClass(WeatherData.class);
+
+    private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+    private Jackson2JsonDecoder decoder;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        body = new ClassPathResource("fixtures/current-london.json").getContentAsByteArray();
+        decoder = new Jackson2JsonDecoder(new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+    }
+
+    @Benchmark
+    public WeatherData mapThenConvert() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> response = objectMapper.readValue(body, Map.class);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> current = (Map<String, Object>) response.get("current");
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        Location location = objectMapper.convertValue(response.get("location"), Location.class);
+        Condition condition = objectMapper.convertValue(current.get("condition"), Condition.class);
+        CurrentWeather currentWeather = objectMapper.convertValue(current, CurrentWeather.class);
+        currentWeather.setCondition(condition);
+        return new WeatherData(location, currentWeather);
+    }
+
+    @Benchmark
+    public WeatherData typedDecode() {
+        DataBuffer buffer = bufferFactory.wrap(body);
+        return (WeatherData) decoder.decode(buffer, WEATHER_DATA, MimeTypeUtils.APPLICATION_JSON, Collections.emptyMap());
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.weather.cache;
+
+
+/**
+ * Policy that decides how {@link org.example.weather.services.WeatherService} uses {@link WeatherCache}.
+ *
+ * <p>The policy is selected per deployment with the {@code weather.cache.policy} property. Every policy that reads
+ * the cache performs exactly one lookup per request.
+ */
+public enum CachePolicy {
+
+    /**
+     * Reads the cache; on a miss the upstream data is returned as soon as it arrives and the cache is populated
+     * in the background.
+     */
+    READ_THROUGH(true, true, false, false),
+
+    /**
+     * Reads the cache; on a miss the upstream data is written to the cache before it is returned.
+     */
+    WRITE_THROUGH(true, true, true, false),
+
+    /**
+     * Reads the cache; on a miss the upstream data is returned as soon as it is decoded and the entry is queued in
+     * the {@link WriteBehindQueue}, which writes queued entries to Redis in pipelined batches.
+     */
+    WRITE_BEHIND(true, true, false, true),
+
+    /**
+     * Neither reads nor writes the cache; every request goes to the upstream API.
+     */
+    BYPASS(false, false, false, false);
+
+    private final boolean readsCache;
+
+    private final boolean writesCache;
+
+    private final boolean awaitsWrite;
+
+    private final boolean queuesWrite;
+
+    CachePolicy(boolean readsCache, boolean writesCache, boolean awaitsWrite, boolean queuesWrite) {
+        this.readsCache = readsCache;
+        this.writesCache = writesCache;
+        this.awaitsWrite = awaitsWrite;
+        this.queuesWrite = queuesWrite;
+    }
+
+    /**
+     * @return {@code true} if requests look the city up in the cache before going upstream.
+     */
+    public boolean readsCache() {
+        return readsCache;
+    }
+
+    /**
+     * @return {@code true} if upstream results are stored in the cache.
+     */
+    public boolean writesCache() {
+        return writesCache;
+    }
+
+    /**
+     * @return {@code true} if the response waits for the cache write to complete.
+     */
+    public boolean awaitsWrite() {
+        return awaitsWrite;
+    }
+
+    /**
+     * @return {@code true} if upstream results are queued and written to the cache in batches.
+     */
+    public boolean queuesWrite() {
+        return queuesWrite;
+    }
+}
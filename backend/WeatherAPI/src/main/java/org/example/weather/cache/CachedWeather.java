@@ -0,0 +1,96 @@
+package org.example.weather.cache;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.example.weather.models.WeatherData;
+
+import java.time.Duration;
+
+
+/**
+ * Cache entry that stores {@link WeatherData} together with its soft and hard expiry.
+ *
+ * <p>Until the soft expiry the entry is fresh. Between the soft and the hard expiry it is stale: it may still be
+ * served while a background refresh runs. After the hard expiry the entry is no longer served, except as a fallback
+ * while the weather API is unavailable: Redis keeps it for a grace period beyond its hard expiry for that purpose.
+ * Both expiries are absolute epoch milliseconds so that any tier can derive the remaining TTL without asking Redis
+ * for it.
+ *
+ * <p>Entries held by {@link LocalWeatherCache} may also carry their {@link EncodedWeather encoded} response body.
+ * It is derived from the data, never stored in Redis and not part of {@link #equals(Object)}.
+ */
+@Data
+@NoArgsConstructor
+public class CachedWeather {
+
+    private WeatherData data;
+
+    private long softExpiresAt;
+
+    private long hardExpiresAt;
+
+    @JsonIgnore
+    @ToString.Exclude
+    private transient EncodedWeather encoded;
+
+    public CachedWeather(WeatherData data, long softExpiresAt, long hardExpiresAt) {
+        this.data = data;
+        this.softExpiresAt = softExpiresAt;
+        this.hardExpiresAt = hardExpiresAt;
+    }
+
+    /**
+     * Creates an entry that becomes stale after {@code softTtl} and expires after {@code hardTtl} from now.
+     *
+     * @param data    The weather data to cache.
+     * @param softTtl The time after which the entry is served stale and refreshed in the background.
+     * @param hardTtl The time after which the entry is no longer served.
+     * @return The new cache entry.
+     */
+    public static CachedWeather of(WeatherData data, Duration softTtl, Duration hardTtl) {
+        long now = System.currentTimeMillis();
+        return new CachedWeather(data, now + softTtl.toMillis(), now + hardTtl.toMillis());
+    }
+
+    /**
+     * @return {@code true} if the soft expiry has passed.
+     */
+    @JsonIgnore
+    public boolean isStale() {
+        return System.currentTimeMillis() >= softExpiresAt;
+    }
+
+    /**
+     * @return {@code true} if the hard expiry has passed and the entry may only be used as a fallback.
+     */
+    @JsonIgnore
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= hardExpiresAt;
+    }
+
+    /**
+     * @return {@code true} if the entry holds no weather data, for example an entry written in an older format.
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+        return data == null || data.isEmpty();
+    }
+
+    /**
+     * @return The time left until the soft expiry, never negative.
+     */
+    @JsonIgnore
+    public Duration getFreshTtl() {
+        return Duration.ofMillis(Math.max(0, softExpiresAt - System.currentTimeMillis()));
+    }
+
+    /**
+     * @return The time left until the hard expiry, never negative.
+     */
+    @JsonIgnore
+    public Duration getRemainingTtl() {
+        return Duration.ofMillis(Math.max(0, hardExpiresAt - System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.weather.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.weather.models.WeatherData;
+import org.springframework.util.DigestUtils;
+
+import java.io.UncheckedIOException;
+
+
+/**
+ * The JSON response body of a {@link WeatherData}, encoded once and kept next to the cache entry it belongs to.
+ *
+ * <p>The body is encoded with the application {@link ObjectMapper}, so it is byte for byte what WebFlux would have
+ * written for the same object. The content hash is the hex MD5 digest of the body.
+ *
+ * @param body        The encoded JSON body. Must not be modified.
+ * @param contentHash The hex MD5 digest of {@code body}.
+ */
+public record EncodedWeather(byte[] body, String contentHash) {
+
+    /**
+     * Encodes weather data into its response body.
+     *
+     * @param objectMapper The mapper used for the response.
+     * @param data         The weather data to encode.
+     * @return The encoded body and its content hash.
+     */
+    public static EncodedWeather encode(ObjectMapper objectMapper, WeatherData data) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(data);
+            return new EncodedWeather(body, DigestUtils.md5DigestAsHex(body));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The length of the body in bytes.
+     */
+    public int length() {
+        return body.length;
+    }
+}
@@ -0,0 +1,189 @@
+package org.example.weather.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.example.weather.models.Condition;
+import org.example.weather.models.CurrentWeather;
+import org.example.weather.models.Location;
+import org.example.weather.models.WeatherData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * In-process near-cache that sits in front of the Redis tier of {@link WeatherCache}.
+ *
+ * <p>Entries are kept on the heap in a Caffeine cache bounded by an estimated weight in bytes. Caffeine's
+ * Window TinyLFU policy keeps frequently requested cities resident while one-off lookups are evicted first.
+ *
+ * <p>Each entry expires at the earlier of the configured maximum TTL and its hard expiry, which is also the TTL of
+ * the Redis entry it mirrors, so the local tier never serves data that Redis has already dropped. Hit and miss
+ * counts are published under the {@code cache.gets} meter with {@code cache=weather.l1}.
+ *
+ * <p>With {@code weather.cache.l1.encoded-responses} enabled, the JSON response body of an entry is encoded once
+ * when it enters the local tier and attached to it as {@link CachedWeather#getEncoded()}, so hits can be written to
+ * the client without serializing the weather data again. The encoded body counts towards the entry's weight.
+ */
+@Component
+public class LocalWeatherCache {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${weather.cache.l1.enabled:true}")
+    boolean enabled;
+
+    @Value("${weather.cache.l1.maximum-weight:33554432}")
+    long maximumWeight;
+
+    @Value("${weather.cache.l1.max-ttl:5m}")
+    Duration maxTtl;
+
+    @Value("${weather.cache.l1.encoded-responses:true}")
+    boolean encodedResponses;
+
+    private Cache<String, Entry> cache;
+
+    private static final Logger logger = LogManager.getLogger(LocalWeatherCache.class);
+
+    /**
+     * Returns the entry held locally for the given key.
+     *
+     * @param key The cache key.
+     * @return The cached entry, or {@code null} if the key is not present or the local tier is disabled.
+     */
+    public CachedWeather get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = cache.getIfPresent(key);
+        return entry == null ? null : entry.value();
+    }
+
+    /**
+     * Stores an entry locally until the earlier of its hard expiry and the configured maximum TTL.
+     *
+     * <p>If encoded responses are enabled and the entry has no encoded body yet, the body is encoded and attached
+     * to the entry.
+     *
+     * @param key   The cache key.
+     * @param value The entry to store.
+     */
+    public void put(String key, CachedWeather value) {
+        if (!enabled || value == null || value.isEmpty()) {
+            return;
+        }
+        Duration remainingTtl = value.getRemainingTtl();
+        if (remainingTtl.isZero()) {
+            return;
+        }
+        Duration ttl = remainingTtl.compareTo(maxTtl) > 0 ? maxTtl : remainingTtl;
+        if (encodedResponses && value.getEncoded() == null) {
+            value.setEncoded(EncodedWeather.encode(objectMapper, value.getData()));
+        }
+        cache.put(key, new Entry(value, ttl.toNanos()));
+    }
+
+    /**
+     * Removes the given key from the local tier.
+     *
+     * @param key The cache key.
+     */
+    public void invalidate(String key) {
+        if (enabled) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Returns the most frequently used entries, as ranked by the eviction policy.
+     *
+     * @param limit The maximum number of entries to return.
+     * @return The entries by key, hottest first; empty if the local tier is disabled.
+     */
+    public Map<String, CachedWeather> hottest(int limit) {
+        Map<String, CachedWeather> hottest = new LinkedHashMap<>();
+        if (enabled) {
+            cache.policy().eviction().ifPresent(eviction ->
+                    eviction.hottest(limit).forEach((key, entry) -> hottest.put(key, entry.value())));
+        }
+        return hottest;
+    }
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((String key, Entry entry) -> weigh(key, entry.value()))
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return entry.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return entry.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "weather.l1");
+        logger.info("Local cache initialised, enabled: {}, maximum weight: {} bytes", enabled, maximumWeight);
+    }
+
+    /**
+     * Estimates the heap footprint of an entry in bytes: a fixed overhead for the object graph plus two bytes per
+     * character of every string it holds, plus the encoded response body if one is attached.
+     */
+    static int weigh(String key, CachedWeather value) {
+        EncodedWeather encoded = value.getEncoded();
+        int encodedWeight = encoded == null ? 0 : 48 + encoded.length() + 2 * encoded.contentHash().length();
+        return weigh(key, value.getData()) + encodedWeight;
+    }
+
+    static int weigh(String key, WeatherData data) {
+        int chars = length(key);
+        Location location = data.getLocation();
+        if (location != null) {
+            chars += length(location.getName()) + length(location.getRegion()) + length(location.getCountry())
+                    + length(location.getTzId()) + length(location.getLocaltime());
+        }
+        CurrentWeather current = data.getCurrentWeather();
+        if (current != null) {
+            chars += length(current.getLastUpdated()) + length(current.getWindDir());
+            Condition condition = current.getCondition();
+            if (condition != null) {
+                chars += length(condition.getText()) + length(condition.getIcon());
+            }
+        }
+        return 640 + 2 * chars;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private record Entry(CachedWeather value, long ttlNanos) {
+    }
+}
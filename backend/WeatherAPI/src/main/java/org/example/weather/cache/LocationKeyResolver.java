@@ -0,0 +1,178 @@
+package org.example.weather.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.example.weather.models.Location;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+
+/**
+ * Component responsible for turning the city a client asked for into the key its weather data is cached under.
+ *
+ * <p>Queries are first normalized (Unicode NFKC, trimmed, lower-cased, whitespace collapsed), so that "London",
+ * " london " and "LONDON" share one key. Once the weather API has answered a query, the {@link Location} it
+ * returned is turned into a canonical key and the normalized query is recorded as an alias of it. From then on
+ * "London", "London,UK" and "london, united kingdom" all resolve to the same cache entry.
+ *
+ * <p>The alias index is held in memory and persisted in Redis, each alias under its own key with the prefix
+ * {@value #ALIAS_KEY_PREFIX} that expires {@code weather.cache.aliases.ttl} after it was written, so aliases nobody
+ * asks for anymore do not pile up in Redis. On startup the stored aliases are loaded until the index is full. It holds
+ * at most {@code weather.cache.aliases.max-size} aliases; once full, the aliases least likely to be used again are
+ * evicted, so a flood of query variants cannot stop new cities from being recorded. A query whose alias was evicted
+ * or expired resolves to itself until it is learned again. The size of the index is published as the
+ * {@code weather_alias_table_size} gauge.
+ */
+@Component
+public class LocationKeyResolver {
+
+    /**
+     * Prefix of the Redis keys that map normalized queries to canonical location keys.
+     */
+    public static final String ALIAS_KEY_PREFIX = "weather:alias:";
+
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Pattern SPACE_AROUND_COMMA = Pattern.compile("\\s*,\\s*");
+
+    @Autowired
+    ReactiveStringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.cache.aliases.max-size:100000}")
+    int maxSize;
+
+    @Value("${weather.cache.aliases.ttl:30d}")
+    Duration ttl;
+
+    private Cache<String, String> aliases;
+
+    private static final Logger logger = LogManager.getLogger(LocationKeyResolver.class);
+
+    /**
+     * Normalizes a raw city query.
+     *
+     * @param query The city as sent by the client.
+     * @return The normalized query.
+     */
+    public String normalize(String query) {
+        String normalized = Normalizer.normalize(query, Normalizer.Form.NFKC).trim().toLowerCase(Locale.ROOT);
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ");
+        return SPACE_AROUND_COMMA.matcher(normalized).replaceAll(",");
+    }
+
+    /**
+     * Resolves a normalized query to the cache key of the location it is known to refer to.
+     *
+     * @param normalizedQuery A query returned by {@link #normalize(String)}.
+     * @return The canonical key if the query is a known alias, otherwise the normalized query itself.
+     */
+    public String resolve(String normalizedQuery) {
+        String canonicalKey = aliases.getIfPresent(normalizedQuery);
+        return canonicalKey == null ? normalizedQuery : canonicalKey;
+    }
+
+    /**
+     * Records the location the weather API returned for a query and returns its canonical key.
+     *
+     * <p>New aliases are added to the in-memory index and written to Redis in the background with a TTL of
+     * {@code weather.cache.aliases.ttl}; once the index holds {@code weather.cache.aliases.max-size} entries, adding
+     * one evicts another.
+     *
+     * @param normalizedQuery A query returned by {@link #normalize(String)}.
+     * @param location        The location the weather API resolved the query to.
+     * @return The canonical key of the location, or the normalized query if the location is unknown or the alias was
+     *         evicted right away, so that the entry is stored under the key the query resolves to.
+     */
+    public String learn(String normalizedQuery, Location location) {
+        String canonicalKey = canonicalKey(location);
+        if (canonicalKey == null) {
+            return normalizedQuery;
+        }
+        if (normalizedQuery.equals(canonicalKey)) {
+            return canonicalKey;
+        }
+        if (!canonicalKey.equals(aliases.asMap().put(normalizedQuery, canonicalKey))) {
+            stringRedisTemplate.opsForValue()
+                    .set(ALIAS_KEY_PREFIX + normalizedQuery, canonicalKey, ttl)
+                    .subscribe(stored -> logger.info("Alias {} -> {} stored", normalizedQuery, canonicalKey),
+                            e -> logger.error("Error storing alias {}: {}", normalizedQuery, e.getMessage()));
+        }
+        return resolve(normalizedQuery);
+    }
+
+    /**
+     * Builds the canonical key of a location from its name, region and country, or from its coordinates rounded to
+     * two decimals when it has no name.
+     *
+     * @param location The location returned by the weather API.
+     * @return The canonical key, or {@code null} if the location is missing.
+     */
+    public String canonicalKey(Location location) {
+        if (location == null) {
+            return null;
+        }
+        if (location.getName() == null || location.getName().isBlank()) {
+            return String.format(Locale.ROOT, "%.2f,%.2f", location.getLat(), location.getLon());
+        }
+        return normalize(location.getName()) + "|" + normalize(nullToEmpty(location.getRegion()))
+                + "|" + normalize(nullToEmpty(location.getCountry()));
+    }
+
+    /**
+     * @return The number of entries in the alias index.
+     */
+    public int size() {
+        aliases.cleanUp();
+        return (int) aliases.estimatedSize();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    @PostConstruct
+    void init() {
+        aliases = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .executor(Runnable::run)
+                .build();
+        Gauge.builder("weather_alias_table_size", aliases, Cache::estimatedSize)
+                .description("Location aliases held in memory")
+                .register(meterRegistry);
+        stringRedisTemplate.scan(ScanOptions.scanOptions().match(ALIAS_KEY_PREFIX + "*").count(LOAD_BATCH_SIZE).build())
+                .take(maxSize)
+                .buffer(LOAD_BATCH_SIZE)
+                .concatMap(keys -> stringRedisTemplate.opsForValue().multiGet(keys)
+                        .doOnNext(canonicalKeys -> storeLoaded(keys, canonicalKeys)))
+                .subscribe(loaded -> {},
+                        e -> logger.error("Error loading aliases: {}", e.getMessage()),
+                        () -> logger.info("Alias index loaded, size: {}", aliases.estimatedSize()));
+    }
+
+    private void storeLoaded(List<String> keys, List<String> canonicalKeys) {
+        for (int i = 0; i < keys.size(); i++) {
+            if (canonicalKeys.get(i) != null) {
+                aliases.asMap().putIfAbsent(keys.get(i).substring(ALIAS_KEY_PREFIX.length()), canonicalKeys.get(i));
+            }
+        }
+    }
+}
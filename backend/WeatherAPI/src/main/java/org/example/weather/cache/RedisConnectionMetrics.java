@@ -0,0 +1,104 @@
+package org.example.weather.cache;
+
+import io.lettuce.core.event.Event;
+import io.lettuce.core.event.connection.ConnectionActivatedEvent;
+import io.lettuce.core.event.connection.ConnectionDeactivatedEvent;
+import io.lettuce.core.event.connection.ReconnectFailedEvent;
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Component responsible for publishing the state of the Redis client's connections.
+ *
+ * <p>It listens to the event bus of the Lettuce {@link ClientResources} shared by every connection of the
+ * application. Connections becoming usable or unusable are counted in {@code weather_redis_connection_events} under
+ * the {@code event} tag, {@code activated}, {@code deactivated} or {@code reconnect_failed}, and the number of usable
+ * connections is published as the {@code weather_redis_connections} gauge.
+ *
+ * <p>The latency of every Redis command is recorded by the client itself, in the {@code lettuce.command.completion}
+ * and {@code lettuce.command.firstresponse} timers under the {@code command} tag.
+ */
+@Component
+public class RedisConnectionMetrics {
+
+    @Autowired
+    ClientResources clientResources;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * A change of connection state, used as the {@code event} tag of {@code weather_redis_connection_events}.
+     */
+    private enum ConnectionEvent {
+        ACTIVATED, DEACTIVATED, RECONNECT_FAILED;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    private final Map<ConnectionEvent, Counter> events = new EnumMap<>(ConnectionEvent.class);
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private Disposable subscription;
+
+    private static final Logger logger = LogManager.getLogger(RedisConnectionMetrics.class);
+
+    /**
+     * @return The number of Redis connections currently usable.
+     */
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    void onEvent(Event event) {
+        if (event instanceof ConnectionActivatedEvent activated) {
+            active.incrementAndGet();
+            events.get(ConnectionEvent.ACTIVATED).increment();
+            logger.debug("Redis connection to {} activated", activated.remoteAddress());
+        } else if (event instanceof ConnectionDeactivatedEvent deactivated) {
+            active.decrementAndGet();
+            events.get(ConnectionEvent.DEACTIVATED).increment();
+            logger.warn("Redis connection to {} deactivated", deactivated.remoteAddress());
+        } else if (event instanceof ReconnectFailedEvent failed) {
+            events.get(ConnectionEvent.RECONNECT_FAILED).increment();
+            logger.warn("Reconnect attempt {} to {} failed: {}", failed.getAttempt(), failed.remoteAddress(),
+                    failed.getCause().getMessage());
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        for (ConnectionEvent event : ConnectionEvent.values()) {
+            events.put(event, Counter.builder("weather_redis_connection_events")
+                    .tag("event", event.tag)
+                    .description("Redis connections becoming usable or unusable, and failed reconnect attempts")
+                    .register(meterRegistry));
+        }
+        Gauge.builder("weather_redis_connections", active, AtomicInteger::get)
+                .description("Redis connections currently usable")
+                .register(meterRegistry);
+        subscription = clientResources.eventBus().get().subscribe(this::onEvent);
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.example.weather.cache;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisStringAsyncCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveStringCommands;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Component responsible for writing batches of entries to Redis with one network flush per batch.
+ *
+ * <p>Commands sent through {@link org.springframework.data.redis.core.ReactiveRedisTemplate} are flushed to the
+ * socket one by one, so a batch of {@code SET}s costs a write system call per entry even though the commands are
+ * pipelined. This component keeps its own connection with auto-flush disabled: the commands of a batch are queued,
+ * and flushed every {@code weather.redis.pipelining.flush-after} commands and once more at the end of the batch. The
+ * connection serves no other command, so batches written at the same time only ever flush each other early.
+ *
+ * <p>The connection is opened on the first batch from the client of the {@link LettuceConnectionFactory}, so it
+ * follows the configured topology and client options: in cluster mode each command goes to the node owning its key,
+ * in sentinel mode to the current master. The number of commands sent per flush is published in the
+ * {@code weather_redis_pipeline_flush_size} summary.
+ */
+@Component
+public class RedisPipeline {
+
+    @Autowired
+    LettuceConnectionFactory connectionFactory;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.redis.pipelining.enabled:true}")
+    boolean enabled;
+
+    @Value("${weather.redis.pipelining.flush-after:64}")
+    int flushAfter;
+
+    private StatefulConnection<byte[], byte[]> connection;
+
+    private RedisStringAsyncCommands<byte[], byte[]> commands;
+
+    private DistributionSummary flushSize;
+
+    private static final Logger logger = LogManager.getLogger(RedisPipeline.class);
+
+    /**
+     * @return Whether batches are written through this component rather than the reactive template.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sends a batch of {@code SET} commands, flushing them every {@code flush-after} commands.
+     *
+     * @param setCommands The commands to send, each with its key, value and expiration.
+     * @return A {@link Flux} emitting the response of every command, in the order of the commands.
+     */
+    public Flux<ReactiveRedisConnection.BooleanResponse<ReactiveStringCommands.SetCommand>> set(
+            List<ReactiveStringCommands.SetCommand> setCommands) {
+        return Mono.fromCallable(this::commands)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(async -> {
+                    List<RedisFuture<String>> replies = new ArrayList<>(setCommands.size());
+                    int pending = 0;
+                    for (ReactiveStringCommands.SetCommand command : setCommands) {
+                        replies.add(async.set(ByteUtils.getBytes(command.getKey()),
+                                ByteUtils.getBytes(command.getValue()),
+                                setArgs(command.getExpiration().orElse(Expiration.persistent()))));
+                        if (++pending == flushAfter) {
+                            flush(pending);
+                            pending = 0;
+                        }
+                    }
+                    if (pending > 0) {
+                        flush(pending);
+                    }
+                    return Flux.range(0, setCommands.size())
+                            .concatMap(i -> Mono.fromCompletionStage(replies.get(i))
+                                    .map(reply -> new ReactiveRedisConnection.BooleanResponse<>(setCommands.get(i),
+                                            "OK".equals(reply))));
+                });
+    }
+
+    private void flush(int pending) {
+        connection.flushCommands();
+        flushSize.record(pending);
+    }
+
+    private static SetArgs setArgs(Expiration expiration) {
+        return expiration.isPersistent()
+                ? new SetArgs()
+                : SetArgs.Builder.px(expiration.getExpirationTimeInMilliseconds());
+    }
+
+    /**
+     * Opens the connection the first time it is needed, which blocks until the handshake is done.
+     */
+    private synchronized RedisStringAsyncCommands<byte[], byte[]> commands() {
+        if (commands == null) {
+            AbstractRedisClient client = connectionFactory.getRequiredNativeClient();
+            if (client instanceof RedisClusterClient clusterClient) {
+                StatefulRedisClusterConnection<byte[], byte[]> clusterConnection =
+                        clusterClient.connect(ByteArrayCodec.INSTANCE);
+                connection = clusterConnection;
+                commands = clusterConnection.async();
+            } else {
+                StatefulRedisConnection<byte[], byte[]> redisConnection =
+                        ((RedisClient) client).connect(ByteArrayCodec.INSTANCE);
+                connection = redisConnection;
+                commands = redisConnection.async();
+            }
+            connection.setAutoFlushCommands(false);
+            logger.info("Opened the Redis pipeline connection, flushing every {} commands", flushAfter);
+        }
+        return commands;
+    }
+
+    @PostConstruct
+    void init() {
+        flushSize = DistributionSummary.builder("weather_redis_pipeline_flush_size")
+                .description("Commands written to Redis per flush of the pipeline connection")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    synchronized void destroy() {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+}
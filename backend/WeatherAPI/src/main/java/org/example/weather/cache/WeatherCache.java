@@ -1,17 +1,35 @@
 package org.example.weather.cache;
 
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.example.weather.models.WeatherData;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveStringCommands;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 
 
@@ -23,8 +41,20 @@ import java.time.Duration;
  * in a reactive manner. Data fetched from the cache is wrapped in a {@link Mono},
  * which supports asynchronous operations and provides non-blocking access to cached data.
  *
- * <p>The cache is designed to store weather data with a Time-To-Live (TTL) of one hour.
- * When data is fetched, it logs the retrieval from cache. When data is put into the cache,
+ * <p>Values are stored as {@link CachedWeather} entries that carry a soft and a hard expiry next to the data.
+ * Reads are served from the in-process {@link LocalWeatherCache} first and only go to Redis on a local miss;
+ * entries read from or written to Redis are copied into the local tier for no longer than their hard expiry.
+ * Hits and misses of the Redis tier are published under the {@code cache.gets} meter with {@code cache=weather.l2},
+ * and the round trip of every Redis command in the {@code weather_redis_latency} timer under the {@code command} tag.
+ *
+ * <p>Redis keeps each entry for {@code weather.cache.grace-ttl} beyond its hard expiry. Lookups still return such
+ * expired entries, without counting them as hits or copying them into the local tier, so that callers can fall back
+ * to the last known value while the weather API is unavailable.
+ *
+ * <p>If a Redis read fails, the keys are looked up in the {@link WeatherSnapshot} instead. A single lookup of a key
+ * the snapshot does not hold still fails; in a batch lookup such keys are treated as misses.
+ *
+ * <p>When data is fetched, it logs the retrieval from cache. When data is put into the cache,
  * it logs the operation and handles any errors that may occur.
  */
 @Component
@@ -35,43 +65,263 @@ public class WeatherCache {
      * It provides reactive operations for getting and setting values in Redis.
      */
     @Autowired
-    ReactiveRedisTemplate<String, WeatherData> redisTemplate;
+    ReactiveRedisTemplate<String, CachedWeather> redisTemplate;
+
+    /**
+     * The in-process tier consulted before Redis.
+     */
+    @Autowired
+    LocalWeatherCache localCache;
+
+    /**
+     * The on-disk snapshot read when Redis fails.
+     */
+    @Autowired
+    WeatherSnapshot snapshot;
+
+    /**
+     * The connection batches are written through with one flush per batch, unless pipelining is disabled.
+     */
+    @Autowired
+    RedisPipeline pipeline;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.cache.grace-ttl:6h}")
+    Duration graceTtl;
+
+    private Counter redisHits;
+
+    private Counter redisMisses;
+
+    private Timer getLatency;
+
+    private Timer multiGetLatency;
+
+    private Timer setLatency;
+
+    private Timer pipelinedSetLatency;
 
     private static final Logger logger = LogManager.getLogger(WeatherCache.class);
 
+    /**
+     * Retrieves a cache entry together with its soft and hard expiry.
+     *
+     * <p>Looks the key up in the local tier first. On a local miss it reads the entry from Redis with a single
+     * command, copies a hit into the local tier and logs the retrieval. Entries without weather data, such as
+     * values written in an older format, are treated as misses. An entry past its hard expiry is returned but
+     * counted as a miss; callers must check {@link CachedWeather#isExpired()}. If the Redis command fails, the entry
+     * is read from the {@link WeatherSnapshot}, and the error is propagated if the snapshot does not hold it.
+     *
+     * @param key The key associated with the weather data to retrieve.
+     * @return A {@link Mono} containing the cache entry, or an empty {@link Mono} if the key is not cached.
+     */
+    public Mono<CachedWeather> lookup(String key) {
+        CachedWeather local = localCache.get(key);
+        if (local != null) {
+            return Mono.just(local);
+        }
+        return timed(getLatency, redisTemplate.opsForValue().get(key))
+                .filter(entry -> !entry.isEmpty())
+                .doOnNext(entry -> {
+                    if (entry.isExpired()) {
+                        redisMisses.increment();
+                        return;
+                    }
+                    redisHits.increment();
+                    localCache.put(key, entry);
+                    logger.debug("Data has been returned from cache");
+                })
+                .switchIfEmpty(Mono.fromRunnable(redisMisses::increment))
+                .onErrorResume(e -> {
+                    CachedWeather entry = snapshot.lookup(key);
+                    if (entry == null) {
+                        return Mono.error(e);
+                    }
+                    logger.warn("Redis read failed ({}), serving {} from the snapshot", e.getMessage(), key);
+                    if (!entry.isExpired()) {
+                        localCache.put(key, entry);
+                    }
+                    return Mono.just(entry);
+                });
+    }
+
+    /**
+     * Reads a cache entry from Redis only, bypassing the local tier, and copies it into the local tier unless it is
+     * expired. Used to pick up an entry another instance has just written while the local tier may still hold an
+     * older copy; a failed Redis read is propagated rather than answered from the snapshot.
+     *
+     * @param key The key associated with the weather data to retrieve.
+     * @return A {@link Mono} containing the entry Redis holds, or an empty {@link Mono} if it holds none.
+     */
+    public Mono<CachedWeather> lookupShared(String key) {
+        return timed(getLatency, redisTemplate.opsForValue().get(key))
+                .filter(entry -> !entry.isEmpty())
+                .doOnNext(entry -> {
+                    if (!entry.isExpired()) {
+                        localCache.put(key, entry);
+                    }
+                });
+    }
+
+    /**
+     * Retrieves the cache entries for several keys at once.
+     *
+     * <p>Keys held by the local tier are answered from it; all remaining keys are read from Redis with a single
+     * {@code MGET}. Redis hits are copied into the local tier. If the {@code MGET} fails, the remaining keys are
+     * read from the {@link WeatherSnapshot}.
+     *
+     * @param keys The keys to look up.
+     * @return A {@link Mono} emitting a map from key to entry that contains only the keys found in the cache.
+     */
+    public Mono<Map<String, CachedWeather>> lookupAll(Collection<String> keys) {
+        Map<String, CachedWeather> found = new HashMap<>();
+        List<String> remoteKeys = new ArrayList<>();
+        for (String key : keys) {
+            CachedWeather local = localCache.get(key);
+            if (local != null) {
+                found.put(key, local);
+            } else {
+                remoteKeys.add(key);
+            }
+        }
+        if (remoteKeys.isEmpty()) {
+            return Mono.just(found);
+        }
+        return timed(multiGetLatency, redisTemplate.opsForValue().multiGet(remoteKeys))
+                .map(values -> {
+                    for (int i = 0; i < remoteKeys.size(); i++) {
+                        CachedWeather entry = i < values.size() ? values.get(i) : null;
+                        if (entry == null || entry.isEmpty()) {
+                            redisMisses.increment();
+                            continue;
+                        }
+                        found.put(remoteKeys.get(i), entry);
+                        if (entry.isExpired()) {
+                            redisMisses.increment();
+                            continue;
+                        }
+                        redisHits.increment();
+                        localCache.put(remoteKeys.get(i), entry);
+                    }
+                    logger.info("Batch lookup of {} keys returned {} entries", keys.size(), found.size());
+                    return found;
+                })
+                .onErrorResume(e -> {
+                    logger.warn("Redis batch read failed ({}), serving from the snapshot", e.getMessage());
+                    for (String key : remoteKeys) {
+                        CachedWeather entry = snapshot.lookup(key);
+                        if (entry != null) {
+                            found.put(key, entry);
+                        }
+                    }
+                    return Mono.just(found);
+                });
+    }
+
     /**
      * Retrieves weather data from the cache.
      *
-     * <p>Attempts to get the data associated with the specified key from Redis.
-     * If the data is found, it logs the retrieval and returns the data wrapped in a {@link Mono}.
+     * <p>Attempts to get the data associated with the specified key, see {@link #lookup(String)}.
      * If the data is not found, it returns a new, empty {@link WeatherData} wrapped in a {@link Mono}.
      *
      * @param key The key associated with the weather data to retrieve.
      * @return A {@link Mono} containing the weather data if present in the cache, or a new empty {@link WeatherData}.
      */
     public Mono<WeatherData> get(String key) {
-        return redisTemplate.opsForValue()
-                .get(key)
-                .doOnNext(data -> logger.info("Data has been returned from cache"))
-                .switchIfEmpty(Mono.just(new WeatherData()));
+        return lookup(key)
+                .filter(entry -> !entry.isExpired())
+                .map(CachedWeather::getData)
+                .switchIfEmpty(Mono.fromSupplier(WeatherData::new));
     }
 
     /**
-     * Puts weather data into the cache with a TTL (Time-To-Live) of one hour.
+     * Puts a cache entry into Redis with a TTL that ends one grace period after its hard expiry.
      *
-     * <p>Stores the provided weather data in Redis associated with the specified key.
-     * Logs the operation and handles errors if they occur during the process.
+     * <p>Stores the provided entry in Redis associated with the specified key, and in the local tier once
+     * the Redis write has succeeded. Logs the operation and handles errors if they occur during the process.
      *
      * @param key   The key to associate with the weather data in the cache.
-     * @param value The weather data to store in the cache.
+     * @param value The cache entry to store.
      * @return A {@link Mono} that emits {@code true} if the data was successfully added to the cache.
      */
-    public Mono<Boolean> put(String key, WeatherData value, Duration ttlDuration) {
-        return redisTemplate.opsForValue()
-                .set(key, value, ttlDuration)
-                .doOnSuccess(v -> logger.info("Data has been pushed to cache: " + key))
+    public Mono<Boolean> put(String key, CachedWeather value) {
+        return timed(setLatency, redisTemplate.opsForValue().set(key, value, value.getRemainingTtl().plus(graceTtl)))
+                .doOnSuccess(v -> {
+                    localCache.put(key, value);
+                    logger.debug("Data has been pushed to cache: {}", key);
+                })
                 .then(Mono.just(true))
-                .doOnError(e -> logger.error("Error adding data to cache: " + e.getMessage()));
+                .doOnError(e -> logger.error("Error adding data to cache: {}", e.getMessage()));
+    }
+
+    /**
+     * Puts several cache entries into Redis in one pipelined batch.
+     *
+     * <p>All {@code SET} commands, each with the TTL of its entry plus the grace period, are streamed over the
+     * connection without waiting for the individual replies. Unless {@code weather.redis.pipelining.enabled} is off,
+     * they are sent through the {@link RedisPipeline}, which flushes them to the socket together. Entries that were
+     * written are copied into the local tier.
+     *
+     * @param entries The entries to store, by key.
+     * @return A {@link Mono} emitting the keys of the entries written.
+     */
+    public Mono<Set<String>> putAll(Map<String, CachedWeather> entries) {
+        if (entries.isEmpty()) {
+            return Mono.just(Set.of());
+        }
+        RedisSerializationContext<String, CachedWeather> context = redisTemplate.getSerializationContext();
+        Map<ReactiveStringCommands.SetCommand, String> commands = new IdentityHashMap<>();
+        entries.forEach((key, entry) -> commands.put(
+                ReactiveStringCommands.SetCommand.set(context.getKeySerializationPair().write(key))
+                        .value(context.getValueSerializationPair().write(entry))
+                        .expiring(Expiration.from(entry.getRemainingTtl().plus(graceTtl))),
+                key));
+        Flux<ReactiveRedisConnection.BooleanResponse<ReactiveStringCommands.SetCommand>> responses = pipeline.isEnabled()
+                ? pipeline.set(new ArrayList<>(commands.keySet()))
+                : redisTemplate.execute(connection -> connection.stringCommands().set(Flux.fromIterable(commands.keySet())));
+        return timed(pipelinedSetLatency, responses
+                .filter(response -> Boolean.TRUE.equals(response.getOutput()))
+                .map(response -> commands.get(response.getInput()))
+                .doOnNext(key -> localCache.put(key, entries.get(key)))
+                .collect(Collectors.toSet()))
+                .doOnSuccess(written -> logger.info("Batch of {} entries has been pushed to cache", written.size()))
+                .doOnError(e -> logger.error("Error adding batch to cache: {}", e.getMessage()));
+    }
+
+    /**
+     * Puts weather data into the cache with the given TTL as both its soft and hard expiry.
+     *
+     * @param key         The key to associate with the weather data in the cache.
+     * @param value       The weather data to store in the cache.
+     * @param ttlDuration The time after which the entry expires.
+     * @return A {@link Mono} that emits {@code true} if the data was successfully added to the cache.
+     */
+    public Mono<Boolean> put(String key, WeatherData value, Duration ttlDuration) {
+        return put(key, CachedWeather.of(value, ttlDuration, ttlDuration));
+    }
+
+    /**
+     * Records the time from subscribing to a Redis command until it terminates.
+     */
+    private <T> Mono<T> timed(Timer timer, Mono<T> command) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return command.doFinally(signal -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private Timer redisTimer(String command) {
+        return Timer.builder("weather_redis_latency")
+                .tag("command", command)
+                .description("Round trip of Redis commands issued by the weather cache")
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(Duration.ofMillis(1), Duration.ofMillis(5), Duration.ofMillis(10),
+                        Duration.ofMillis(50), Duration.ofMillis(100))
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(2))
+                .register(meterRegistry);
     }
 
     @PreDestroy
@@ -83,6 +333,18 @@ public class WeatherCache {
 
     @PostConstruct
     private void initCache() {
+        redisHits = Counter.builder("cache.gets")
+                .tags("cache", "weather.l2", "result", "hit")
+                .description("The number of times the Redis tier returned a cached value")
+                .register(meterRegistry);
+        redisMisses = Counter.builder("cache.gets")
+                .tags("cache", "weather.l2", "result", "miss")
+                .description("The number of times the Redis tier had no cached value")
+                .register(meterRegistry);
+        getLatency = redisTimer("get");
+        multiGetLatency = redisTimer("mget");
+        setLatency = redisTimer("set");
+        pipelinedSetLatency = redisTimer("pipelined_set");
         logger.info("Connection cache established");
     }
 }
\ No newline at end of file
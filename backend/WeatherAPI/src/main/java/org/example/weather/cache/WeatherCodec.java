@@ -0,0 +1,21 @@
+package org.example.weather.cache;
+
+
+/**
+ * Format in which {@link CachedWeather} entries are written to Redis, selected with {@code weather.cache.codec}.
+ *
+ * <p>Whatever the configured format, {@link WeatherRedisSerializer} reads entries written in either of them, so a
+ * deployment can switch formats without flushing Redis.
+ */
+public enum WeatherCodec {
+
+    /**
+     * Jackson JSON with the weather API field names, as written by earlier versions.
+     */
+    JSON,
+
+    /**
+     * Positional binary layout prefixed with a schema-version byte.
+     */
+    BINARY
+}
@@ -0,0 +1,222 @@
+package org.example.weather.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.weather.models.Condition;
+import org.example.weather.models.CurrentWeather;
+import org.example.weather.models.Location;
+import org.example.weather.models.WeatherData;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+
+/**
+ * Redis value serializer for {@link CachedWeather} entries.
+ *
+ * <p>Entries are written in the configured {@link WeatherCodec}. The {@link WeatherCodec#BINARY binary} layout
+ * starts with the schema version {@value #VERSION} followed by the expiries and every field of the weather data in
+ * declaration order, without field names; strings are written as modified UTF-8 behind a presence flag. This keeps
+ * an entry at less than half of its JSON size and avoids tokenizing JSON on every Redis hit.
+ *
+ * <p>Reads do not depend on the configured codec: a value starting with <code>'{'</code> is decoded as JSON, a value
+ * starting with a known version byte as binary. Entries written before a codec switch therefore stay readable until
+ * they expire. A value with an unknown version byte is rejected with a {@link SerializationException}.
+ */
+public class WeatherRedisSerializer implements RedisSerializer<CachedWeather> {
+
+    /**
+     * Current version of the binary layout. Changes to the layout must use a new version and keep reading the old one.
+     */
+    static final byte VERSION = 1;
+
+    private static final byte JSON_START = '{';
+
+    private static final int HAS_LOCATION = 1;
+
+    private static final int HAS_CURRENT = 1 << 1;
+
+    private static final int HAS_CONDITION = 1 << 2;
+
+    private final WeatherCodec codec;
+
+    private final Jackson2JsonRedisSerializer<CachedWeather> jsonSerializer;
+
+    /**
+     * @param codec        The format new entries are written in.
+     * @param objectMapper The mapper used to read and write JSON entries.
+     */
+    public WeatherRedisSerializer(WeatherCodec codec, ObjectMapper objectMapper) {
+        this.codec = codec;
+        this.jsonSerializer = new Jackson2JsonRedisSerializer<>(objectMapper, CachedWeather.class);
+    }
+
+    @Override
+    public byte[] serialize(CachedWeather value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (codec == WeatherCodec.JSON) {
+            return jsonSerializer.serialize(value);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            writeEntry(out, value);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Could not write weather entry: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public CachedWeather deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == JSON_START) {
+            return jsonSerializer.deserialize(bytes);
+        }
+        if (bytes[0] != VERSION) {
+            throw new SerializationException("Unknown weather entry format version: " + bytes[0]);
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+            return readEntry(in);
+        } catch (IOException e) {
+            throw new SerializationException("Could not read weather entry: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, CachedWeather entry) throws IOException {
+        out.writeLong(entry.getSoftExpiresAt());
+        out.writeLong(entry.getHardExpiresAt());
+
+        WeatherData data = entry.getData();
+        Location location = data == null ? null : data.getLocation();
+        CurrentWeather current = data == null ? null : data.getCurrentWeather();
+        Condition condition = current == null ? null : current.getCondition();
+        out.writeByte((location != null ? HAS_LOCATION : 0)
+                | (current != null ? HAS_CURRENT : 0)
+                | (condition != null ? HAS_CONDITION : 0));
+
+        if (location != null) {
+            writeString(out, location.getName());
+            writeString(out, location.getRegion());
+            writeString(out, location.getCountry());
+            out.writeDouble(location.getLat());
+            out.writeDouble(location.getLon());
+            writeString(out, location.getTzId());
+            out.writeLong(location.getLocaltimeEpoch());
+            writeString(out, location.getLocaltime());
+        }
+        if (current != null) {
+            out.writeLong(current.getLastUpdatedEpoch());
+            writeString(out, current.getLastUpdated());
+            out.writeDouble(current.getTempC());
+            out.writeDouble(current.getTempF());
+            out.writeInt(current.getIsDay());
+            if (condition != null) {
+                writeString(out, condition.getText());
+                writeString(out, condition.getIcon());
+                out.writeInt(condition.getCode());
+            }
+            out.writeDouble(current.getWindMph());
+            out.writeDouble(current.getWindKph());
+            out.writeInt(current.getWindDegree());
+            writeString(out, current.getWindDir());
+            out.writeDouble(current.getPressureMb());
+            out.writeDouble(current.getPressureIn());
+            out.writeDouble(current.getPrecipMm());
+            out.writeDouble(current.getPrecipIn());
+            out.writeInt(current.getHumidity());
+            out.writeInt(current.getCloud());
+            out.writeDouble(current.getFeelsLikeC());
+            out.writeDouble(current.getFeelsLikeF());
+            out.writeDouble(current.getWindChillC());
+            out.writeDouble(current.getWindChillF());
+            out.writeDouble(current.getHeatIndexC());
+            out.writeDouble(current.getHeatIndexF());
+            out.writeDouble(current.getDewPointC());
+            out.writeDouble(current.getDewPointF());
+            out.writeDouble(current.getVisKm());
+            out.writeDouble(current.getVisMiles());
+            out.writeDouble(current.getUv());
+            out.writeDouble(current.getGustMph());
+            out.writeDouble(current.getGustKph());
+        }
+    }
+
+    private static CachedWeather readEntry(DataInputStream in) throws IOException {
+        long softExpiresAt = in.readLong();
+        long hardExpiresAt = in.readLong();
+        int flags = in.readUnsignedByte();
+
+        Location location = null;
+        if ((flags & HAS_LOCATION) != 0) {
+            location = new Location();
+            location.setName(readString(in));
+            location.setRegion(readString(in));
+            location.setCountry(readString(in));
+            location.setLat(in.readDouble());
+            location.setLon(in.readDouble());
+            location.setTzId(readString(in));
+            location.setLocaltimeEpoch(in.readLong());
+            location.setLocaltime(readString(in));
+        }
+        CurrentWeather current = null;
+        if ((flags & HAS_CURRENT) != 0) {
+            current = new CurrentWeather();
+            current.setLastUpdatedEpoch(in.readLong());
+            current.setLastUpdated(readString(in));
+            current.setTempC(in.readDouble());
+            current.setTempF(in.readDouble());
+            current.setIsDay(in.readInt());
+            if ((flags & HAS_CONDITION) != 0) {
+                current.setCondition(new Condition(readString(in), readString(in), in.readInt()));
+            }
+            current.setWindMph(in.readDouble());
+            current.setWindKph(in.readDouble());
+            current.setWindDegree(in.readInt());
+            current.setWindDir(readString(in));
+            current.setPressureMb(in.readDouble());
+            current.setPressureIn(in.readDouble());
+            current.setPrecipMm(in.readDouble());
+            current.setPrecipIn(in.readDouble());
+            current.setHumidity(in.readInt());
+            current.setCloud(in.readInt());
+            current.setFeelsLikeC(in.readDouble());
+            current.setFeelsLikeF(in.readDouble());
+            current.setWindChillC(in.readDouble());
+            current.setWindChillF(in.readDouble());
+            current.setHeatIndexC(in.readDouble());
+            current.setHeatIndexF(in.readDouble());
+            current.setDewPointC(in.readDouble());
+            current.setDewPointF(in.readDouble());
+            current.setVisKm(in.readDouble());
+            current.setVisMiles(in.readDouble());
+            current.setUv(in.readDouble());
+            current.setGustMph(in.readDouble());
+            current.setGustKph(in.readDouble());
+        }
+        return new CachedWeather(new WeatherData(location, current), softExpiresAt, hardExpiresAt);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,356 @@
+package org.example.weather.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+
+/**
+ * On-disk snapshot of the hottest weather cache entries, so that a node restarts warm and keeps answering from its
+ * last known data while Redis is unreachable.
+ *
+ * <p>Every {@code weather.cache.snapshot.interval} the {@code weather.cache.snapshot.max-entries} most frequently
+ * used entries of the {@link LocalWeatherCache} are written to {@code weather.cache.snapshot.path}. Slots left over
+ * are filled with entries of the previous snapshot that are still within {@code weather.cache.grace-ttl} of their
+ * hard expiry, so entries that left the local tier during an outage are not lost. The file is written through a
+ * memory mapping to a temporary file that then replaces the snapshot atomically, and once more on shutdown.
+ *
+ * <p>The file starts with the magic number {@code WSNP}, the format version {@value #FORMAT_VERSION}, the write time,
+ * the number of entries and a CRC32C of the entries. Each entry is its UTF-8 key, its hard expiry and its value in
+ * the {@link WeatherCodec#BINARY binary} layout of {@link WeatherRedisSerializer}. A snapshot that is truncated,
+ * corrupt or of another version is ignored.
+ *
+ * <p>On startup the snapshot is mapped read-only and its entries that have not reached their hard expiry are copied
+ * into the local tier. The mapping stays open: {@link WeatherCache} reads entries from it, decoding only the entry
+ * asked for, when a Redis command fails.
+ *
+ * <p>The warm load time is published as the {@code weather_snapshot_warm_load} gauge, the size and entries of the
+ * current snapshot as {@code weather_snapshot_size_bytes} and {@code weather_snapshot_entries}, writes in the
+ * {@code weather_snapshot_write_latency} timer and reads during outages in {@code weather_snapshot_reads} under the
+ * {@code result} tag.
+ */
+@Component
+public class WeatherSnapshot {
+
+    /**
+     * Current version of the file format. Changes to the format must use a new version.
+     */
+    static final byte FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x57534E50;
+
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 4 + 4;
+
+    @Autowired
+    LocalWeatherCache localCache;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.cache.snapshot.enabled:true}")
+    boolean enabled;
+
+    @Value("${weather.cache.snapshot.path:data/weather-cache.snapshot}")
+    Path path;
+
+    @Value("${weather.cache.snapshot.interval:1m}")
+    Duration interval;
+
+    @Value("${weather.cache.snapshot.max-entries:10000}")
+    int maxEntries;
+
+    @Value("${weather.cache.grace-ttl:6h}")
+    Duration graceTtl;
+
+    private WeatherRedisSerializer serializer;
+
+    private volatile Mapping mapping = Mapping.EMPTY;
+
+    private volatile long warmLoadNanos;
+
+    private Counter readHits;
+
+    private Counter readMisses;
+
+    private Timer writeLatency;
+
+    private Disposable writeTask;
+
+    private static final Logger logger = LogManager.getLogger(WeatherSnapshot.class);
+
+    /**
+     * Location of an entry in the mapped snapshot.
+     */
+    private record Slot(int offset, int length, long hardExpiresAt) {
+    }
+
+    /**
+     * The mapped snapshot file and the position of every entry in it.
+     */
+    private record Mapping(ByteBuffer buffer, Map<String, Slot> slots, long size) {
+
+        static final Mapping EMPTY = new Mapping(ByteBuffer.allocate(0), Map.of(), 0);
+    }
+
+    /**
+     * Reads an entry from the snapshot.
+     *
+     * @param key The cache key.
+     * @return The entry, which may be stale or expired, or {@code null} if the snapshot does not hold the key.
+     */
+    public CachedWeather lookup(String key) {
+        Mapping current = mapping;
+        Slot slot = current.slots().get(key);
+        if (slot == null) {
+            readMisses.increment();
+            return null;
+        }
+        readHits.increment();
+        return decode(current.buffer(), slot);
+    }
+
+    /**
+     * @return The number of entries in the current snapshot.
+     */
+    public int size() {
+        return mapping.slots().size();
+    }
+
+    /**
+     * Writes a new snapshot from the hottest local entries and the still usable entries of the previous one, and
+     * maps it in place of the previous one. Nothing is written if there are no entries.
+     *
+     * @return The size of the written snapshot in bytes, or 0 if nothing was written.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized long write() throws IOException {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        List<byte[]> keys = new ArrayList<>();
+        List<Long> expiries = new ArrayList<>();
+        List<ByteBuffer> values = new ArrayList<>();
+        Map<String, CachedWeather> hottest = localCache.hottest(maxEntries);
+        for (Map.Entry<String, CachedWeather> entry : hottest.entrySet()) {
+            add(keys, expiries, values, entry.getKey(), entry.getValue().getHardExpiresAt(),
+                    ByteBuffer.wrap(serializer.serialize(entry.getValue())));
+        }
+        Mapping previous = mapping;
+        for (Map.Entry<String, Slot> entry : previous.slots().entrySet()) {
+            Slot slot = entry.getValue();
+            if (keys.size() >= maxEntries) {
+                break;
+            }
+            if (!hottest.containsKey(entry.getKey()) && slot.hardExpiresAt() + graceTtl.toMillis() > now) {
+                add(keys, expiries, values, entry.getKey(), slot.hardExpiresAt(),
+                        previous.buffer().slice(slot.offset(), slot.length()));
+            }
+        }
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        long size = HEADER_SIZE;
+        for (int i = 0; i < keys.size(); i++) {
+            size += 2 + keys.get(i).length + 8 + 4 + values.get(i).remaining();
+        }
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(HEADER_SIZE);
+            for (int i = 0; i < keys.size(); i++) {
+                buffer.putShort((short) keys.get(i).length);
+                buffer.put(keys.get(i));
+                buffer.putLong(expiries.get(i));
+                buffer.putInt(values.get(i).remaining());
+                buffer.put(values.get(i).duplicate());
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(HEADER_SIZE, (int) size - HEADER_SIZE));
+            buffer.putInt(0, MAGIC);
+            buffer.put(4, FORMAT_VERSION);
+            buffer.putLong(5, now);
+            buffer.putInt(13, keys.size());
+            buffer.putInt(17, (int) crc.getValue());
+            buffer.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mapping = map(path);
+        writeLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        logger.debug("Snapshot of {} entries written, {} bytes", keys.size(), size);
+        return size;
+    }
+
+    /**
+     * Maps the snapshot at {@code weather.cache.snapshot.path} and copies its unexpired entries into the local tier.
+     *
+     * @return The number of entries copied into the local tier.
+     */
+    int warmLoad() {
+        long start = System.nanoTime();
+        Mapping loaded;
+        try {
+            loaded = map(path);
+        } catch (NoSuchFileException e) {
+            logger.info("No cache snapshot at {}, starting cold", path);
+            return 0;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cache snapshot at {} ignored: {}", path, e.getMessage());
+            return 0;
+        }
+        mapping = loaded;
+        long now = System.currentTimeMillis();
+        int warmed = 0;
+        for (Map.Entry<String, Slot> entry : loaded.slots().entrySet()) {
+            if (entry.getValue().hardExpiresAt() <= now) {
+                continue;
+            }
+            CachedWeather value = decode(loaded.buffer(), entry.getValue());
+            if (value != null) {
+                localCache.put(entry.getKey(), value);
+                warmed++;
+            }
+        }
+        warmLoadNanos = System.nanoTime() - start;
+        logger.info("Cache snapshot loaded in {} ms: {} entries, {} copied into the local cache",
+                TimeUnit.NANOSECONDS.toMillis(warmLoadNanos), loaded.slots().size(), warmed);
+        return warmed;
+    }
+
+    private static void add(List<byte[]> keys, List<Long> expiries, List<ByteBuffer> values, String key,
+                            long hardExpiresAt, ByteBuffer value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            return;
+        }
+        keys.add(keyBytes);
+        expiries.add(hardExpiresAt);
+        values.add(value);
+    }
+
+    private static Mapping map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("unexpected size " + size);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.get(4) != FORMAT_VERSION) {
+                throw new IOException("not a snapshot of format version " + FORMAT_VERSION);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(HEADER_SIZE, (int) size - HEADER_SIZE));
+            if ((int) crc.getValue() != buffer.getInt(17)) {
+                throw new IOException("checksum mismatch");
+            }
+            int count = buffer.getInt(13);
+            Map<String, Slot> slots = new HashMap<>(count * 4 / 3 + 1);
+            buffer.position(HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[Short.toUnsignedInt(buffer.getShort())];
+                buffer.get(key);
+                long hardExpiresAt = buffer.getLong();
+                int length = buffer.getInt();
+                slots.put(new String(key, StandardCharsets.UTF_8), new Slot(buffer.position(), length, hardExpiresAt));
+                buffer.position(buffer.position() + length);
+            }
+            return new Mapping(buffer, slots, size);
+        }
+    }
+
+    private CachedWeather decode(ByteBuffer buffer, Slot slot) {
+        byte[] value = new byte[slot.length()];
+        buffer.get(slot.offset(), value);
+        try {
+            return serializer.deserialize(value);
+        } catch (SerializationException e) {
+            logger.warn("Unreadable snapshot entry: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error writing cache snapshot to {}: {}", path, e.getMessage());
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        serializer = new WeatherRedisSerializer(WeatherCodec.BINARY, objectMapper);
+        readHits = Counter.builder("weather_snapshot_reads")
+                .tag("result", "hit")
+                .description("Entries read from the snapshot because Redis failed")
+                .register(meterRegistry);
+        readMisses = Counter.builder("weather_snapshot_reads")
+                .tag("result", "miss")
+                .description("Keys not found in the snapshot while Redis failed")
+                .register(meterRegistry);
+        writeLatency = Timer.builder("weather_snapshot_write_latency")
+                .description("Time to write and map a new cache snapshot")
+                .register(meterRegistry);
+        TimeGauge.builder("weather_snapshot_warm_load", this, TimeUnit.NANOSECONDS, snapshot -> snapshot.warmLoadNanos)
+                .description("Time taken on startup to load the snapshot into the local cache")
+                .register(meterRegistry);
+        Gauge.builder("weather_snapshot_size_bytes", this, snapshot -> snapshot.mapping.size())
+                .description("Size of the current cache snapshot file")
+                .register(meterRegistry);
+        Gauge.builder("weather_snapshot_entries", this, WeatherSnapshot::size)
+                .description("Entries in the current cache snapshot")
+                .register(meterRegistry);
+        if (!enabled) {
+            return;
+        }
+        warmLoad();
+        writeTask = Flux.interval(interval, interval)
+                .concatMap(tick -> Mono.fromRunnable(this::writeQuietly).subscribeOn(Schedulers.boundedElastic()))
+                .subscribe();
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (writeTask != null) {
+            writeTask.dispose();
+            writeQuietly();
+        }
+    }
+}
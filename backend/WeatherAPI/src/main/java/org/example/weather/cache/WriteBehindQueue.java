@@ -0,0 +1,306 @@
+package org.example.weather.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Component responsible for writing cache entries to Redis behind the requests that produced them, used by the
+ * {@link CachePolicy#WRITE_BEHIND} policy.
+ *
+ * <p>An entry is copied into the {@link LocalWeatherCache} right away, so this instance serves it before it reaches
+ * Redis, and queued by key: a newer entry for a key still queued replaces the older one in place. The queue is
+ * written with {@link WeatherCache#putAll} in batches of up to {@code weather.cache.write-behind.batch-size}
+ * entries, as soon as a batch is full or {@code weather.cache.write-behind.flush-interval} after the first entry was
+ * queued. One batch is written at a time. Callers are told when their entry is in Redis, which lets a lease held by
+ * {@code ClusterRequestCoalescer} be released only once the other instances can read the entry.
+ *
+ * <p>The queue holds at most {@code weather.cache.write-behind.capacity} keys. What happens to an entry that does
+ * not fit is set by {@code weather.cache.write-behind.overflow}, see {@link Overflow}. Entries of a batch that
+ * cannot be written are not retried; the next fetch of their city writes them again. On shutdown the queue is
+ * flushed for at most {@code weather.cache.write-behind.shutdown-timeout}.
+ *
+ * <p>The number of queued keys is published as the {@code weather_cache_write_behind_depth} gauge and the time from
+ * queueing an entry to the end of its write in the {@code weather_cache_write_behind_lag} timer. What became of each
+ * entry is counted in {@code weather_cache_write_behind_entries} under the {@code result} tag: {@code written},
+ * {@code coalesced}, {@code dropped}, {@code failed} or {@code direct}.
+ */
+@Component
+public class WriteBehindQueue {
+
+    /**
+     * What to do with an entry when the queue is full.
+     */
+    public enum Overflow {
+
+        /**
+         * Discards the entry that does not fit; the queued entries are written.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Discards the entry queued first to make room for the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Writes the entry that does not fit directly and makes the request wait for it, so that requests slow down
+         * to the pace Redis accepts writes at.
+         */
+        BACKPRESSURE
+    }
+
+    @Autowired
+    WeatherCache weatherCache;
+
+    @Autowired
+    LocalWeatherCache localCache;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.cache.write-behind.capacity:10000}")
+    int capacity;
+
+    @Value("${weather.cache.write-behind.batch-size:64}")
+    int batchSize;
+
+    @Value("${weather.cache.write-behind.flush-interval:50ms}")
+    Duration flushInterval;
+
+    @Value("${weather.cache.write-behind.overflow:DROP_OLDEST}")
+    Overflow overflow;
+
+    @Value("${weather.cache.write-behind.shutdown-timeout:5s}")
+    Duration shutdownTimeout;
+
+    /**
+     * What became of a queued entry, used as the {@code result} tag of {@code weather_cache_write_behind_entries}.
+     */
+    private enum WriteResult {
+        WRITTEN, COALESCED, DROPPED, FAILED, DIRECT;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    /**
+     * The outcome of queueing an entry.
+     *
+     * @param accepted A {@link Mono} that completes once the entry is queued, or once it is written if the queue is
+     *                 full and the overflow policy is {@link Overflow#BACKPRESSURE}.
+     * @param written  A {@link Mono} that completes once the entry, or a newer entry of its key, is in Redis, and
+     *                 errors if it was dropped or could not be written.
+     */
+    public record Enqueued(Mono<Void> accepted, Mono<Void> written) {
+    }
+
+    /**
+     * An entry waiting to be written, with the time its key was queued and the signal of its write.
+     */
+    private record PendingWrite(CachedWeather entry, long queuedAt, Sinks.Empty<Void> written) {
+    }
+
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private final Map<WriteResult, Counter> results = new EnumMap<>(WriteResult.class);
+
+    private Timer lag;
+
+    private static final Logger logger = LogManager.getLogger(WriteBehindQueue.class);
+
+    /**
+     * Queues an entry to be written to Redis, and copies it into the local tier.
+     *
+     * @param key   The cache key of the entry.
+     * @param entry The entry to write.
+     * @return When the entry was accepted and when it was written.
+     */
+    public Enqueued enqueue(String key, CachedWeather entry) {
+        localCache.put(key, entry);
+        WriteResult result = null;
+        PendingWrite dropped = null;
+        PendingWrite queued;
+        int depth;
+        synchronized (pending) {
+            queued = pending.get(key);
+            if (queued != null) {
+                queued = new PendingWrite(entry, queued.queuedAt(), queued.written());
+                result = WriteResult.COALESCED;
+            } else if (pending.size() < capacity) {
+                queued = new PendingWrite(entry, System.nanoTime(), Sinks.empty());
+            } else if (overflow == Overflow.DROP_OLDEST) {
+                Iterator<Map.Entry<String, PendingWrite>> oldest = pending.entrySet().iterator();
+                Map.Entry<String, PendingWrite> evicted = oldest.next();
+                logger.warn("Write-behind queue is full, dropping the entry of {}", evicted.getKey());
+                dropped = evicted.getValue();
+                oldest.remove();
+                queued = new PendingWrite(entry, System.nanoTime(), Sinks.empty());
+                result = WriteResult.DROPPED;
+            } else {
+                result = overflow == Overflow.BACKPRESSURE ? WriteResult.DIRECT : WriteResult.DROPPED;
+            }
+            if (queued != null) {
+                pending.put(key, queued);
+            }
+            depth = pending.size();
+        }
+        if (result != null) {
+            results.get(result).increment();
+        }
+        if (dropped != null) {
+            dropped.written().tryEmitError(new IllegalStateException("Dropped from the full write-behind queue"));
+        }
+        if (result == WriteResult.DIRECT) {
+            Mono<Void> write = weatherCache.put(key, entry).then().cache();
+            return new Enqueued(write, write);
+        }
+        if (queued == null) {
+            logger.warn("Write-behind queue is full, dropping the entry of {}", key);
+            return new Enqueued(Mono.empty(),
+                    Mono.error(new IllegalStateException("Dropped from the full write-behind queue")));
+        }
+        schedule(depth, false);
+        return new Enqueued(Mono.empty(), queued.written().asMono());
+    }
+
+    /**
+     * @return The number of keys waiting to be written.
+     */
+    public int getDepth() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Writes the next batch of queued entries, unless a batch is already being written.
+     *
+     * @return A {@link Mono} emitting the number of entries written, or empty if a batch is already being written.
+     */
+    Mono<Long> flush() {
+        return Mono.defer(() -> {
+            if (!flushing.compareAndSet(false, true)) {
+                return Mono.empty();
+            }
+            Map<String, PendingWrite> batch = drain();
+            if (batch.isEmpty()) {
+                flushing.set(false);
+                return Mono.just(0L);
+            }
+            Map<String, CachedWeather> entries = new LinkedHashMap<>();
+            batch.forEach((key, write) -> entries.put(key, write.entry()));
+            return weatherCache.putAll(entries)
+                    .onErrorResume(e -> Mono.just(Set.of()))
+                    .doOnNext(written -> {
+                        long now = System.nanoTime();
+                        batch.forEach((key, write) -> {
+                            lag.record(now - write.queuedAt(), TimeUnit.NANOSECONDS);
+                            if (written.contains(key)) {
+                                write.written().tryEmitEmpty();
+                            } else {
+                                write.written().tryEmitError(new IllegalStateException("Write to Redis failed"));
+                            }
+                        });
+                        results.get(WriteResult.WRITTEN).increment(written.size());
+                        results.get(WriteResult.FAILED).increment(batch.size() - written.size());
+                    })
+                    .map(written -> (long) written.size())
+                    .doFinally(signal -> {
+                        flushing.set(false);
+                        schedule(getDepth(), true);
+                    });
+        });
+    }
+
+    /**
+     * Flushes right away once a batch is full, and after the flush interval once the first entry is queued or a
+     * flush leaves entries behind.
+     */
+    private void schedule(int depth, boolean afterFlush) {
+        if (depth >= batchSize) {
+            flush().subscribe();
+        } else if (depth == 1 || (afterFlush && depth > 0)) {
+            Mono.delay(flushInterval).flatMap(tick -> flush()).subscribe();
+        }
+    }
+
+    private Map<String, PendingWrite> drain() {
+        Map<String, PendingWrite> batch = new LinkedHashMap<>();
+        synchronized (pending) {
+            Iterator<Map.Entry<String, PendingWrite>> queued = pending.entrySet().iterator();
+            while (queued.hasNext() && batch.size() < batchSize) {
+                Map.Entry<String, PendingWrite> next = queued.next();
+                batch.put(next.getKey(), next.getValue());
+                queued.remove();
+            }
+        }
+        return batch;
+    }
+
+    @PostConstruct
+    void init() {
+        for (WriteResult result : WriteResult.values()) {
+            results.put(result, Counter.builder("weather_cache_write_behind_entries")
+                    .tag("result", result.tag)
+                    .description("Entries queued to be written to Redis, by what became of them")
+                    .register(meterRegistry));
+        }
+        Gauge.builder("weather_cache_write_behind_depth", this, WriteBehindQueue::getDepth)
+                .description("Keys waiting to be written to Redis")
+                .register(meterRegistry);
+        lag = Timer.builder("weather_cache_write_behind_lag")
+                .description("Time from queueing an entry to the end of its write to Redis")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void destroy() throws InterruptedException {
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        while (getDepth() > 0 && System.nanoTime() - deadline < 0) {
+            try {
+                if (flush().block(shutdownTimeout) == null) {
+                    Thread.sleep(10);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Error flushing the write-behind queue: {}", e.getMessage());
+                break;
+            }
+        }
+        Map<String, PendingWrite> lost = new LinkedHashMap<>();
+        synchronized (pending) {
+            lost.putAll(pending);
+            pending.clear();
+        }
+        if (!lost.isEmpty()) {
+            results.get(WriteResult.DROPPED).increment(lost.size());
+            logger.warn("Write-behind queue not flushed on shutdown, {} entries were not written", lost.size());
+            lost.values().forEach(write -> write.written()
+                    .tryEmitError(new IllegalStateException("Write-behind queue not flushed on shutdown")));
+        }
+    }
+}
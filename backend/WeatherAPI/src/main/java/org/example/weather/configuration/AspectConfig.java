@@ -1,9 +0,0 @@
-package org.example.weather.configuration;
-
-import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.EnableAspectJAutoProxy;
-
-@Configuration
-@EnableAspectJAutoProxy
-public class AspectConfig {
-}
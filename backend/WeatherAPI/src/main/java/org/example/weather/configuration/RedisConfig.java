@@ -3,44 +3,62 @@ package org.example.weather.configuration;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.example.weather.models.WeatherData;
+import io.lettuce.core.ReadFrom;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.WeatherCodec;
+import org.example.weather.cache.WeatherRedisSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
-import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.StringUtils;
 
 @Configuration
 public class RedisConfig {
 
-    @Bean
-    @Primary
-    public ReactiveRedisConnectionFactory reactiveRedisConnectionFactory() {
-        return new LettuceConnectionFactory("localhost", 6379 );
-    }
+    @Value("${weather.cache.codec:JSON}")
+    private WeatherCodec codec;
 
+    @Value("${weather.redis.read-from:}")
+    private String readFrom;
 
+    @Bean
+    public LettuceClientConfigurationBuilderCustomizer readFromCustomizer() {
+        return builder -> {
+            if (StringUtils.hasText(readFrom)) {
+                builder.readFrom(ReadFrom.valueOf(readFrom));
+            }
+        };
+    }
 
     @Bean
-    public ReactiveRedisTemplate<String, WeatherData> reactiveRedisTemplate(
+    @DependsOn("redisConnectionMetrics")
+    public ReactiveRedisTemplate<String, CachedWeather> reactiveRedisTemplate(
             ReactiveRedisConnectionFactory factory) {
         StringRedisSerializer keySerializer = new StringRedisSerializer();
-        Jackson2JsonRedisSerializer<WeatherData> valueSerializer = new Jackson2JsonRedisSerializer<>(WeatherData.class);
 
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false); // Игнорировать неизвестные свойства
 
-        valueSerializer.setObjectMapper(objectMapper);
+        WeatherRedisSerializer valueSerializer = new WeatherRedisSerializer(codec, objectMapper);
 
-        RedisSerializationContext.RedisSerializationContextBuilder<String, WeatherData> builder =
+        RedisSerializationContext.RedisSerializationContextBuilder<String, CachedWeather> builder =
                 RedisSerializationContext.newSerializationContext(keySerializer);
-        RedisSerializationContext<String, WeatherData> context =
+        RedisSerializationContext<String, CachedWeather> context =
                 builder.value(valueSerializer).build();
 
         return new ReactiveRedisTemplate<>(factory, context);
     }
+
+    @Bean
+    @DependsOn("redisConnectionMetrics")
+    public ReactiveStringRedisTemplate reactiveStringRedisTemplate(ReactiveRedisConnectionFactory factory) {
+        return new ReactiveStringRedisTemplate(factory);
+    }
 }
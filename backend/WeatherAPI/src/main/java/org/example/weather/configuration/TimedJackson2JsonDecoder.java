@@ -0,0 +1,41 @@
+package org.example.weather.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.util.MimeType;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Jackson JSON decoder that records the time spent turning each complete response body into an object.
+ *
+ * <p>{@code bodyToMono} joins the network buffers of a response and decodes them in one call of
+ * {@link #decode(DataBuffer, ResolvableType, MimeType, Map)}, so the recorded time is the pure decoding cost,
+ * without waiting for the network.
+ */
+public class TimedJackson2JsonDecoder extends Jackson2JsonDecoder {
+
+    private final Timer decodeLatency;
+
+    public TimedJackson2JsonDecoder(ObjectMapper objectMapper, Timer decodeLatency) {
+        super(objectMapper);
+        this.decodeLatency = decodeLatency;
+    }
+
+    @Override
+    public Object decode(DataBuffer dataBuffer, ResolvableType targetType, MimeType mimeType,
+                         Map<String, Object> hints) throws DecodingException {
+        long start = System.nanoTime();
+        try {
+            return super.decode(dataBuffer, targetType, mimeType, hints);
+        } finally {
+            decodeLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
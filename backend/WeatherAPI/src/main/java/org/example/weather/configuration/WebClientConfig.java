@@ -1,14 +1,88 @@
 package org.example.weather.configuration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
 public class WebClientConfig {
 
+    @Value("${weather.upstream.base-url:https://api.weatherapi.com/v1}")
+    private String baseUrl;
+
+    @Value("${weather.upstream.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${weather.upstream.response-timeout:5s}")
+    private Duration responseTimeout;
+
+    @Value("${weather.upstream.pool.max-connections:64}")
+    private int maxConnections;
+
+    @Value("${weather.upstream.pool.pending-acquire-max-count:1024}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${weather.upstream.pool.pending-acquire-timeout:2s}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${weather.upstream.pool.max-idle-time:30s}")
+    private Duration maxIdleTime;
+
+    @Value("${weather.upstream.pool.max-life-time:5m}")
+    private Duration maxLifeTime;
+
+    @Value("${weather.upstream.pool.evict-in-background:15s}")
+    private Duration evictInBackground;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider weatherConnectionProvider() {
+        return ConnectionProvider.builder("weather-upstream")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInBackground)
+                .metrics(true)
+                .build();
+    }
+
     @Bean
-    public WebClient webClient() {
-        return WebClient.create();
+    public WebClient webClient(WebClient.Builder builder, ConnectionProvider weatherConnectionProvider,
+                               ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        HttpClient httpClient = HttpClient.create(weatherConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(responseTimeout)
+                .compress(true)
+                .metrics(true, uri -> {
+                    int query = uri.indexOf('?');
+                    return query < 0 ? uri : uri.substring(0, query);
+                });
+        Timer decodeLatency = Timer.builder("weather_upstream_decode_latency")
+                .description("Time spent decoding weather API response bodies")
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(Duration.ofNanos(50_000), Duration.ofNanos(100_000), Duration.ofNanos(250_000),
+                        Duration.ofMillis(1))
+                .minimumExpectedValue(Duration.ofNanos(10_000))
+                .maximumExpectedValue(Duration.ofMillis(100))
+                .register(meterRegistry);
+        return builder
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs()
+                        .jackson2JsonDecoder(new TimedJackson2JsonDecoder(objectMapper, decodeLatency)))
+                .build();
     }
 }
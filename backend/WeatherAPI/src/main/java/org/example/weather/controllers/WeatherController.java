@@ -1,26 +1,41 @@
 package org.example.weather.controllers;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
-import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import org.apache.logging.log4j.core.util.internal.LastModifiedSource;
+import org.example.weather.cache.EncodedWeather;
+import org.example.weather.models.WeatherBatchItem;
 import org.example.weather.models.WeatherData;
 
 import org.example.weather.services.WeatherService;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 
 /**
  * Controller class responsible for handling HTTP requests related to weather data.
@@ -42,6 +57,12 @@ public class WeatherController {
     @Autowired
     WeatherService weatherService;
 
+    /**
+     * Mapper used to encode the response body of entries that have no encoded body attached yet.
+     */
+    @Autowired
+    ObjectMapper objectMapper;
+
     /**
      * Endpoint to retrieve weather data for a specific city.
      *
@@ -50,8 +71,21 @@ public class WeatherController {
      * is not found, a 404 status code is returned. If there is an issue with the API token or other internal errors
      * occur, appropriate status codes are returned.
      *
-     * @param city The name of the city for which to fetch weather data. It must be a non-null, non-empty string.
-     * @return A {@link Mono<ResponseEntity<WeatherData>>} that emits a {@link ResponseEntity} containing the weather data
+     * <p>The {@code X-Cache-Status} header is {@code stale} when the data was served past its soft expiry while a
+     * background refresh runs, and {@code fresh} otherwise.
+     *
+     * <p>The body is written as already encoded JSON bytes. Entries served from the local tier carry their
+     * {@link EncodedWeather encoded body}, so a local hit is written without serializing the weather data; other
+     * entries are encoded once here. {@code Content-Length} is the exact length of that body.
+     *
+     * <p>The {@code ETag} is the content hash of the body and {@code Last-Modified} is the time the weather API last
+     * updated the observation, so both stay the same for as long as the data does, on any instance. A request whose
+     * {@code If-None-Match} or {@code If-Modified-Since} still matches is answered with 304 (Not Modified) and no
+     * body. {@code Cache-Control: max-age} is the time left until the entry's soft expiry, and zero once it is stale.
+     *
+     * @param city     The name of the city for which to fetch weather data. It must be a non-null, non-empty string.
+     * @param exchange The current exchange, used to evaluate the conditional request headers.
+     * @return A {@link Mono<ResponseEntity<byte[]>>} that emits a {@link ResponseEntity} containing the weather data
      *         if found. The response will include HTTP headers and status codes indicating success or failure.
      *
      * <p>Success response (200 OK) includes weather data for the city.
@@ -105,21 +139,105 @@ public class WeatherController {
      * @return A {@link ResponseEntity} containing the weather data if found.
      */
     @GetMapping("/getWeather/{city}")
-    public Mono<ResponseEntity<WeatherData>> getWeather(@PathVariable String city) {
-        return weatherService.getWeather(city)
-                .map(data -> ResponseEntity.ok()
+    public Mono<ResponseEntity<byte[]>> getWeather(@PathVariable String city, ServerWebExchange exchange) {
+        return weatherService.getCachedWeather(city)
+                .map(entry -> {
+                    WeatherData data = entry.getData();
+                    EncodedWeather encoded = entry.getEncoded() != null
+                            ? entry.getEncoded()
+                            : EncodedWeather.encode(objectMapper, data);
+                    String eTag = "\"" + encoded.contentHash() + "\"";
+                    long lastModified = data.getCurrentWeather() == null
+                            ? 0
+                            : data.getCurrentWeather().getLastUpdatedEpoch() * 1000;
+                    boolean notModified = lastModified > 0
+                            ? exchange.checkNotModified(eTag, Instant.ofEpochMilli(lastModified))
+                            : exchange.checkNotModified(eTag);
+
+                    ResponseEntity.BodyBuilder response = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                            .header("X-Weather-API-Version", "1.0")
+                            .header("X-Weather-API-Status", "Success")
+                            .header("Content-Language", "en-US")
+                            .header("Accept-Language", "en-US")
+                            .cacheControl(CacheControl.maxAge(entry.getFreshTtl()).mustRevalidate())
+                            .header("Access-Control-Allow-Origin", "*")
+                            .eTag(eTag)
+                            .header("X-Content-Type-Options", "nosniff")
+                            .header("Strict-Transport-Security", "max-age=31536000; includeSubDomains")
+                            .header("X-Cache-Status", entry.isStale() ? "stale" : "fresh");
+                    if (lastModified > 0) {
+                        response.lastModified(lastModified);
+                    }
+                    if (notModified) {
+                        return response.build();
+                    }
+                    return response
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .contentLength(encoded.length())
+                            .body(encoded.body());
+                });
+    }
+
+    /**
+     * Endpoint to retrieve weather data for many cities in one request.
+     *
+     * <p>This method handles POST requests whose body is a JSON array of city names. All cities are looked up in the
+     * cache at once and only the misses are fetched from the external API, see
+     * {@link WeatherService#getWeatherBatch(List)}. The response contains one item per distinct city, in the order
+     * they were requested; a city that could not be fetched carries an {@code error} instead of {@code data}, so
+     * one failing city does not fail the whole request.
+     *
+     * @param cities The names of the cities for which to fetch weather data.
+     * @return A {@link Mono<ResponseEntity<List<WeatherBatchItem>>>} that emits the items for all requested cities.
+     *         A 400 status code is returned if the batch is larger than {@code weather.batch.max-size}.
+     */
+    @Operation(
+            tags = "getWeatherApi",
+            description = "Get weather API for many cities",
+            summary = "Get weather information for a batch of cities"
+    )
+    @PostMapping("/getWeather/batch")
+    public Mono<ResponseEntity<List<WeatherBatchItem>>> getWeatherBatch(@RequestBody List<String> cities) {
+        Map<String, Integer> order = new HashMap<>();
+        for (String city : cities) {
+            order.putIfAbsent(city, order.size());
+        }
+        return weatherService.getWeatherBatch(cities)
+                .collectSortedList(Comparator.comparingInt(item -> order.get(item.getCity())))
+                .map(items -> ResponseEntity.ok()
                         .header("X-Weather-API-Version", "1.0")
                         .header("X-Weather-API-Status", "Success")
                         .header("Content-Language", "en-US")
-                        .header("X-RateLimit-Limit", "1000")
-                        .header("Accept-Language", "en-US")
-                        .header("Cache-Control", "max-age=1200, must-revalidate")
                         .header("Access-Control-Allow-Origin", "*")
-                        .header("ETag", String.valueOf(System.identityHashCode(data)))
                         .header("X-Content-Type-Options", "nosniff")
                         .header("Strict-Transport-Security", "max-age=31536000; includeSubDomains")
                         .contentType(MediaType.APPLICATION_JSON)
-                        .contentLength(data.toString().getBytes().length)
-                        .body(data));
+                        .body(items));
+    }
+
+    /**
+     * Endpoint to stream weather data for many cities as it becomes available.
+     *
+     * <p>This method handles GET requests with a comma-separated list of cities and streams the result as
+     * newline-delimited JSON ({@code application/x-ndjson}) or as server-sent events ({@code text/event-stream}),
+     * depending on the {@code Accept} header. Cached cities are written as soon as the single cache lookup returns;
+     * the remaining cities are written one by one as the external API answers, so the first bytes do not wait for
+     * the slowest city. Elements are only produced as fast as the client consumes them.
+     *
+     * <p>Cities that cannot be fetched are left out of the stream; use the batch endpoint to get per-city errors.
+     *
+     * @param cities The names of the cities for which to fetch weather data.
+     * @return A {@link Flux<WeatherData>} that emits the weather data of each city that could be fetched.
+     */
+    @Operation(
+            tags = "getWeatherApi",
+            description = "Stream weather API for many cities",
+            summary = "Stream weather information for a list of cities as it arrives"
+    )
+    @GetMapping(value = "/getWeather/stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<WeatherData> streamWeather(@RequestParam List<String> cities) {
+        return weatherService.getWeatherBatch(cities)
+                .filter(WeatherBatchItem::isSuccess)
+                .map(WeatherBatchItem::getData);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,66 @@
+package org.example.weather.endpoints;
+
+import org.example.weather.services.CityPopularity;
+import org.example.weather.services.HeavyHitterSketch;
+import org.example.weather.services.UpstreamQuota;
+import org.example.weather.services.WeatherPrefetcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Actuator endpoint {@code /actuator/prefetch} that shows the most requested cities tracked by
+ * {@link CityPopularity} with their estimated recent request counts, and how the {@link WeatherPrefetcher} is doing:
+ * its schedule and call budget, whether the {@link UpstreamQuota} currently allows it to run, and the share of
+ * prefetched entries that were requested before going stale.
+ */
+@Component
+@Endpoint(id = "prefetch")
+public class PrefetchEndpoint {
+
+    @Autowired
+    CityPopularity popularity;
+
+    @Autowired
+    WeatherPrefetcher prefetcher;
+
+    @Autowired
+    UpstreamQuota upstreamQuota;
+
+    @ReadOperation
+    public Map<String, Object> prefetch() {
+        Map<String, Object> schedule = new LinkedHashMap<>();
+        schedule.put("enabled", prefetcher.isEnabled());
+        schedule.put("interval", prefetcher.getInterval().toString());
+        schedule.put("leadTime", prefetcher.getLeadTime().toString());
+        schedule.put("maxCalls", prefetcher.getMaxCalls());
+        schedule.put("refreshesAllowed", upstreamQuota.getPressure().allowsRefresh());
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("prefetched", popularity.getPrefetchedCount());
+        results.put("hits", popularity.getHitCount());
+        results.put("hitRate", popularity.getHitRate());
+
+        List<Map<String, Object>> topK = new ArrayList<>();
+        for (HeavyHitterSketch.HeavyHitter hitter : popularity.topK()) {
+            Map<String, Object> city = new LinkedHashMap<>();
+            city.put("key", hitter.key());
+            city.put("query", hitter.query());
+            city.put("requests", hitter.count());
+            topK.add(city);
+        }
+
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("schedule", schedule);
+        state.put("results", results);
+        state.put("topK", topK);
+        return state;
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.weather.endpoints;
+
+import org.example.weather.services.UpstreamQuota;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Actuator endpoint {@code /actuator/quota} that shows the {@link UpstreamQuota} budget of the current month: the
+ * calls made and remaining, the projected usage and exhaustion time, and the resulting pressure with its effect on
+ * caching.
+ */
+@Component
+@Endpoint(id = "quota")
+public class QuotaEndpoint {
+
+    @Autowired
+    UpstreamQuota upstreamQuota;
+
+    @ReadOperation
+    public Map<String, Object> quota() {
+        UpstreamQuota.Pressure pressure = upstreamQuota.getPressure();
+        long used = upstreamQuota.getUsed();
+
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("window", upstreamQuota.getWindow().toString());
+        state.put("limit", upstreamQuota.getLimit());
+        state.put("used", used);
+        state.put("remaining", Math.max(0, upstreamQuota.getLimit() - used));
+        state.put("projectedUsage", upstreamQuota.getProjectedUsage());
+        state.put("projectedExhaustion", upstreamQuota.getProjectedExhaustion());
+        state.put("pressure", pressure);
+        state.put("ttlMultiplier", pressure.ttlMultiplier());
+        state.put("refreshesAllowed", pressure.allowsRefresh());
+        state.put("prefersStale", pressure.prefersStale());
+        return state;
+    }
+}
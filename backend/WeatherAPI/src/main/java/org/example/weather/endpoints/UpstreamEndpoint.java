@@ -0,0 +1,47 @@
+package org.example.weather.endpoints;
+
+import org.example.weather.services.AimdConcurrencyLimiter;
+import org.example.weather.services.UpstreamCircuitBreaker;
+import org.example.weather.services.UpstreamGuard;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Actuator endpoint {@code /actuator/upstream} that shows the state of the {@link UpstreamGuard} in front of the
+ * weather API: the circuit breaker state with the failure and slow-call rates of its window, and the current
+ * adaptive concurrency limit with the calls in flight.
+ */
+@Component
+@Endpoint(id = "upstream")
+public class UpstreamEndpoint {
+
+    @Autowired
+    UpstreamGuard upstreamGuard;
+
+    @ReadOperation
+    public Map<String, Object> upstream() {
+        UpstreamCircuitBreaker circuitBreaker = upstreamGuard.getCircuitBreaker();
+        AimdConcurrencyLimiter limiter = upstreamGuard.getLimiter();
+
+        Map<String, Object> breaker = new LinkedHashMap<>();
+        breaker.put("state", circuitBreaker.getState());
+        breaker.put("failureRate", circuitBreaker.getFailureRate());
+        breaker.put("slowCallRate", circuitBreaker.getSlowCallRate());
+        breaker.put("recordedCalls", circuitBreaker.getRecordedCalls());
+
+        Map<String, Object> concurrency = new LinkedHashMap<>();
+        concurrency.put("limit", limiter.getLimit());
+        concurrency.put("inFlight", limiter.getInFlight());
+
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("circuitBreaker", breaker);
+        state.put("limiter", concurrency);
+        return state;
+    }
+}
@@ -61,6 +61,27 @@ public class GlobalExceptionHandler {
         return Mono.just(responseEntity);
     }
 
+    @ExceptionHandler(value = UpstreamUnavailableException.class)
+    public final Mono<ResponseEntity<Object>> handleUpstreamUnavailableException(UpstreamUnavailableException ex) {
+        ProblemDetail problemDetail = ProblemDetail.forStatus(HttpStatus.SERVICE_UNAVAILABLE);
+        problemDetail.setTitle("ERROR");
+        problemDetail.setDetail("An error occurred: " + ex.getMessage());
+
+        ErrorResponse errorResponse = new WeatherResponseError(HttpStatus.SERVICE_UNAVAILABLE, problemDetail);
+
+        ResponseEntity<Object> responseEntity = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Weather-API-Version", "1.0")
+                .header("X-Weather-API-Status", "Error")
+                .header("X-Error-Code", "503" )
+                .header("Retry-After", "30")
+                .header("Vary", "Accept-Encoding")
+                .header("Cache-Control", "no-store")
+                .header("Access-Control-Allow-Origin", "*")
+                .body(errorResponse);
+        return Mono.just(responseEntity);
+    }
+
     @ExceptionHandler(value = Exception.class)
     public final Mono<ResponseEntity<Object>> handleServerErrorException(Exception ex) {
         ProblemDetail problemDetail = ProblemDetail.forStatus(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -0,0 +1,15 @@
+package org.example.weather.exceptions;
+
+
+/**
+ * Thrown when a call to the weather API is not made because the circuit breaker is open, the concurrency limit
+ * has been reached or the monthly quota is used up.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UpstreamUnavailableException(String message) {
+        super(message);
+    }
+}
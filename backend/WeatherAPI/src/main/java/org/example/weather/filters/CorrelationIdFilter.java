@@ -0,0 +1,100 @@
+package org.example.weather.filters;
+
+import io.micrometer.context.ContextRegistry;
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * Web filter that tags every request with a correlation ID and decides whether its logs are sampled.
+ *
+ * <p>The ID is taken from the {@code weather.logging.correlation-header} request header if the client sent a valid
+ * one, and generated otherwise. It is echoed in the same response header. A fraction
+ * {@code weather.logging.sample-rate} of the requests is sampled; the others are marked with {@code sampled=false},
+ * which makes the {@code DynamicThresholdFilter} of {@code log4j2-spring.xml} drop their messages below WARN before
+ * they are formatted, so warnings and errors are always logged.
+ *
+ * <p>Both values are written to the Reactor context of the request. With {@code spring.reactor.context-propagation}
+ * set to {@code auto}, Reactor copies them into the log4j2 {@link ThreadContext} keys {@code requestId} and
+ * {@code sampled} on whichever thread handles the request, so every log line of the request carries its ID.
+ */
+@Component
+public class CorrelationIdFilter implements WebFilter, Ordered {
+
+    /**
+     * {@link ThreadContext} and Reactor context key of the correlation ID.
+     */
+    public static final String REQUEST_ID_KEY = "requestId";
+
+    /**
+     * {@link ThreadContext} and Reactor context key of the sampling decision.
+     */
+    public static final String SAMPLED_KEY = "sampled";
+
+    private static final int MAX_ID_LENGTH = 64;
+
+    @Value("${weather.logging.correlation-header:X-Request-Id}")
+    String header;
+
+    @Value("${weather.logging.sample-rate:1.0}")
+    double sampleRate;
+
+    private static final Logger logger = LogManager.getLogger(CorrelationIdFilter.class);
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String requestId = exchange.getRequest().getHeaders().getFirst(header);
+        if (!isValid(requestId)) {
+            requestId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        }
+        boolean sampled = sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        exchange.getResponse().getHeaders().set(header, requestId);
+        Context context = Context.of(REQUEST_ID_KEY, requestId, SAMPLED_KEY, Boolean.toString(sampled));
+        return chain.filter(exchange).contextWrite(context);
+    }
+
+    /**
+     * Runs first, so that the logs of every other filter carry the correlation ID.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    private static boolean isValid(String requestId) {
+        if (requestId == null || requestId.isEmpty() || requestId.length() > MAX_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < requestId.length(); i++) {
+            char c = requestId.charAt(i);
+            if (!(Character.isLetterOrDigit(c) && c < 128) && c != '-' && c != '_' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @PostConstruct
+    void init() {
+        ContextRegistry registry = ContextRegistry.getInstance();
+        for (String key : new String[]{REQUEST_ID_KEY, SAMPLED_KEY}) {
+            registry.registerThreadLocalAccessor(key,
+                    () -> ThreadContext.get(key),
+                    value -> ThreadContext.put(key, value),
+                    () -> ThreadContext.remove(key));
+        }
+        logger.info("Correlation IDs in {}, logs of {} of the requests sampled", header, sampleRate);
+    }
+}
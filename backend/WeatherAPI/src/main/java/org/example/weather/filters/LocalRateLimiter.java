@@ -0,0 +1,76 @@
+package org.example.weather.filters;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * In-memory token buckets, one per client key.
+ *
+ * <p>Each bucket holds {@code capacity} tokens and is refilled at {@code capacity} tokens per {@code period}. It is
+ * implemented as the generic cell rate algorithm: the whole state of a bucket is the theoretical arrival time of
+ * the next request in a single {@link AtomicLong}, so taking a token is one compare-and-set and never blocks.
+ *
+ * <p>Buckets live in a Caffeine cache, whose table is striped so that lookups of different clients do not contend.
+ * It is bounded to {@code maxKeys} clients and drops a bucket once it has not been used for a full {@code period},
+ * at which point the bucket would have refilled anyway. Cache maintenance runs on the calling thread, because
+ * handing it to the common pool woke a worker thread so often that it dominated the cost of a check.
+ */
+public class LocalRateLimiter {
+
+    private final long intervalNanos;
+
+    private final long toleranceNanos;
+
+    private final Cache<String, AtomicLong> buckets;
+
+    /**
+     * @param capacity The number of tokens in a full bucket.
+     * @param period   The time it takes to refill an empty bucket.
+     * @param maxKeys  The maximum number of clients whose buckets are kept.
+     */
+    public LocalRateLimiter(long capacity, Duration period, long maxKeys) {
+        this.intervalNanos = Math.max(1, period.toNanos() / capacity);
+        this.toleranceNanos = intervalNanos * capacity;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(period)
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /**
+     * Takes a token from the client's bucket.
+     *
+     * @param key The client key.
+     * @return Whether the request is allowed, with the remaining tokens or the time until the next one.
+     */
+    public RateLimitDecision tryAcquire(String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    RateLimitDecision tryAcquire(String key, long now) {
+        AtomicLong bucket = buckets.get(key, k -> new AtomicLong(Long.MIN_VALUE));
+        while (true) {
+            long arrival = bucket.get();
+            long next = Math.max(arrival, now) + intervalNanos;
+            long wait = next - now - toleranceNanos;
+            if (wait > 0) {
+                return RateLimitDecision.reject(wait);
+            }
+            if (bucket.compareAndSet(arrival, next)) {
+                return RateLimitDecision.allow((toleranceNanos - (next - now)) / intervalNanos);
+            }
+        }
+    }
+
+    /**
+     * @return The approximate number of clients whose buckets are kept.
+     */
+    public long size() {
+        return buckets.estimatedSize();
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.weather.filters;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Outcome of taking a token from a client's bucket.
+ *
+ * @param allowed         {@code true} if a token was available and the request may proceed.
+ * @param remaining       The number of requests the client may still make right away.
+ * @param retryAfterNanos The time until the next token is available, or 0 if the request was allowed.
+ */
+public record RateLimitDecision(boolean allowed, long remaining, long retryAfterNanos) {
+
+    public static RateLimitDecision allow(long remaining) {
+        return new RateLimitDecision(true, remaining, 0);
+    }
+
+    public static RateLimitDecision reject(long retryAfterNanos) {
+        return new RateLimitDecision(false, 0, retryAfterNanos);
+    }
+
+    /**
+     * @return The time until the next token is available, rounded up to whole seconds as used by
+     *         {@code Retry-After}.
+     */
+    public long retryAfterSeconds() {
+        return (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+}
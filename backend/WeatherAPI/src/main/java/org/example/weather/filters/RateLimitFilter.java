@@ -0,0 +1,174 @@
+package org.example.weather.filters;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Set;
+
+
+/**
+ * Web filter that limits the rate of requests each client makes to the weather endpoints.
+ *
+ * <p>A client is identified by the API key in the {@code weather.ratelimit.api-key-header} header if it is one of the
+ * keys issued in {@code weather.ratelimit.api-keys}, and by its remote address otherwise, so that sending made-up
+ * keys does not get a client fresh buckets. Behind a load balancer listed in {@code weather.forwarded.trusted-proxies}
+ * the remote address is the one the balancer forwarded, since {@link TrustedProxyForwardedHeaderTransformer} applies
+ * its forwarded headers before any filter sees the request; those of other clients are ignored. Each client has a
+ * token bucket of {@code weather.ratelimit.capacity} requests that refills over {@code weather.ratelimit.period}.
+ * Depending on {@code weather.ratelimit.mode} the buckets are kept in memory by {@link LocalRateLimiter} or shared by
+ * all instances in Redis by {@link RedisRateLimiter}. If Redis cannot be reached, the local buckets are used instead,
+ * so the limit is still enforced per instance.
+ *
+ * <p>Every limited response carries {@code X-RateLimit-Limit} and {@code X-RateLimit-Remaining}. A request without
+ * a token left is answered with 429 (Too Many Requests) and a {@code Retry-After} header with the number of seconds
+ * until the next token is available, without reaching the controller.
+ *
+ * <p>Decisions are counted in {@code weather_ratelimit_requests} under the {@code result} tag, Redis failures in
+ * {@code weather_ratelimit_redis_errors}, and the number of clients with a local bucket is published as the
+ * {@code weather_ratelimit_local_keys} gauge.
+ */
+@Component
+public class RateLimitFilter implements WebFilter, Ordered {
+
+    @Autowired
+    ReactiveStringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.ratelimit.enabled:true}")
+    boolean enabled;
+
+    @Value("${weather.ratelimit.mode:LOCAL}")
+    RateLimitMode mode;
+
+    @Value("${weather.ratelimit.capacity:1000}")
+    long capacity;
+
+    @Value("${weather.ratelimit.period:1h}")
+    Duration period;
+
+    @Value("${weather.ratelimit.local.max-keys:100000}")
+    long maxKeys;
+
+    @Value("${weather.ratelimit.api-key-header:X-API-Key}")
+    String apiKeyHeader;
+
+    @Value("${weather.ratelimit.api-keys:}")
+    Set<String> apiKeys;
+
+    @Value("${weather.ratelimit.path-prefix:/weatherAPI/}")
+    String pathPrefix;
+
+    private LocalRateLimiter localLimiter;
+
+    private RedisRateLimiter redisLimiter;
+
+    private String limitHeader;
+
+    private Counter allowed;
+
+    private Counter rejected;
+
+    private Counter redisErrors;
+
+    private static final Logger logger = LogManager.getLogger(RateLimitFilter.class);
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!enabled || !exchange.getRequest().getPath().value().startsWith(pathPrefix)) {
+            return chain.filter(exchange);
+        }
+        return acquire(clientKey(exchange.getRequest()))
+                .flatMap(decision -> {
+                    ServerHttpResponse response = exchange.getResponse();
+                    HttpHeaders headers = response.getHeaders();
+                    headers.set("X-RateLimit-Limit", limitHeader);
+                    headers.set("X-RateLimit-Remaining", Long.toString(decision.remaining()));
+                    if (decision.allowed()) {
+                        allowed.increment();
+                        return chain.filter(exchange);
+                    }
+                    rejected.increment();
+                    headers.set(HttpHeaders.RETRY_AFTER, Long.toString(decision.retryAfterSeconds()));
+                    response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+                    return response.setComplete();
+                });
+    }
+
+    /**
+     * Runs after the filters that only decorate the exchange and before any that do real work.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 10;
+    }
+
+    private Mono<RateLimitDecision> acquire(String client) {
+        if (redisLimiter == null) {
+            return Mono.just(localLimiter.tryAcquire(client));
+        }
+        return redisLimiter.tryAcquire(client)
+                .onErrorResume(e -> {
+                    redisErrors.increment();
+                    logger.warn("Rate limit check in Redis failed, using local buckets: {}", e.getMessage());
+                    return Mono.just(localLimiter.tryAcquire(client));
+                });
+    }
+
+    private String clientKey(ServerHttpRequest request) {
+        String apiKey = request.getHeaders().getFirst(apiKeyHeader);
+        if (apiKey != null && apiKeys.contains(apiKey)) {
+            return "key:" + apiKey;
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null) {
+            return "ip:unknown";
+        }
+        return "ip:" + (remoteAddress.getAddress() != null
+                ? remoteAddress.getAddress().getHostAddress()
+                : remoteAddress.getHostString());
+    }
+
+    @PostConstruct
+    void init() {
+        localLimiter = new LocalRateLimiter(capacity, period, maxKeys);
+        redisLimiter = mode == RateLimitMode.REDIS ? new RedisRateLimiter(stringRedisTemplate, capacity, period) : null;
+        limitHeader = Long.toString(capacity);
+        allowed = Counter.builder("weather_ratelimit_requests")
+                .tag("result", "allowed")
+                .description("Requests admitted by the rate limit")
+                .register(meterRegistry);
+        rejected = Counter.builder("weather_ratelimit_requests")
+                .tag("result", "rejected")
+                .description("Requests rejected with 429 by the rate limit")
+                .register(meterRegistry);
+        redisErrors = Counter.builder("weather_ratelimit_redis_errors")
+                .description("Rate limit checks that fell back to local buckets because Redis failed")
+                .register(meterRegistry);
+        Gauge.builder("weather_ratelimit_local_keys", localLimiter, LocalRateLimiter::size)
+                .description("Clients with a token bucket in local memory")
+                .register(meterRegistry);
+        logger.info("Rate limit of {} requests per {} per client, buckets kept {}, {} API keys issued", capacity,
+                period, mode, apiKeys.size());
+    }
+}
@@ -0,0 +1,20 @@
+package org.example.weather.filters;
+
+
+/**
+ * Where {@link RateLimitFilter} keeps the token buckets of its clients.
+ *
+ * <p>The mode is selected per deployment with the {@code weather.ratelimit.mode} property.
+ */
+public enum RateLimitMode {
+
+    /**
+     * Buckets are kept in memory by {@link LocalRateLimiter}; every instance enforces the limit on its own.
+     */
+    LOCAL,
+
+    /**
+     * Buckets are kept in Redis by {@link RedisRateLimiter}, so the limit holds across all instances.
+     */
+    REDIS
+}
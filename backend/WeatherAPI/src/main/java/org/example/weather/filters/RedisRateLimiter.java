@@ -0,0 +1,65 @@
+package org.example.weather.filters;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Token buckets kept in Redis, so that all instances share one bucket per client.
+ *
+ * <p>The buckets follow the same generic cell rate algorithm as {@link LocalRateLimiter}. Each bucket is a single
+ * Redis key holding the theoretical arrival time of the next request, read and updated by the
+ * {@code scripts/rate_limit.lua} script in one atomic step on the server, timed by the Redis clock so that clock
+ * skew between instances does not matter. The key expires as soon as the bucket would be full again.
+ */
+public class RedisRateLimiter {
+
+    /**
+     * Prefix of the Redis keys that hold the buckets.
+     */
+    public static final String KEY_PREFIX = "weather:ratelimit:";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/rate_limit.lua"), List.class);
+
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
+
+    private final List<String> args;
+
+    /**
+     * @param stringRedisTemplate The template used to run the script.
+     * @param capacity            The number of tokens in a full bucket.
+     * @param period              The time it takes to refill an empty bucket.
+     */
+    public RedisRateLimiter(ReactiveStringRedisTemplate stringRedisTemplate, long capacity, Duration period) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        long intervalMicros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(period.toNanos()) / capacity);
+        this.args = List.of(Long.toString(intervalMicros), Long.toString(intervalMicros * capacity));
+    }
+
+    /**
+     * Takes a token from the client's bucket.
+     *
+     * @param key The client key.
+     * @return A {@link Mono} emitting whether the request is allowed, or an error if Redis cannot be reached.
+     */
+    public Mono<RateLimitDecision> tryAcquire(String key) {
+        return stringRedisTemplate.execute(SCRIPT, List.of(KEY_PREFIX + key), args)
+                .next()
+                .map(RedisRateLimiter::toDecision);
+    }
+
+    private static RateLimitDecision toDecision(List<?> result) {
+        if (((Number) result.get(0)).longValue() == 1) {
+            return RateLimitDecision.allow(((Number) result.get(1)).longValue());
+        }
+        return RateLimitDecision.reject(TimeUnit.MICROSECONDS.toNanos(((Number) result.get(2)).longValue()));
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.weather.filters;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.adapter.ForwardedHeaderTransformer;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+
+import java.net.InetSocketAddress;
+import java.util.Set;
+
+
+/**
+ * Applies the {@code Forwarded} and {@code X-Forwarded-*} headers of requests that come from a trusted proxy, and
+ * strips them from all other requests.
+ *
+ * <p>Only requests whose remote address is one of {@code weather.forwarded.trusted-proxies} get the client address,
+ * host and scheme the proxy forwarded, which is what {@link RateLimitFilter} then limits by. Any other client could
+ * send a made-up {@code X-Forwarded-For} with every request and get a fresh bucket each time, so for those the
+ * headers are removed and the request keeps its remote address. With no trusted proxies configured, which is the
+ * default, forwarded headers are never applied. The proxies must overwrite {@code X-Forwarded-For} rather than append
+ * to it, since the first address in the header is taken as the client's.
+ *
+ * <p>The transformer is registered under the bean name the web handler looks up, and takes the place of the one
+ * {@code server.forward-headers-strategy=framework} would register, so that strategy should be left at
+ * {@code none}.
+ */
+@Component(WebHttpHandlerBuilder.FORWARDED_HEADER_TRANSFORMER_BEAN_NAME)
+public class TrustedProxyForwardedHeaderTransformer extends ForwardedHeaderTransformer {
+
+    @Value("${weather.forwarded.trusted-proxies:}")
+    Set<String> trustedProxies;
+
+    private final ForwardedHeaderTransformer remover = new ForwardedHeaderTransformer();
+
+    public TrustedProxyForwardedHeaderTransformer() {
+        remover.setRemoveOnly(true);
+    }
+
+    @Override
+    public ServerHttpRequest apply(ServerHttpRequest request) {
+        return isTrustedProxy(request.getRemoteAddress()) ? super.apply(request) : remover.apply(request);
+    }
+
+    private boolean isTrustedProxy(InetSocketAddress remoteAddress) {
+        return remoteAddress != null && remoteAddress.getAddress() != null
+                && trustedProxies.contains(remoteAddress.getAddress().getHostAddress());
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.weather.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WeatherBatchItem {
+    private String city;
+    private WeatherData data;
+    private String error;
+
+    public static WeatherBatchItem success(String city, WeatherData data) {
+        return new WeatherBatchItem(city, data, null);
+    }
+
+    public static WeatherBatchItem failure(String city, String error) {
+        return new WeatherBatchItem(city, null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -1,5 +1,6 @@
 package org.example.weather.models;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -9,6 +10,7 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public class WeatherData {
     Location location;
+    @JsonAlias("current")
     CurrentWeather currentWeather;
 
     public boolean isEmpty(){
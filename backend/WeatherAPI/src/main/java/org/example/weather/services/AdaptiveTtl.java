@@ -0,0 +1,190 @@
+package org.example.weather.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.LocationKeyResolver;
+import org.example.weather.models.WeatherData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+
+
+/**
+ * Component responsible for choosing how long a freshly fetched entry stays fresh, from when the weather API will
+ * publish the next observation of its location and how often the location is requested.
+ *
+ * <p>The weather API publishes a new observation for a location every few minutes, and reports when the current one
+ * was taken in {@code current.last_updated_epoch}. The interval between observations is learned per location from
+ * the successive observation times seen for it, starting from {@code weather.cache.adaptive.default-interval}.
+ * Differences spanning several observations, because the location was not fetched in between, are divided by the
+ * number of observations they span. The entry stays fresh until the next observation is expected, plus
+ * {@code weather.cache.adaptive.slack} for the API to publish it. If that time has just passed, the entry is fetched
+ * again after {@code weather.cache.adaptive.min-ttl}; if the location has not been updated for longer than a whole
+ * interval, after one interval.
+ *
+ * <p>Locations requested less than {@code weather.cache.adaptive.popular-requests} times recently, as estimated by
+ * {@link CityPopularity}, skip up to {@code weather.cache.adaptive.max-skipped-updates} observations, fewer the more
+ * popular they are. The result is kept between {@code weather.cache.adaptive.min-ttl} and
+ * {@code weather.cache.adaptive.max-ttl} and then multiplied by the quota pressure factor. The entry's hard expiry
+ * follows its soft expiry by the configured gap between {@code weather.cache.soft-ttl} and
+ * {@code weather.cache.hard-ttl}.
+ *
+ * <p>Entries without an observation time, or all entries while {@code weather.cache.adaptive.enabled} is off, use
+ * the configured fixed TTLs. The chosen soft TTLs are recorded in the {@code weather_cache_adaptive_ttl} timer and
+ * the number of locations with a learned interval is published as the {@code weather_cache_adaptive_locations}
+ * gauge.
+ */
+@Component
+public class AdaptiveTtl {
+
+    @Autowired
+    LocationKeyResolver keyResolver;
+
+    @Autowired
+    CityPopularity popularity;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.cache.adaptive.enabled:true}")
+    boolean enabled;
+
+    @Value("${weather.cache.adaptive.min-ttl:1m}")
+    Duration minTtl;
+
+    @Value("${weather.cache.adaptive.max-ttl:60m}")
+    Duration maxTtl;
+
+    @Value("${weather.cache.adaptive.default-interval:15m}")
+    Duration defaultInterval;
+
+    @Value("${weather.cache.adaptive.slack:1m}")
+    Duration slack;
+
+    @Value("${weather.cache.adaptive.popular-requests:10}")
+    long popularRequests;
+
+    @Value("${weather.cache.adaptive.max-skipped-updates:2}")
+    int maxSkippedUpdates;
+
+    @Value("${weather.cache.adaptive.max-locations:100000}")
+    long maxLocations;
+
+    Clock clock = Clock.systemUTC();
+
+    private Cache<String, Cadence> cadences;
+
+    private Timer chosenTtl;
+
+    /**
+     * Last observation time seen for a location and the learned interval between its observations.
+     */
+    private record Cadence(long observedAt, long intervalMillis) {
+    }
+
+    /**
+     * Creates the cache entry for weather data just fetched from the weather API.
+     *
+     * @param data          The weather data returned by the API.
+     * @param softTtl       The configured soft TTL, used if no observation time is known.
+     * @param hardTtl       The configured hard TTL, used if no observation time is known.
+     * @param ttlMultiplier The factor of the current quota pressure.
+     * @return The new cache entry.
+     */
+    public CachedWeather newEntry(WeatherData data, Duration softTtl, Duration hardTtl, int ttlMultiplier) {
+        Duration fresh = enabled ? freshTtl(data) : null;
+        if (fresh == null) {
+            return CachedWeather.of(data, softTtl.multipliedBy(ttlMultiplier), hardTtl.multipliedBy(ttlMultiplier));
+        }
+        chosenTtl.record(fresh);
+        Duration soft = fresh.multipliedBy(ttlMultiplier);
+        return CachedWeather.of(data, soft, soft.plus(hardTtl.minus(softTtl).multipliedBy(ttlMultiplier)));
+    }
+
+    /**
+     * Computes how long an entry stays fresh before the quota pressure factor is applied.
+     *
+     * @param data The weather data returned by the API.
+     * @return The soft TTL, or {@code null} if the data carries no location or observation time.
+     */
+    Duration freshTtl(WeatherData data) {
+        if (data == null || data.getCurrentWeather() == null || data.getCurrentWeather().getLastUpdatedEpoch() <= 0) {
+            return null;
+        }
+        String key = keyResolver.canonicalKey(data.getLocation());
+        if (key == null) {
+            return null;
+        }
+        long observedAt = data.getCurrentWeather().getLastUpdatedEpoch() * 1000;
+        long interval = observe(key, observedAt);
+        long now = clock.millis();
+        long untilNext = observedAt + interval + slack.toMillis() - now;
+        if (untilNext <= 0) {
+            untilNext = -untilNext < interval ? minTtl.toMillis() : interval;
+        }
+        long ttl = untilNext + skippedUpdates(key) * interval;
+        return Duration.ofMillis(Math.max(minTtl.toMillis(), Math.min(maxTtl.toMillis(), ttl)));
+    }
+
+    /**
+     * @param key The canonical key of a location.
+     * @return The learned interval between observations of the location, or {@code null} if none was seen yet.
+     */
+    public Duration getInterval(String key) {
+        Cadence cadence = cadences.getIfPresent(key);
+        return cadence == null ? null : Duration.ofMillis(cadence.intervalMillis());
+    }
+
+    private long observe(String key, long observedAt) {
+        return cadences.asMap().compute(key, (location, cadence) -> {
+            if (cadence == null) {
+                return new Cadence(observedAt, defaultInterval.toMillis());
+            }
+            long difference = observedAt - cadence.observedAt();
+            if (difference <= 0) {
+                return cadence;
+            }
+            long spanned = Math.max(1, Math.round((double) difference / cadence.intervalMillis()));
+            long sample = difference / spanned;
+            long interval = cadence.intervalMillis() + (sample - cadence.intervalMillis()) / 4;
+            return new Cadence(observedAt, Math.max(minTtl.toMillis(), Math.min(maxTtl.toMillis(), interval)));
+        }).intervalMillis();
+    }
+
+    /**
+     * The number of observations a location skips: the maximum for a location requested once, none for a location
+     * requested at least {@code weather.cache.adaptive.popular-requests} times, and in between on a logarithmic scale.
+     */
+    private long skippedUpdates(String key) {
+        long requests = popularity.estimate(key);
+        if (requests >= popularRequests || popularRequests <= 1) {
+            return 0;
+        }
+        double coldness = 1 - Math.log(Math.max(1, requests)) / Math.log(popularRequests);
+        return Math.round(maxSkippedUpdates * coldness);
+    }
+
+    @PostConstruct
+    void init() {
+        cadences = Caffeine.newBuilder()
+                .maximumSize(maxLocations)
+                .build();
+        chosenTtl = Timer.builder("weather_cache_adaptive_ttl")
+                .description("Soft TTL chosen for new entries from the observation cadence and popularity of their location")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(minTtl)
+                .maximumExpectedValue(maxTtl)
+                .register(meterRegistry);
+        Gauge.builder("weather_cache_adaptive_locations", cadences, Cache::estimatedSize)
+                .description("Locations with a learned interval between observations")
+                .register(meterRegistry);
+    }
+}
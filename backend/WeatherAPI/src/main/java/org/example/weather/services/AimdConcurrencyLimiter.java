@@ -0,0 +1,113 @@
+package org.example.weather.services;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Concurrency limit that adapts to the latency of the calls it admits, using additive increase and multiplicative
+ * decrease (AIMD).
+ *
+ * <p>A call is admitted while fewer calls than the current limit are in flight. Every call that completes within the
+ * latency threshold while the limit was actually in use raises the limit by {@code 1 / limit}, that is by about one
+ * per round trip of the whole window. A call that is slower than the threshold, or that failed because the upstream
+ * is overloaded, multiplies the limit by the backoff ratio. The limit always stays between the configured minimum and
+ * maximum.
+ */
+public class AimdConcurrencyLimiter {
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double backoffRatio;
+
+    private final long latencyThresholdNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+
+    /**
+     * @param initialLimit     The limit to start with.
+     * @param minLimit         The lowest the limit can be decreased to.
+     * @param maxLimit         The highest the limit can be increased to.
+     * @param backoffRatio     The factor the limit is multiplied by on a slow or dropped call, between 0 and 1.
+     * @param latencyThreshold The duration above which a call counts as slow, in nanoseconds.
+     */
+    public AimdConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long latencyThreshold) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThreshold;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Admits a call if the limit allows it. Every admitted call must be followed by exactly one call to
+     * {@link #onSuccess(long)}, {@link #onDropped()} or {@link #onIgnored()}.
+     *
+     * @return {@code true} if the call is admitted.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a call that completed, adjusting the limit to its latency.
+     *
+     * @param durationNanos The duration of the call.
+     */
+    public void onSuccess(long durationNanos) {
+        int current = inFlight.getAndDecrement();
+        if (durationNanos > latencyThresholdNanos) {
+            decrease();
+        } else if (current * 2 >= limit) {
+            increase();
+        }
+    }
+
+    /**
+     * Releases a call that failed because the upstream is overloaded or unavailable, and decreases the limit.
+     */
+    public void onDropped() {
+        inFlight.decrementAndGet();
+        decrease();
+    }
+
+    /**
+     * Releases a call without adjusting the limit, for example when it was cancelled.
+     */
+    public void onIgnored() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @return The current limit.
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return The number of admitted calls that have not been released yet.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void increase() {
+        limit = Math.min(maxLimit, limit + 1.0 / limit);
+    }
+
+    private synchronized void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+}
@@ -0,0 +1,181 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.example.weather.cache.CachedWeather;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Component responsible for tracking which cities are requested most often, and how many prefetched entries are
+ * actually requested before they expire.
+ *
+ * <p>Every request is counted under its canonical cache key in a {@link HeavyHitterSketch} of
+ * {@code weather.prefetch.sketch.width} by {@code weather.prefetch.sketch.depth} counters, whose
+ * {@code weather.prefetch.top-k} most frequent keys are kept by name. The counts are halved every
+ * {@code weather.prefetch.decay-interval}, so the ranking follows what is popular now.
+ *
+ * <p>Entries fetched ahead of their expiry by {@link WeatherPrefetcher} are registered here. The first request
+ * answered with such an entry is a prefetch hit. Prefetched entries are counted in {@code weather_prefetch_entries},
+ * prefetch hits in {@code weather_prefetch_hits}, and their ratio is published as the
+ * {@code weather_prefetch_hit_ratio} gauge.
+ */
+@Component
+public class CityPopularity {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.prefetch.sketch.width:4096}")
+    int width;
+
+    @Value("${weather.prefetch.sketch.depth:4}")
+    int depth;
+
+    @Value("${weather.prefetch.top-k:100}")
+    int topK;
+
+    @Value("${weather.prefetch.decay-interval:10m}")
+    Duration decayInterval;
+
+    private HeavyHitterSketch sketch;
+
+    private final Map<String, Long> prefetched = new ConcurrentHashMap<>();
+
+    private Counter prefetchedEntries;
+
+    private Counter prefetchHits;
+
+    private Disposable decayTask;
+
+    private static final Logger logger = LogManager.getLogger(CityPopularity.class);
+
+    /**
+     * Counts a request for a city.
+     *
+     * @param key   The canonical cache key the request resolved to.
+     * @param query The normalized query of the request, used to fetch the city again.
+     */
+    public void record(String key, String query) {
+        sketch.add(key, query);
+    }
+
+    /**
+     * @return The most frequently requested cities, most frequent first.
+     */
+    public List<HeavyHitterSketch.HeavyHitter> topK() {
+        return sketch.topK();
+    }
+
+    /**
+     * @param key A canonical cache key.
+     * @return The estimated number of recent requests for the key.
+     */
+    public long estimate(String key) {
+        return sketch.estimate(key);
+    }
+
+    /**
+     * Registers an entry that was fetched ahead of its expiry, replacing any earlier prefetch of the same key.
+     *
+     * @param key   The canonical cache key of the entry.
+     * @param entry The entry written to the cache.
+     */
+    public void onPrefetched(String key, CachedWeather entry) {
+        prefetched.put(key, entry.getSoftExpiresAt());
+        prefetchedEntries.increment();
+    }
+
+    /**
+     * Counts a prefetch hit if the entry a request was answered with is a prefetched entry not served before.
+     *
+     * @param key   The canonical cache key of the entry.
+     * @param entry The entry the request was answered with.
+     */
+    public void onServed(String key, CachedWeather entry) {
+        if (!prefetched.isEmpty() && prefetched.remove(key, entry.getSoftExpiresAt())) {
+            prefetchHits.increment();
+        }
+    }
+
+    /**
+     * Forgets prefetched entries that went stale without being requested.
+     *
+     * @return The number of entries forgotten.
+     */
+    public int expirePrefetched() {
+        long now = System.currentTimeMillis();
+        int before = prefetched.size();
+        prefetched.values().removeIf(softExpiresAt -> softExpiresAt <= now);
+        return before - prefetched.size();
+    }
+
+    /**
+     * @return The share of prefetched entries that were requested before going stale, or 0 before the first
+     *         prefetch.
+     */
+    public double getHitRate() {
+        double entries = prefetchedEntries.count();
+        return entries == 0 ? 0 : prefetchHits.count() / entries;
+    }
+
+    /**
+     * @return The number of entries prefetched since startup.
+     */
+    public long getPrefetchedCount() {
+        return (long) prefetchedEntries.count();
+    }
+
+    /**
+     * @return The number of prefetched entries that were requested before going stale.
+     */
+    public long getHitCount() {
+        return (long) prefetchHits.count();
+    }
+
+    /**
+     * Halves the request counts, so that cities no longer requested fall out of the ranking.
+     */
+    void decay() {
+        sketch.decay();
+    }
+
+    @PostConstruct
+    void init() {
+        sketch = new HeavyHitterSketch(width, depth, topK);
+        logger.info("Tracking the {} most requested cities in a {}x{} sketch of {} bytes",
+                topK, depth, width, sketch.sizeInBytes());
+        prefetchedEntries = Counter.builder("weather_prefetch_entries")
+                .description("Entries fetched ahead of their expiry because their city is popular")
+                .register(meterRegistry);
+        prefetchHits = Counter.builder("weather_prefetch_hits")
+                .description("Requests answered with a prefetched entry that had not been served before")
+                .register(meterRegistry);
+        Gauge.builder("weather_prefetch_hit_ratio", this, CityPopularity::getHitRate)
+                .description("Share of prefetched entries that were requested before going stale")
+                .register(meterRegistry);
+        decayTask = Flux.interval(decayInterval, decayInterval)
+                .subscribe(tick -> decay());
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (decayTask != null) {
+            decayTask.dispose();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.WeatherCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+
+/**
+ * Component responsible for coalescing upstream calls for the same key across all instances sharing a Redis server,
+ * the way {@link WeatherRequestCoalescer} does within one instance.
+ *
+ * <p>Before fetching a key, an instance takes a lease on it: it sets {@code weather:lease:<key>} to a random token
+ * with {@code SET NX PX} and {@code weather.cluster.single-flight.lease-ttl}. The instance that gets the lease first
+ * checks whether Redis already holds an entry fetched by another instance, and fetches the key otherwise. The caller
+ * gets the entry as soon as it is fetched, but the lease is only replaced by a marker naming the key the entry was
+ * stored under once the entry is in Redis, whether the {@link org.example.weather.cache.CachePolicy} writes it
+ * before answering, in the background or through the write-behind queue. The marker is kept for
+ * {@code weather.cluster.single-flight.result-ttl}. If the fetch or the write fails, or the caller holding the lease
+ * cancels before the entry is fetched, the lease is deleted.
+ *
+ * <p>The other instances do not fetch the key themselves. They poll the lease every
+ * {@code weather.cluster.single-flight.poll-interval} and return the entry named by the marker as soon as it
+ * appears. Every poll also tries to take the lease, so if the holder dies or its fetch fails, the lease expires or
+ * disappears and the next instance to poll fetches the key instead. An instance that has waited
+ * {@code weather.cluster.single-flight.max-wait}, or that cannot reach Redis, fetches the key itself.
+ *
+ * <p>Leases are released by the {@code scripts/lease_release.lua} script, which compares the token and deletes or
+ * replaces the lease in one atomic step on the server. A lease that expired and was taken by another instance is
+ * therefore left alone. The lease TTL should still be well above the upstream response timeout, since another
+ * instance fetches the key as soon as the lease expires.
+ *
+ * <p>How each call was coordinated is counted in {@code weather_upstream_leases} under the {@code result} tag:
+ * {@code acquired}, {@code takeover} (acquired after waiting for another instance), {@code shared} (answered with
+ * another instance's entry), {@code timeout} or {@code unavailable}.
+ */
+@Component
+public class ClusterRequestCoalescer {
+
+    /**
+     * Prefix of the Redis keys that hold the leases.
+     */
+    public static final String KEY_PREFIX = "weather:lease:";
+
+    /**
+     * Prefix of the lease value that names the canonical key a finished fetch was stored under.
+     */
+    static final String DONE_PREFIX = "done:";
+
+    private static final RedisScript<Long> RELEASE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/lease_release.lua"), Long.class);
+
+    @Autowired
+    ReactiveStringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    WeatherCache weatherCache;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.cluster.single-flight.enabled:true}")
+    boolean enabled;
+
+    @Value("${weather.cluster.single-flight.lease-ttl:10s}")
+    Duration leaseTtl;
+
+    @Value("${weather.cluster.single-flight.result-ttl:2s}")
+    Duration resultTtl;
+
+    @Value("${weather.cluster.single-flight.poll-interval:50ms}")
+    Duration pollInterval;
+
+    @Value("${weather.cluster.single-flight.max-wait:15s}")
+    Duration maxWait;
+
+    /**
+     * How a call was coordinated, used as the {@code result} tag of {@code weather_upstream_leases}.
+     */
+    private enum LeaseResult {
+        ACQUIRED, TAKEOVER, SHARED, TIMEOUT, UNAVAILABLE;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    /**
+     * An entry fetched from the external API.
+     *
+     * @param entry     The fetched entry.
+     * @param storedKey The cache key the entry is stored under.
+     * @param written   A {@link Mono} that completes once the entry is in Redis, and errors if it could not be
+     *                  written. It is subscribed once.
+     */
+    public record Fetched(CachedWeather entry, String storedKey, Mono<Void> written) {
+    }
+
+    private final Map<LeaseResult, Counter> results = new EnumMap<>(LeaseResult.class);
+
+    private static final Logger logger = LogManager.getLogger(ClusterRequestCoalescer.class);
+
+    /**
+     * Executes the loader for the given key under a cluster-wide lease, or waits for the instance holding the lease
+     * and returns its entry.
+     *
+     * @param key         The cache key of the city.
+     * @param minFreshTtl The fresh TTL an entry written by another instance must have left to be returned instead
+     *                    of fetching; {@link Duration#ZERO} accepts any entry that is not stale.
+     * @param loader      The supplier of the upstream call, emitting the fetched entry and the signal of its write.
+     * @return A {@link Mono} emitting the entry fetched by this or another instance.
+     */
+    public Mono<CachedWeather> execute(String key, Duration minFreshTtl, Supplier<Mono<Fetched>> loader) {
+        if (!enabled) {
+            return unleased(loader);
+        }
+        return Mono.defer(() -> attempt(key, KEY_PREFIX + key, UUID.randomUUID().toString(), minFreshTtl, loader,
+                System.nanoTime() + maxWait.toNanos(), false));
+    }
+
+    private Mono<CachedWeather> attempt(String key, String leaseKey, String token, Duration minFreshTtl,
+                                        Supplier<Mono<Fetched>> loader, long deadline, boolean waited) {
+        return stringRedisTemplate.opsForValue()
+                .setIfAbsent(leaseKey, token, leaseTtl)
+                .map(Optional::of)
+                .onErrorResume(e -> {
+                    logger.warn("Lease on {} unavailable: {}", key, e.getMessage());
+                    return Mono.just(Optional.empty());
+                })
+                .flatMap(acquired -> {
+                    if (acquired.isEmpty()) {
+                        results.get(LeaseResult.UNAVAILABLE).increment();
+                        return unleased(loader);
+                    }
+                    if (acquired.get()) {
+                        return hold(key, leaseKey, token, minFreshTtl, loader, waited);
+                    }
+                    return poll(key, leaseKey, token, minFreshTtl, loader, deadline);
+                });
+    }
+
+    private Mono<CachedWeather> hold(String key, String leaseKey, String token, Duration minFreshTtl,
+                                     Supplier<Mono<Fetched>> loader, boolean waited) {
+        AtomicBoolean handedOver = new AtomicBoolean();
+        return current(key, minFreshTtl)
+                .doOnNext(entry -> {
+                    handedOver.set(true);
+                    results.get(LeaseResult.SHARED).increment();
+                    release(leaseKey, token, null);
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    results.get(waited ? LeaseResult.TAKEOVER : LeaseResult.ACQUIRED).increment();
+                    return Mono.defer(loader)
+                            .doOnNext(fetched -> {
+                                handedOver.set(true);
+                                fetched.written().subscribe(written -> { },
+                                        e -> {
+                                            logger.error("Cache write failed for {}: {}", fetched.storedKey(),
+                                                    e.getMessage());
+                                            release(leaseKey, token, null);
+                                        },
+                                        () -> release(leaseKey, token, fetched.storedKey()));
+                            })
+                            .doOnError(e -> release(leaseKey, token, null))
+                            .map(Fetched::entry);
+                }))
+                .doOnCancel(() -> {
+                    if (!handedOver.get()) {
+                        release(leaseKey, token, null);
+                    }
+                });
+    }
+
+    /**
+     * Runs the loader without a lease, still making sure its entry is written.
+     */
+    private Mono<CachedWeather> unleased(Supplier<Mono<Fetched>> loader) {
+        return Mono.defer(loader)
+                .doOnNext(fetched -> fetched.written().subscribe(written -> { },
+                        e -> logger.error("Cache write failed for {}: {}", fetched.storedKey(), e.getMessage())))
+                .map(Fetched::entry);
+    }
+
+    private Mono<CachedWeather> poll(String key, String leaseKey, String token, Duration minFreshTtl,
+                                     Supplier<Mono<Fetched>> loader, long deadline) {
+        return stringRedisTemplate.opsForValue()
+                .get(leaseKey)
+                .filter(holder -> holder.startsWith(DONE_PREFIX))
+                .flatMap(holder -> current(holder.substring(DONE_PREFIX.length()), minFreshTtl))
+                .onErrorResume(e -> Mono.empty())
+                .doOnNext(entry -> results.get(LeaseResult.SHARED).increment())
+                .switchIfEmpty(Mono.defer(() -> {
+                    if (System.nanoTime() - deadline >= 0) {
+                        results.get(LeaseResult.TIMEOUT).increment();
+                        logger.warn("Gave up waiting for the lease on {}, fetching it here", key);
+                        return unleased(loader);
+                    }
+                    return Mono.delay(pollInterval)
+                            .then(Mono.defer(() -> attempt(key, leaseKey, token, minFreshTtl, loader, deadline, true)));
+                }));
+    }
+
+    /**
+     * Reads the entry of a key from Redis if it has more than the given fresh TTL left.
+     */
+    private Mono<CachedWeather> current(String key, Duration minFreshTtl) {
+        return weatherCache.lookupShared(key)
+                .filter(entry -> entry.getFreshTtl().compareTo(minFreshTtl) > 0)
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    /**
+     * Releases a lease if it is still held with the given token: replaces it with the marker of the key the entry
+     * was stored under, or deletes it if there is none.
+     */
+    private void release(String leaseKey, String token, String storedKey) {
+        List<String> args = List.of(token, storedKey == null ? "" : DONE_PREFIX + storedKey,
+                Long.toString(resultTtl.toMillis()));
+        stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(leaseKey), args)
+                .subscribe(released -> { },
+                        e -> logger.warn("Error releasing lease {}: {}", leaseKey, e.getMessage()));
+    }
+
+    @PostConstruct
+    void init() {
+        for (LeaseResult result : LeaseResult.values()) {
+            results.put(result, Counter.builder("weather_upstream_leases")
+                    .tag("result", result.tag)
+                    .description("Upstream calls coordinated across instances, by how they were coordinated")
+                    .register(meterRegistry));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.weather.services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Fixed-memory estimate of how often each key is seen, with the keys seen most often tracked by name.
+ *
+ * <p>Frequencies are kept in a count-min sketch of {@code depth} rows of {@code width} counters. Every key increments
+ * one counter per row, chosen by double hashing, and its frequency is estimated as the smallest of those counters:
+ * the estimate is never lower than the true count and overestimates it by at most {@code e / width} of all counts
+ * with probability {@code 1 - e^-depth}. Memory does not grow with the number of distinct keys.
+ *
+ * <p>The {@code k} keys with the highest estimates are kept by name in a small top-K table together with the last
+ * query they were seen with. A key already in the table only updates its count; another key takes the lock of the
+ * table only once its estimate exceeds the smallest count in it, and then replaces that entry.
+ *
+ * <p>{@link #decay()} halves every counter, so that the estimates follow the recent popularity of a key rather than
+ * its count since startup.
+ */
+public class HeavyHitterSketch {
+
+    /**
+     * A key of the top-K table with its estimated count and the last query it was seen with.
+     *
+     * @param key   The key.
+     * @param query The last query recorded for the key.
+     * @param count The estimated number of times the key was seen since the counts were last halved.
+     */
+    public record HeavyHitter(String key, String query, long count) {
+    }
+
+    private static final class Candidate {
+
+        private volatile String query;
+
+        private volatile long count;
+
+        private Candidate(String query, long count) {
+            this.query = query;
+            this.count = count;
+        }
+    }
+
+    private final int width;
+
+    private final int depth;
+
+    private final int k;
+
+    private final AtomicLongArray counters;
+
+    private final Map<String, Candidate> topK = new ConcurrentHashMap<>();
+
+    private volatile long threshold;
+
+    /**
+     * @param width The number of counters per row, rounded up to a power of two.
+     * @param depth The number of rows.
+     * @param k     The number of keys kept in the top-K table.
+     */
+    public HeavyHitterSketch(int width, int depth, int k) {
+        this.width = width <= 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.depth = depth;
+        this.k = k;
+        this.counters = new AtomicLongArray(this.width * depth);
+    }
+
+    /**
+     * Counts one occurrence of a key.
+     *
+     * @param key   The key seen.
+     * @param query The query the key was seen with, kept if the key is in the top-K table.
+     * @return The estimated count of the key after this occurrence.
+     */
+    public long add(String key, String query) {
+        int hash = spread(key.hashCode());
+        int step = spread(hash ^ 0x7F4A7C15) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + ((hash + row * step) & (width - 1));
+            estimate = Math.min(estimate, counters.incrementAndGet(index));
+        }
+        Candidate candidate = topK.get(key);
+        if (candidate != null) {
+            candidate.count = estimate;
+            candidate.query = query;
+        } else if (estimate > threshold) {
+            admit(key, query, estimate);
+        }
+        return estimate;
+    }
+
+    /**
+     * @param key The key to estimate.
+     * @return The estimated count of the key, never lower than the number of times it was added since the counts
+     *         were last halved.
+     */
+    public long estimate(String key) {
+        int hash = spread(key.hashCode());
+        int step = spread(hash ^ 0x7F4A7C15) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(row * width + ((hash + row * step) & (width - 1))));
+        }
+        return estimate;
+    }
+
+    /**
+     * @return The keys of the top-K table, most frequent first.
+     */
+    public List<HeavyHitter> topK() {
+        List<HeavyHitter> hitters = new ArrayList<>(topK.size());
+        topK.forEach((key, candidate) -> hitters.add(new HeavyHitter(key, candidate.query, candidate.count)));
+        hitters.sort(Comparator.comparingLong(HeavyHitter::count).reversed());
+        return hitters;
+    }
+
+    /**
+     * Halves every counter and every count of the top-K table. Occurrences added while the counters are being halved
+     * may be halved as well.
+     */
+    public synchronized void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, count -> count >> 1);
+        }
+        topK.values().forEach(candidate -> candidate.count >>= 1);
+        topK.values().removeIf(candidate -> candidate.count == 0);
+        threshold = topK.size() < k ? 0 : minCount();
+    }
+
+    /**
+     * @return The memory held by the counters, in bytes.
+     */
+    public long sizeInBytes() {
+        return (long) counters.length() * Long.BYTES;
+    }
+
+    private synchronized void admit(String key, String query, long estimate) {
+        if (estimate <= threshold || topK.containsKey(key)) {
+            return;
+        }
+        topK.put(key, new Candidate(query, estimate));
+        if (topK.size() > k) {
+            String smallest = null;
+            long smallestCount = Long.MAX_VALUE;
+            for (Map.Entry<String, Candidate> entry : topK.entrySet()) {
+                if (entry.getValue().count < smallestCount) {
+                    smallest = entry.getKey();
+                    smallestCount = entry.getValue().count;
+                }
+            }
+            topK.remove(smallest);
+        }
+        threshold = topK.size() < k ? 0 : minCount();
+    }
+
+    private long minCount() {
+        long min = Long.MAX_VALUE;
+        for (Candidate candidate : topK.values()) {
+            min = Math.min(min, candidate.count);
+        }
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        return hash ^ hash >>> 16;
+    }
+}
@@ -0,0 +1,186 @@
+package org.example.weather.services;
+
+
+/**
+ * Circuit breaker over a count-based sliding window of the most recent upstream calls.
+ *
+ * <p>While {@link State#CLOSED closed}, every call is permitted and its outcome recorded. Once the window holds at
+ * least the minimum number of calls and either the share of failed calls or the share of calls slower than the
+ * slow-call threshold reaches its configured rate, the breaker {@link State#OPEN opens} and rejects all calls. After
+ * the open wait has passed it becomes {@link State#HALF_OPEN half-open} and permits a small number of trial calls:
+ * if they all succeed in time the breaker closes with an empty window, and a single failed or slow trial opens it
+ * again.
+ */
+public class UpstreamCircuitBreaker {
+
+    /**
+     * State of the breaker.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int minimumCalls;
+
+    private final double failureRateThreshold;
+
+    private final double slowCallRateThreshold;
+
+    private final long slowCallNanos;
+
+    private final long openWaitNanos;
+
+    private final int halfOpenCalls;
+
+    private final boolean[] failures;
+
+    private final boolean[] slowCalls;
+
+    private int next;
+
+    private int recorded;
+
+    private int failureCount;
+
+    private int slowCount;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private int halfOpenPermits;
+
+    private int halfOpenSuccesses;
+
+    /**
+     * @param windowSize            The number of most recent calls the rates are computed over.
+     * @param minimumCalls          The number of calls needed in the window before the breaker can open.
+     * @param failureRateThreshold  The share of failed calls, between 0 and 1, that opens the breaker.
+     * @param slowCallRateThreshold The share of slow calls, between 0 and 1, that opens the breaker.
+     * @param slowCallNanos         The duration from which a call counts as slow, in nanoseconds.
+     * @param openWaitNanos         The time the breaker stays open before permitting trial calls, in nanoseconds.
+     * @param halfOpenCalls         The number of trial calls permitted while half-open.
+     */
+    public UpstreamCircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold,
+                                  double slowCallRateThreshold, long slowCallNanos, long openWaitNanos,
+                                  int halfOpenCalls) {
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallNanos;
+        this.openWaitNanos = openWaitNanos;
+        this.halfOpenCalls = halfOpenCalls;
+        this.failures = new boolean[windowSize];
+        this.slowCalls = new boolean[windowSize];
+    }
+
+    /**
+     * Asks for permission to make a call. A permitted call must be followed by exactly one call to
+     * {@link #onResult(boolean, long)} or {@link #releasePermission()}.
+     *
+     * @return {@code true} if the call may be made.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openWaitNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermits = 0;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits >= halfOpenCalls) {
+                return false;
+            }
+            halfOpenPermits++;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a permission without recording an outcome, for example when the call was not made after all.
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    /**
+     * Records the outcome of a permitted call.
+     *
+     * @param failed        {@code true} if the call failed.
+     * @param durationNanos The duration of the call.
+     */
+    public synchronized void onResult(boolean failed, long durationNanos) {
+        boolean slow = durationNanos >= slowCallNanos;
+        if (state == State.HALF_OPEN) {
+            if (failed || slow) {
+                open();
+            } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+        if (recorded == failures.length) {
+            failureCount -= failures[next] ? 1 : 0;
+            slowCount -= slowCalls[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failures[next] = failed;
+        slowCalls[next] = slow;
+        failureCount += failed ? 1 : 0;
+        slowCount += slow ? 1 : 0;
+        next = (next + 1) % failures.length;
+        if (recorded >= minimumCalls
+                && (getFailureRate() >= failureRateThreshold || getSlowCallRate() >= slowCallRateThreshold)) {
+            open();
+        }
+    }
+
+    /**
+     * @return The current state, moving from open to half-open is only observed on the next permission request.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return The share of failed calls in the window, or 0 if it is empty.
+     */
+    public synchronized double getFailureRate() {
+        return recorded == 0 ? 0 : (double) failureCount / recorded;
+    }
+
+    /**
+     * @return The share of slow calls in the window, or 0 if it is empty.
+     */
+    public synchronized double getSlowCallRate() {
+        return recorded == 0 ? 0 : (double) slowCount / recorded;
+    }
+
+    /**
+     * @return The number of calls in the window.
+     */
+    public synchronized int getRecordedCalls() {
+        return recorded;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        recorded = 0;
+        next = 0;
+        failureCount = 0;
+        slowCount = 0;
+    }
+}
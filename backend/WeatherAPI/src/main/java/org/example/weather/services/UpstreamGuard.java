@@ -0,0 +1,220 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.example.weather.exceptions.UpstreamUnavailableException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Component responsible for protecting the application from a slow or failing weather API.
+ *
+ * <p>Every upstream call passes through an {@link UpstreamCircuitBreaker} and an {@link AimdConcurrencyLimiter}.
+ * A call is rejected with an {@link UpstreamUnavailableException}, without being sent, while the breaker is open or
+ * while the adaptive concurrency limit is reached, so that waiting requests cannot pile up without bound when the
+ * API slows down. Client errors other than 429 (Too Many Requests), such as an unknown city, say nothing about the
+ * health of the API and are recorded as successful calls.
+ *
+ * <p>The limit, the calls in flight and the breaker state (0 closed, 1 open, 2 half-open) are published as the
+ * {@code weather_upstream_concurrency_limit}, {@code weather_upstream_limiter_in_flight} and
+ * {@code weather_upstream_circuit_state} gauges; rejected calls are counted in {@code weather_upstream_rejected}
+ * under the {@code reason} tag. The duration of every call that was sent is recorded in the
+ * {@code weather_upstream_latency} timer with {@code outcome} {@code success}, {@code client_error} or
+ * {@code failure}.
+ */
+@Component
+public class UpstreamGuard {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.upstream.limiter.initial-limit:16}")
+    int initialLimit;
+
+    @Value("${weather.upstream.limiter.min-limit:2}")
+    int minLimit;
+
+    @Value("${weather.upstream.limiter.max-limit:128}")
+    int maxLimit;
+
+    @Value("${weather.upstream.limiter.backoff-ratio:0.9}")
+    double backoffRatio;
+
+    @Value("${weather.upstream.limiter.latency-threshold:2s}")
+    Duration latencyThreshold;
+
+    @Value("${weather.upstream.circuit-breaker.window-size:50}")
+    int windowSize;
+
+    @Value("${weather.upstream.circuit-breaker.minimum-calls:20}")
+    int minimumCalls;
+
+    @Value("${weather.upstream.circuit-breaker.failure-rate-threshold:0.5}")
+    double failureRateThreshold;
+
+    @Value("${weather.upstream.circuit-breaker.slow-call-rate-threshold:0.8}")
+    double slowCallRateThreshold;
+
+    @Value("${weather.upstream.circuit-breaker.slow-call-duration:3s}")
+    Duration slowCallDuration;
+
+    @Value("${weather.upstream.circuit-breaker.open-wait:30s}")
+    Duration openWait;
+
+    @Value("${weather.upstream.circuit-breaker.half-open-calls:3}")
+    int halfOpenCalls;
+
+    private AimdConcurrencyLimiter limiter;
+
+    private UpstreamCircuitBreaker circuitBreaker;
+
+    private Counter rejectedByBreaker;
+
+    private Counter rejectedByLimiter;
+
+    private Timer successLatency;
+
+    private Timer clientErrorLatency;
+
+    private Timer failureLatency;
+
+    private static final Logger logger = LogManager.getLogger(UpstreamGuard.class);
+
+    /**
+     * Wraps an upstream call so that it is only subscribed when the breaker and the limiter admit it, and records
+     * its outcome and duration once it terminates.
+     *
+     * @param call The upstream call.
+     * @param <T>  The type of the value returned by the call.
+     * @return A {@link Mono} that runs the call, or fails with {@link UpstreamUnavailableException} if it is rejected.
+     */
+    public <T> Mono<T> protect(Mono<T> call) {
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                rejectedByBreaker.increment();
+                return Mono.error(new UpstreamUnavailableException("Circuit breaker for the weather API is open"));
+            }
+            if (!limiter.tryAcquire()) {
+                circuitBreaker.releasePermission();
+                rejectedByLimiter.increment();
+                return Mono.error(new UpstreamUnavailableException(
+                        "Concurrency limit of " + limiter.getLimit() + " calls to the weather API reached"));
+            }
+            long start = System.nanoTime();
+            AtomicBoolean released = new AtomicBoolean();
+            return call
+                    .doOnSuccess(value -> {
+                        if (released.compareAndSet(false, true)) {
+                            record(null, System.nanoTime() - start);
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (released.compareAndSet(false, true)) {
+                            record(e, System.nanoTime() - start);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (released.compareAndSet(false, true)) {
+                            limiter.onIgnored();
+                            circuitBreaker.releasePermission();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Tells whether an error means that the weather API is unavailable, as opposed to a request it rejected.
+     *
+     * @param e The error of an upstream call.
+     * @return {@code true} for rejected calls, server errors, timeouts, connection failures and 429 responses.
+     */
+    public static boolean isUpstreamFailure(Throwable e) {
+        return !(e instanceof HttpClientErrorException clientError)
+                || clientError.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    /**
+     * @return The adaptive concurrency limiter in front of the weather API.
+     */
+    public AimdConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * @return The circuit breaker in front of the weather API.
+     */
+    public UpstreamCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    private void record(Throwable error, long durationNanos) {
+        boolean failed = error != null && isUpstreamFailure(error);
+        (failed ? failureLatency : error != null ? clientErrorLatency : successLatency)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        UpstreamCircuitBreaker.State before = circuitBreaker.getState();
+        circuitBreaker.onResult(failed, durationNanos);
+        if (failed) {
+            limiter.onDropped();
+        } else {
+            limiter.onSuccess(durationNanos);
+        }
+        UpstreamCircuitBreaker.State after = circuitBreaker.getState();
+        if (before != after) {
+            logger.warn("Weather API circuit breaker changed from {} to {}, failure rate: {}, slow call rate: {}",
+                    before, after, circuitBreaker.getFailureRate(), circuitBreaker.getSlowCallRate());
+        }
+    }
+
+    private Timer upstreamTimer(String outcome) {
+        return Timer.builder("weather_upstream_latency")
+                .tag("outcome", outcome)
+                .description("Duration of calls to the weather API, including decoding the response")
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500),
+                        Duration.ofSeconds(1), Duration.ofSeconds(2))
+                .minimumExpectedValue(Duration.ofMillis(10))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void init() {
+        limiter = new AimdConcurrencyLimiter(initialLimit, minLimit, maxLimit, backoffRatio, latencyThreshold.toNanos());
+        circuitBreaker = new UpstreamCircuitBreaker(windowSize, minimumCalls, failureRateThreshold,
+                slowCallRateThreshold, slowCallDuration.toNanos(), openWait.toNanos(), halfOpenCalls);
+        rejectedByBreaker = Counter.builder("weather_upstream_rejected")
+                .tag("reason", "circuit_open")
+                .description("Upstream calls rejected because the circuit breaker was open")
+                .register(meterRegistry);
+        rejectedByLimiter = Counter.builder("weather_upstream_rejected")
+                .tag("reason", "concurrency_limit")
+                .description("Upstream calls rejected because the concurrency limit was reached")
+                .register(meterRegistry);
+        successLatency = upstreamTimer("success");
+        clientErrorLatency = upstreamTimer("client_error");
+        failureLatency = upstreamTimer("failure");
+        Gauge.builder("weather_upstream_concurrency_limit", limiter, AimdConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit of concurrent calls to the weather API")
+                .register(meterRegistry);
+        Gauge.builder("weather_upstream_limiter_in_flight", limiter, AimdConcurrencyLimiter::getInFlight)
+                .description("Calls to the weather API admitted by the limiter and not yet completed")
+                .register(meterRegistry);
+        Gauge.builder("weather_upstream_circuit_state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("State of the weather API circuit breaker: 0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,363 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Component responsible for keeping the calls to the weather API within the monthly quota of the plan.
+ *
+ * <p>Every call sent to the API is counted against the current calendar month (UTC). Counts are accumulated locally
+ * and added to the Redis key {@code weather:quota:<yyyy-MM>} with {@code INCRBY} every
+ * {@code weather.upstream.quota.flush-interval}, so the budget survives restarts and is shared by all instances
+ * without a Redis round trip per call.
+ *
+ * <p>The usage at the end of the month is projected from the usage so far and the elapsed part of the month, and
+ * compared with {@code weather.upstream.quota.monthly-limit} to derive a {@link Pressure}. The pressure lengthens the
+ * TTL of new cache entries, decides whether expired entries are served instead of calling the API and whether
+ * low-priority background refreshes are still allowed.
+ *
+ * <p>Usage, limit, projection and pressure are published as {@code weather_upstream_quota_*} gauges, and refused
+ * calls are counted in {@code weather_upstream_quota_refused} under the {@code reason} tag.
+ */
+@Component
+public class UpstreamQuota {
+
+    /**
+     * Prefix of the Redis keys that hold the number of calls made in a month.
+     */
+    public static final String KEY_PREFIX = "weather:quota:";
+
+    /**
+     * How tight the budget is, from the projected usage at the end of the month.
+     */
+    public enum Pressure {
+
+        /**
+         * The projected usage stays below the tight ratio of the limit.
+         */
+        NORMAL(1, true, false),
+
+        /**
+         * The projected usage reaches the tight ratio: cache entries live twice as long.
+         */
+        TIGHT(2, true, false),
+
+        /**
+         * The projected usage reaches the limit: entries live four times as long, expired entries are served
+         * instead of calling the API and background refreshes are refused.
+         */
+        CRITICAL(4, false, true),
+
+        /**
+         * The limit has been used up: no more calls are made until the next month.
+         */
+        EXHAUSTED(4, false, true);
+
+        private final int ttlMultiplier;
+
+        private final boolean allowsRefresh;
+
+        private final boolean prefersStale;
+
+        Pressure(int ttlMultiplier, boolean allowsRefresh, boolean prefersStale) {
+            this.ttlMultiplier = ttlMultiplier;
+            this.allowsRefresh = allowsRefresh;
+            this.prefersStale = prefersStale;
+        }
+
+        /**
+         * @return The factor the soft and hard TTL of new entries are multiplied by.
+         */
+        public int ttlMultiplier() {
+            return ttlMultiplier;
+        }
+
+        /**
+         * @return {@code true} if low-priority background calls may still be made.
+         */
+        public boolean allowsRefresh() {
+            return allowsRefresh;
+        }
+
+        /**
+         * @return {@code true} if expired entries should be served instead of calling the API.
+         */
+        public boolean prefersStale() {
+            return prefersStale;
+        }
+    }
+
+    @Autowired
+    ReactiveStringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.upstream.quota.monthly-limit:1000000}")
+    long monthlyLimit;
+
+    @Value("${weather.upstream.quota.tight-ratio:0.8}")
+    double tightRatio;
+
+    @Value("${weather.upstream.quota.critical-ratio:1.0}")
+    double criticalRatio;
+
+    @Value("${weather.upstream.quota.min-projection-window:6h}")
+    Duration minProjectionWindow;
+
+    @Value("${weather.upstream.quota.flush-interval:5s}")
+    Duration flushInterval;
+
+    Clock clock = Clock.systemUTC();
+
+    private final AtomicLong pending = new AtomicLong();
+
+    private volatile long persisted;
+
+    private volatile YearMonth window;
+
+    private Counter refusedRefreshes;
+
+    private Counter refusedExhausted;
+
+    private Disposable flushTask;
+
+    private static final Logger logger = LogManager.getLogger(UpstreamQuota.class);
+
+    /**
+     * Counts a call that is about to be sent to the weather API.
+     */
+    public void record() {
+        rollWindow();
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Checks whether a call made on behalf of a client may be sent.
+     *
+     * @return {@code false} once the monthly limit has been used up.
+     */
+    public boolean allowsCall() {
+        if (getPressure() == Pressure.EXHAUSTED) {
+            refusedExhausted.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a low-priority call, such as a background refresh of a stale entry, may be sent.
+     *
+     * @return {@code false} while the budget is critical or exhausted.
+     */
+    public boolean allowsRefresh() {
+        if (!getPressure().allowsRefresh()) {
+            refusedRefreshes.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of calls made in the current month, including those not yet written to Redis.
+     */
+    public long getUsed() {
+        rollWindow();
+        return persisted + pending.get();
+    }
+
+    /**
+     * @return The monthly call limit.
+     */
+    public long getLimit() {
+        return monthlyLimit;
+    }
+
+    /**
+     * @return The month the usage is counted for.
+     */
+    public YearMonth getWindow() {
+        rollWindow();
+        return window;
+    }
+
+    /**
+     * Projects the usage at the end of the month at the average rate observed so far. The elapsed time is counted
+     * as at least {@code weather.upstream.quota.min-projection-window}, so that the first calls of a month do not
+     * project an absurd rate.
+     *
+     * @return The projected number of calls in the current month.
+     */
+    public long getProjectedUsage() {
+        YearMonth month = getWindow();
+        long used = getUsed();
+        long start = month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        long end = month.plusMonths(1).atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        long elapsed = Math.max(clock.millis() - start, minProjectionWindow.toMillis());
+        if (elapsed >= end - start) {
+            return used;
+        }
+        return (long) (used * ((double) (end - start) / elapsed));
+    }
+
+    /**
+     * @return The time at which the limit will be reached at the average rate observed so far, or {@code null} if
+     *         that is after the end of the month.
+     */
+    public Instant getProjectedExhaustion() {
+        long used = getUsed();
+        if (used >= monthlyLimit) {
+            return clock.instant();
+        }
+        long projected = getProjectedUsage();
+        if (projected < monthlyLimit || used == 0) {
+            return null;
+        }
+        long start = getWindow().atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        long elapsed = Math.max(clock.millis() - start, minProjectionWindow.toMillis());
+        double callsPerMilli = (double) used / elapsed;
+        return clock.instant().plusMillis((long) ((monthlyLimit - used) / callsPerMilli));
+    }
+
+    /**
+     * @return The current pressure on the budget.
+     */
+    public Pressure getPressure() {
+        if (getUsed() >= monthlyLimit) {
+            return Pressure.EXHAUSTED;
+        }
+        double projectedRatio = (double) getProjectedUsage() / monthlyLimit;
+        if (projectedRatio >= criticalRatio) {
+            return Pressure.CRITICAL;
+        }
+        if (projectedRatio >= tightRatio) {
+            return Pressure.TIGHT;
+        }
+        return Pressure.NORMAL;
+    }
+
+    /**
+     * Adds the calls counted since the last flush to the Redis counter of the current month and reads back the
+     * total of all instances. Counts that could not be written are kept for the next flush.
+     *
+     * @return A {@link Mono} emitting the total number of calls made this month.
+     */
+    public Mono<Long> flush() {
+        rollWindow();
+        String key = KEY_PREFIX + window;
+        long delta = pending.getAndSet(0);
+        if (delta == 0) {
+            return load(key);
+        }
+        return add(key, delta)
+                .doOnNext(total -> persisted = total)
+                .doOnError(e -> {
+                    pending.addAndGet(delta);
+                    logger.error("Error flushing quota usage: {}", e.getMessage());
+                });
+    }
+
+    private Mono<Long> add(String key, long delta) {
+        return stringRedisTemplate.opsForValue()
+                .increment(key, delta)
+                .flatMap(total -> total == delta
+                        ? stringRedisTemplate.expire(key, Duration.ofDays(62)).thenReturn(total)
+                        : Mono.just(total));
+    }
+
+    private Mono<Long> load(String key) {
+        return stringRedisTemplate.opsForValue()
+                .get(key)
+                .map(Long::parseLong)
+                .defaultIfEmpty(0L)
+                .doOnNext(total -> persisted = total);
+    }
+
+    /**
+     * Starts the window of the current month once the previous one has ended. Calls counted in the previous window
+     * but not flushed yet are added to its Redis counter in the background, so they are not counted in the new one.
+     */
+    private void rollWindow() {
+        YearMonth now = YearMonth.now(clock);
+        if (now.equals(window)) {
+            return;
+        }
+        synchronized (this) {
+            if (!now.equals(window)) {
+                logger.info("Quota window {} started", now);
+                YearMonth previous = window;
+                long unflushed = pending.getAndSet(0);
+                window = now;
+                persisted = 0;
+                if (previous != null && unflushed > 0) {
+                    add(KEY_PREFIX + previous, unflushed).subscribe(
+                            total -> logger.info("Quota usage of {} closed at {} calls", previous, total),
+                            e -> logger.error("Error flushing quota usage of {}: {}", previous, e.getMessage()));
+                }
+            }
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        rollWindow();
+        refusedRefreshes = Counter.builder("weather_upstream_quota_refused")
+                .tag("reason", "refresh")
+                .description("Background refreshes not made because the quota budget is critical")
+                .register(meterRegistry);
+        refusedExhausted = Counter.builder("weather_upstream_quota_refused")
+                .tag("reason", "exhausted")
+                .description("Calls not made because the monthly quota is used up")
+                .register(meterRegistry);
+        Gauge.builder("weather_upstream_quota_used", this, UpstreamQuota::getUsed)
+                .description("Calls made to the weather API in the current month")
+                .register(meterRegistry);
+        Gauge.builder("weather_upstream_quota_limit", this, UpstreamQuota::getLimit)
+                .description("Monthly call quota of the weather API plan")
+                .register(meterRegistry);
+        Gauge.builder("weather_upstream_quota_projected", this, UpstreamQuota::getProjectedUsage)
+                .description("Projected calls to the weather API by the end of the month")
+                .register(meterRegistry);
+        Gauge.builder("weather_upstream_quota_pressure", this, quota -> quota.getPressure().ordinal())
+                .description("Quota pressure: 0 normal, 1 tight, 2 critical, 3 exhausted")
+                .register(meterRegistry);
+        load(KEY_PREFIX + window)
+                .subscribe(total -> logger.info("Quota usage loaded for {}: {} calls", window, total),
+                        e -> logger.error("Error loading quota usage: {}", e.getMessage()));
+        flushTask = Flux.interval(flushInterval, flushInterval)
+                .concatMap(tick -> flush().onErrorResume(e -> Mono.empty()))
+                .subscribe();
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (flushTask != null) {
+            flushTask.dispose();
+        }
+        try {
+            flush().block(Duration.ofSeconds(2));
+        } catch (RuntimeException e) {
+            logger.warn("Error flushing quota usage on shutdown: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.WeatherCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+
+/**
+ * Component responsible for refreshing the entries of the most requested cities shortly before they go stale, so
+ * that their expiry does not turn into a stale hit or a miss for the clients asking for them.
+ *
+ * <p>Every {@code weather.prefetch.interval} the {@code weather.prefetch.top-n} most requested cities tracked by
+ * {@link CityPopularity} that were requested at least {@code weather.prefetch.min-requests} times recently are looked
+ * up in the cache. Those whose entry goes stale within {@code weather.prefetch.lead-time} are fetched again through
+ * {@link WeatherService#prefetch(String, String, Duration)}, at most {@code weather.prefetch.max-calls} per run and
+ * {@code weather.prefetch.concurrency} at a time, most popular first. Cities without a cache entry are left to the
+ * next request, so a popular query the weather API rejects does not use up the budget.
+ *
+ * <p>When the weather API publishes an observation late, the entry a prefetch returns carries the same observation
+ * as the one it replaced and only gets the minimum fresh TTL, which may be shorter than the lead time. Such a city is
+ * not prefetched again until its entry holds a newer observation, so it does not cost a call every round while the
+ * API has nothing new; until then its entry is refreshed by the requests that find it stale.
+ *
+ * <p>Prefetches are low-priority calls: no run is made while the {@link UpstreamQuota} budget refuses background
+ * refreshes. Prefetch calls are counted in {@code weather_prefetch_calls} under the {@code result} tag, rounds not
+ * made in {@code weather_prefetch_skipped_rounds} and cities left to the next round in
+ * {@code weather_prefetch_deferred}.
+ */
+@Component
+public class WeatherPrefetcher {
+
+    @Autowired
+    WeatherService weatherService;
+
+    @Autowired
+    WeatherCache weatherCache;
+
+    @Autowired
+    CityPopularity popularity;
+
+    @Autowired
+    UpstreamQuota upstreamQuota;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${weather.prefetch.enabled:true}")
+    boolean enabled;
+
+    @Value("${weather.prefetch.interval:30s}")
+    Duration interval;
+
+    @Value("${weather.prefetch.top-n:50}")
+    int topN;
+
+    @Value("${weather.prefetch.min-requests:3}")
+    long minRequests;
+
+    @Value("${weather.prefetch.lead-time:2m}")
+    Duration leadTime;
+
+    @Value("${weather.prefetch.max-calls:20}")
+    int maxCalls;
+
+    @Value("${weather.prefetch.concurrency:4}")
+    int concurrency;
+
+    private Counter succeeded;
+
+    private Counter failed;
+
+    private Counter skippedRounds;
+
+    private Counter deferred;
+
+    private Disposable prefetchTask;
+
+    private final Map<String, Long> unchangedObservations = new ConcurrentHashMap<>();
+
+    private static final Logger logger = LogManager.getLogger(WeatherPrefetcher.class);
+
+    /**
+     * A popular city whose entry goes stale within the lead time, with the observation time of that entry.
+     */
+    private record Due(HeavyHitterSketch.HeavyHitter hitter, long observedAt) {
+    }
+
+    /**
+     * Runs one prefetch round.
+     *
+     * @return A {@link Mono} emitting the number of entries prefetched.
+     */
+    public Mono<Integer> prefetch() {
+        return Mono.defer(() -> {
+            int expired = popularity.expirePrefetched();
+            if (expired > 0) {
+                logger.debug("{} prefetched entries went stale without being requested", expired);
+            }
+            if (!upstreamQuota.allowsRefresh()) {
+                skippedRounds.increment();
+                logger.info("Skipping prefetch, quota budget is {}", upstreamQuota.getPressure());
+                return Mono.just(0);
+            }
+            List<HeavyHitterSketch.HeavyHitter> popular = popularity.topK().stream()
+                    .filter(hitter -> hitter.count() >= minRequests)
+                    .limit(topN)
+                    .toList();
+            unchangedObservations.keySet()
+                    .retainAll(popular.stream().map(HeavyHitterSketch.HeavyHitter::key).collect(Collectors.toSet()));
+            return Flux.fromIterable(popular)
+                    .concatMap(hitter -> weatherCache.lookup(hitter.key())
+                            .filter(entry -> expiresSoon(entry) && !awaitsNewObservation(hitter.key(), entry))
+                            .map(entry -> new Due(hitter, observedAt(entry)))
+                            .onErrorResume(e -> Mono.empty()))
+                    .collectList()
+                    .flatMap(due -> {
+                        if (due.size() > maxCalls) {
+                            deferred.increment(due.size() - maxCalls);
+                        }
+                        return Flux.fromIterable(due.subList(0, Math.min(maxCalls, due.size())))
+                                .flatMap(this::prefetchCity, concurrency)
+                                .count()
+                                .map(Long::intValue);
+                    })
+                    .doOnNext(count -> logger.info("Prefetched {} of the {} most requested cities", count, popular.size()));
+        });
+    }
+
+    private boolean expiresSoon(CachedWeather entry) {
+        return entry.getFreshTtl().compareTo(leadTime) <= 0;
+    }
+
+    /**
+     * @return {@code true} if the last prefetch of the city returned the observation its entry still holds.
+     */
+    private boolean awaitsNewObservation(String key, CachedWeather entry) {
+        Long unchanged = unchangedObservations.get(key);
+        return unchanged != null && unchanged == observedAt(entry);
+    }
+
+    private static long observedAt(CachedWeather entry) {
+        if (entry.getData() == null || entry.getData().getCurrentWeather() == null) {
+            return 0;
+        }
+        return entry.getData().getCurrentWeather().getLastUpdatedEpoch();
+    }
+
+    private Mono<CachedWeather> prefetchCity(Due due) {
+        HeavyHitterSketch.HeavyHitter hitter = due.hitter();
+        return weatherService.prefetch(hitter.key(), hitter.query(), leadTime)
+                .doOnNext(entry -> {
+                    succeeded.increment();
+                    popularity.onPrefetched(hitter.key(), entry);
+                    if (due.observedAt() > 0 && observedAt(entry) == due.observedAt()) {
+                        unchangedObservations.put(hitter.key(), due.observedAt());
+                        logger.debug("No new observation for {}, not prefetching it until there is", hitter.query());
+                    } else {
+                        unchangedObservations.remove(hitter.key());
+                    }
+                })
+                .onErrorResume(e -> {
+                    failed.increment();
+                    logger.warn("Prefetch failed for {}: {}", hitter.query(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * @return {@code true} if prefetch rounds are scheduled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The time between two prefetch rounds.
+     */
+    public Duration getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return The maximum number of calls to the weather API per prefetch round.
+     */
+    public int getMaxCalls() {
+        return maxCalls;
+    }
+
+    /**
+     * @return How long before going stale an entry of a popular city is prefetched.
+     */
+    public Duration getLeadTime() {
+        return leadTime;
+    }
+
+    @PostConstruct
+    void init() {
+        succeeded = Counter.builder("weather_prefetch_calls")
+                .tag("result", "success")
+                .description("Calls to the weather API made to prefetch popular cities")
+                .register(meterRegistry);
+        failed = Counter.builder("weather_prefetch_calls")
+                .tag("result", "error")
+                .description("Calls to the weather API made to prefetch popular cities")
+                .register(meterRegistry);
+        skippedRounds = Counter.builder("weather_prefetch_skipped_rounds")
+                .description("Prefetch rounds not made because the quota budget refuses background refreshes")
+                .register(meterRegistry);
+        deferred = Counter.builder("weather_prefetch_deferred")
+                .description("Popular cities due for a prefetch left to the next round because a round used up its calls")
+                .register(meterRegistry);
+        if (enabled) {
+            prefetchTask = Flux.interval(interval, interval)
+                    .concatMap(tick -> prefetch().onErrorResume(e -> Mono.empty()))
+                    .subscribe();
+        }
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (prefetchTask != null) {
+            prefetchTask.dispose();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.example.weather.cache.CachedWeather;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+
+/**
+ * Component responsible for coalescing concurrent upstream calls for the same key.
+ *
+ * <p>The first caller for a key becomes the originating call: its loader is subscribed once and the resulting
+ * {@link Mono} is shared with every caller that arrives while it is still in flight. All waiters receive the same
+ * value, or the same error, and the key is released as soon as the call terminates, so the next caller after that
+ * starts a fresh call.
+ *
+ * <p>Originating and coalesced calls are counted in the {@code weather_upstream_calls} meter under the
+ * {@code call} tag, which shows how many upstream requests were saved.
+ */
+@Component
+public class WeatherRequestCoalescer {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private final Map<String, Mono<CachedWeather>> inFlight = new ConcurrentHashMap<>();
+
+    private Counter originatingCalls;
+
+    private Counter coalescedCalls;
+
+    /**
+     * Executes the loader for the given key, or joins the call already in flight for it.
+     *
+     * @param key    The key identifying the upstream call, usually the cache key of the city.
+     * @param loader The supplier of the upstream call; it is only invoked by the originating caller.
+     * @return A {@link Mono} shared by every concurrent caller for the same key.
+     */
+    public Mono<CachedWeather> execute(String key, Supplier<Mono<CachedWeather>> loader) {
+        return Mono.defer(() -> {
+            AtomicReference<Mono<CachedWeather>> created = new AtomicReference<>();
+            Mono<CachedWeather> shared = inFlight.computeIfAbsent(key, k -> {
+                Mono<CachedWeather> call = Mono.defer(loader)
+                        .doFinally(signal -> inFlight.remove(k, created.get()))
+                        .cache();
+                created.set(call);
+                return call;
+            });
+            if (shared == created.get()) {
+                originatingCalls.increment();
+            } else {
+                coalescedCalls.increment();
+            }
+            return shared;
+        });
+    }
+
+    /**
+     * Returns the number of keys that currently have an upstream call in flight.
+     *
+     * @return The number of in-flight keys.
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    @PostConstruct
+    void init() {
+        originatingCalls = Counter.builder("weather_upstream_calls")
+                .tag("call", "originating")
+                .description("Upstream calls that were actually sent")
+                .register(meterRegistry);
+        coalescedCalls = Counter.builder("weather_upstream_calls")
+                .tag("call", "coalesced")
+                .description("Upstream calls that joined a call already in flight")
+                .register(meterRegistry);
+        meterRegistry.gauge("weather_upstream_in_flight", inFlight, Map::size);
+    }
+}
@@ -1,34 +1,50 @@
 package org.example.weather.services;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.micrometer.core.annotation.Counted;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.example.weather.cache.CachePolicy;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.LocationKeyResolver;
 import org.example.weather.cache.WeatherCache;
-import org.example.weather.models.Condition;
+import org.example.weather.cache.WriteBehindQueue;
+import org.example.weather.exceptions.UpstreamUnavailableException;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.example.weather.models.CurrentWeather;
-import org.example.weather.models.Location;
+import org.example.weather.models.WeatherBatchItem;
 import org.example.weather.models.WeatherData;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
 
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service class responsible for fetching and processing weather data from an external API.
@@ -40,6 +56,13 @@ import java.util.Map;
  *
  * <p>In case of errors during data retrieval or processing, appropriate error handling and logging are performed.
  * This class uses the {@link WeatherCache} component for caching and the {@link WebClient} for making API requests.
+ *
+ * <p>Every request is counted in {@code weather_requests} and timed in {@code weather_request_latency}, both tagged
+ * with how it was answered: {@code hit}, {@code stale}, {@code miss}, {@code fallback} or {@code error}. A request
+ * whose caller went away before it was answered is tagged {@code cancelled}. Cities of a batch are counted
+ * individually. The latency timer publishes a percentile histogram with SLO buckets, and the requests currently
+ * being answered are published as the {@code weather_requests_in_flight} gauge. The age of the observation each
+ * answer carries, from its {@code last_updated_epoch}, is recorded in the {@code weather_served_data_age} timer.
  */
 @Setter
 @Getter
@@ -60,52 +83,229 @@ public class WeatherService {
     @Autowired
     WeatherCache weatherCache;
 
+    @Autowired
+    WeatherRequestCoalescer requestCoalescer;
+
+    @Autowired
+    ClusterRequestCoalescer clusterCoalescer;
+
+    @Autowired
+    WriteBehindQueue writeBehind;
+
+    @Autowired
+    LocationKeyResolver keyResolver;
+
+    @Autowired
+    UpstreamGuard upstreamGuard;
+
+    @Autowired
+    UpstreamQuota upstreamQuota;
+
+    @Autowired
+    CityPopularity popularity;
+
+    @Autowired
+    AdaptiveTtl adaptiveTtl;
+
+    @Value("${weather.cache.policy:WRITE_THROUGH}")
+    CachePolicy cachePolicy;
+
+    @Value("${weather.cache.soft-ttl:15m}")
+    Duration softTtl;
+
+    @Value("${weather.cache.hard-ttl:60m}")
+    Duration hardTtl;
+
+    @Value("${weather.batch.max-size:500}")
+    int maxBatchSize;
+
+    @Value("${weather.batch.upstream-concurrency:8}")
+    int batchConcurrency;
+
+    @Value("${weather.batch.write-size:64}")
+    int batchWriteSize;
+
+    @Value("${weather.batch.write-window:50ms}")
+    Duration batchWriteWindow;
+
+    private Counter staleServed;
+
+    private Counter aliasHits;
+
+    private Counter fallbackServed;
+
+    private Timer refreshLatency;
+
+    private Timer dataAge;
+
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
+
+    private final Map<RequestResult, Counter> requests = new EnumMap<>(RequestResult.class);
+
+    private final Map<RequestResult, Timer> requestLatency = new EnumMap<>(RequestResult.class);
+
+    /**
+     * How a request was answered, used as the {@code result} tag of the request meters.
+     */
+    private enum RequestResult {
+        HIT, STALE, MISS, FALLBACK, ERROR, CANCELLED;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    /**
+     * An entry fetched for a batch, waiting to be written with the next chunk of the batch, and the signal of its
+     * write.
+     */
+    private record BatchWrite(String key, CachedWeather entry, Sinks.Empty<Void> written) {
+    }
+
+    /**
+     * Prefix of the in-instance coalescing keys of batch misses, whose loader leaves the write to the batch.
+     */
+    private static final String BATCH_KEY_PREFIX = "batch:";
+
     private static final Logger logger = LogManager.getLogger(WeatherService.class);
 
     /**
      * Fetches the current weather data for a given city.
      *
-     * <p>This method first attempts to retrieve weather data from the cache using the provided city name. If the data is
-     * not present in the cache, it fetches the data from an external weather API, stores it in the cache, and then returns
-     * the data.
-     *
-     * <p>Logs are generated to indicate whether cached data is used or fresh data is fetched from the service.
-     *
      * @param city The name of the city for which to fetch the weather data. Must be a non-null, non-empty string.
      * @return A {@link Mono<WeatherData>} that emits the {@link WeatherData} object containing the current weather
      *         data for the specified city. The Mono will complete normally if the data is successfully fetched and cached,
      *         or it will propagate an error if something goes wrong.
      * @throws RuntimeException if there is an error during the data retrieval process.
+     * @see #getCachedWeather(String)
      */
     public Mono<WeatherData> getWeather(String city) {
-        meterRegistry.gauge( "weather_request_active_count",  Tags.of("request", "waiting "),  0L);
-        logger.info("Fetching weather data for: " + city);
-        return weatherCache.get(city)
-                .flatMap(data -> {
-                    if (!data.isEmpty()) {
-                        meterRegistry.gauge("weather_request_count", Tags.of("request", "cached "), -1L);
-                        return Mono.just(data)
-                                .doOnNext(log ->  logger.info("Returning cached weather data for city: " + city));
-                    } else {
-                        meterRegistry.gauge("weather_request_count", Tags.of("request", "fetching "), 1L);
-                        logger.info("No cached data found for city: " + city + ", fetching from service.");
-                        return fetchFromService(city)
-                                .doOnNext(log ->  logger.info("Returning cached weather data for city: " + city));
-                    }
-                })
-                .doOnError(e ->{
+        return getCachedWeather(city).map(CachedWeather::getData);
+    }
+
+    /**
+     * Fetches the current weather data for a given city together with its cache expiry.
+     *
+     * <p>This method first attempts to retrieve weather data from the cache using the provided city name. If the data is
+     * not present in the cache, it fetches the data from an external weather API, stores it in the cache, and then returns
+     * the data. The cache is looked up exactly once per call without switching schedulers, and the configured
+     * {@link CachePolicy} decides whether it is read or written at all.
+     *
+     * <p>The city is normalized and resolved to a canonical location key by {@link LocationKeyResolver}, so spelling
+     * variants of the same location share one cache entry. Hits that only succeed thanks to a learned alias are
+     * counted in {@code weather_cache_alias_hits}.
+     *
+     * <p>An entry past its soft expiry is still returned immediately, and a single background refresh is started for
+     * it. Callers only wait for the external API once the hard expiry has passed.
+     *
+     * <p>Calls to the external API pass through the {@link UpstreamGuard}. If the API cannot be reached, because the
+     * circuit breaker is open, the concurrency limit is reached or the call fails with a server error or timeout, an
+     * entry past its hard expiry that Redis still keeps within its grace period is returned as a last known value
+     * and counted in {@code weather_cache_fallback_served}.
+     *
+     * <p>The {@link UpstreamQuota} budget is honoured as well: while it is critical, expired entries are served
+     * without calling the external API at all and stale entries are not refreshed in the background.
+     *
+     * <p>Every request is counted in {@link CityPopularity} under its canonical key, which lets
+     * {@link WeatherPrefetcher} refresh the most requested cities before they go stale.
+     *
+     * <p>Whether cached data is used or fresh data is fetched from the service is logged at DEBUG level.
+     *
+     * @param city The name of the city for which to fetch the weather data. Must be a non-null, non-empty string.
+     * @return A {@link Mono<CachedWeather>} that emits the cache entry for the specified city, or propagates an error
+     *         if something goes wrong.
+     */
+    public Mono<CachedWeather> getCachedWeather(String city) {
+        return Mono.defer(() -> {
+            logger.debug("Fetching weather data for: {}", city);
+            String query = keyResolver.normalize(city);
+            String key = keyResolver.resolve(query);
+            popularity.record(key, query);
+            Timer.Sample sample = Timer.start(meterRegistry);
+            RequestResult[] result = {null};
+            requestsInFlight.incrementAndGet();
+            Mono<CachedWeather> cached = cachePolicy.readsCache() ? weatherCache.lookup(key) : Mono.empty();
+            return cached
+                    .flatMap(entry -> {
+                        if (entry.isExpired()) {
+                            return fetchOrFallback(city, key, query, entry)
+                                    .doOnNext(served -> result[0] = served == entry ? RequestResult.FALLBACK : RequestResult.MISS);
+                        }
+                        result[0] = entry.isStale() ? RequestResult.STALE : RequestResult.HIT;
+                        return Mono.just(onCacheHit(city, key, query, entry));
+                    })
+                    .switchIfEmpty(Mono.defer(() -> {
+                        logger.debug("No cached data found for city: {}, fetching from service.", city);
+                        return fetchEntry(key, query);
+                    }))
+                    .doOnError(e -> {
+                        result[0] = RequestResult.ERROR;
                         logger.error("Failed to fetch weather data for {}: {}", city, e.getMessage());
-                        meterRegistry.gauge("weather_request_count",  Tags.of("request", "error "), -1L);
-                  })
-                .doOnNext(data -> logger.info("Data : " + data));
+                    })
+                    .doOnNext(entry -> logger.debug("Data : {}", entry::getData))
+                    .doOnNext(entry -> recordDataAge(entry.getData()))
+                    .doOnNext(entry -> {
+                        if (result[0] == null) {
+                            result[0] = RequestResult.MISS;
+                        }
+                    })
+                    .doFinally(signal -> {
+                        requestsInFlight.decrementAndGet();
+                        RequestResult answered = result[0] != null ? result[0]
+                                : signal == SignalType.CANCEL ? RequestResult.CANCELLED : RequestResult.MISS;
+                        requests.get(answered).increment();
+                        sample.stop(requestLatency.get(answered));
+                    });
+        });
+    }
+
+    private CachedWeather onCacheHit(String city, String key, String query, CachedWeather entry) {
+        if (!key.equals(query)) {
+            aliasHits.increment();
+        }
+        popularity.onServed(key, entry);
+        if (entry.isStale()) {
+            staleServed.increment();
+            logger.debug("Returning stale weather data for city: {}, refreshing in background.", city);
+            refreshInBackground(key, query);
+        } else {
+            logger.debug("Returning cached weather data for city: {}", city);
+        }
+        return entry;
+    }
+
+    /**
+     * Fetches an entry whose hard expiry has passed, falling back to the expired entry if the external API is
+     * unavailable.
+     */
+    private Mono<CachedWeather> fetchOrFallback(String city, String key, String query, CachedWeather expired) {
+        UpstreamQuota.Pressure pressure = upstreamQuota.getPressure();
+        if (pressure.prefersStale()) {
+            return serveFallback(city, expired, "quota budget is " + pressure);
+        }
+        logger.debug("Cached weather data for city: {} has expired, fetching from service.", city);
+        return fetchEntry(key, query)
+                .onErrorResume(UpstreamGuard::isUpstreamFailure, e -> serveFallback(city, expired, e.getMessage()));
+    }
+
+    private Mono<CachedWeather> serveFallback(String city, CachedWeather expired, String reason) {
+        fallbackServed.increment();
+        logger.warn("Weather API unavailable for {} ({}), serving last known data", city, reason);
+        return Mono.just(expired);
     }
 
     /**
      * Fetches the current weather data from an external weather API and updates the cache.
      *
-     * <p>This method constructs a request URL using the city name and API token, performs an HTTP GET request to the weather
-     * API, and processes the response. The response is converted into a {@link WeatherData} object, which is then cached
-     * and returned.
+     * <p>This method requests {@code /current.json} relative to {@code weather.upstream.base-url} with the API token
+     * and the URI-encoded city as query parameters over the pooled upstream connections, and processes the response.
+     * The response body is decoded in a single pass from the network buffers straight into {@link WeatherData}, using
+     * the application's shared Jackson configuration, and is then cached according to the configured
+     * {@link CachePolicy} and returned.
+     *
+     * <p>Concurrent calls for the same city are coalesced by {@link WeatherRequestCoalescer}: only one request is sent
+     * to the API and written to the cache, and every caller receives its result or its error. While the
+     * {@link CachePolicy} writes the cache, {@link ClusterRequestCoalescer} extends this to all instances sharing
+     * the Redis server. Misses of a batch take the same cluster-wide lease, but are coalesced within the instance
+     * under a key of their own, since their entries are written by the batch.
      *
      * <p>If the HTTP request fails with a 4xx status code, a {@link RuntimeException} is thrown. If data conversion or
      * caching fails, appropriate logging is performed.
@@ -118,49 +318,325 @@ public class WeatherService {
      * @throws HttpServerErrorException
      */
     public Mono<WeatherData> fetchFromService(String city) {
-        String url = "http://api.weatherapi.com/v1/current.json?key=" + token + "&q=" + city;
-        return webClient.get()
-                .uri(url)
+        String query = keyResolver.normalize(city);
+        return fetchEntry(keyResolver.resolve(query), query).map(CachedWeather::getData);
+    }
+
+    private Mono<CachedWeather> fetchEntry(String key, String query) {
+        return fetchEntry(key, query, Duration.ZERO);
+    }
+
+    /**
+     * Fetches an entry, coalesced within the instance and, while the cache is written, across instances. An entry
+     * fetched by another instance is returned if it has more than {@code minFreshTtl} left, and its location is
+     * learned as if it had been fetched here.
+     */
+    private Mono<CachedWeather> fetchEntry(String key, String query, Duration minFreshTtl) {
+        if (!cachePolicy.writesCache()) {
+            return requestCoalescer.execute(key, () -> requestFromService(query).map(ClusterRequestCoalescer.Fetched::entry));
+        }
+        return requestCoalescer.execute(key, () -> clusterCoalescer.execute(key, minFreshTtl, () -> requestFromService(query))
+                .doOnNext(entry -> keyResolver.learn(query, entry.getData().getLocation())));
+    }
+
+    /**
+     * Fetches the weather of a popular city ahead of its expiry and writes it to the cache like a background refresh.
+     * A call for a city that is already being fetched joins that call.
+     *
+     * @param key      The canonical cache key of the city.
+     * @param query    The normalized query to send to the weather API.
+     * @param leadTime The fresh TTL an entry another instance has just prefetched must have left to be returned
+     *                 instead of calling the API.
+     * @return A {@link Mono} emitting the new cache entry, or an error if the weather API could not be called.
+     */
+    public Mono<CachedWeather> prefetch(String key, String query, Duration leadTime) {
+        return fetchEntry(key, query, leadTime);
+    }
+
+    /**
+     * Starts a refresh of a stale entry without waiting for it. Concurrent refreshes of the same city are coalesced,
+     * so a burst of stale hits still results in a single call to the external API. No refresh is started while the
+     * {@link UpstreamQuota} budget refuses low-priority calls.
+     */
+    private void refreshInBackground(String key, String query) {
+        if (!upstreamQuota.allowsRefresh()) {
+            logger.debug("Skipping background refresh for city: {}, quota budget is {}", query, upstreamQuota.getPressure());
+            return;
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        fetchEntry(key, query)
+                .doFinally(signal -> sample.stop(refreshLatency))
+                .subscribe(entry -> logger.debug("Refreshed stale weather data for city: {}", query),
+                        e -> logger.error("Background refresh failed for {}: {}", query, e.getMessage()));
+    }
+
+    /**
+     * Fetches the current weather for several cities at once.
+     *
+     * <p>All cities are resolved to their cache keys and looked up with a single multi-get. Hits are emitted first;
+     * only the misses are requested from the external API, at most {@code weather.batch.upstream-concurrency} at a
+     * time, and emitted as they arrive. Like single requests, misses are coalesced across instances by
+     * {@link ClusterRequestCoalescer} while the cache is written. The fetched entries are written back to the cache
+     * according to the configured {@link CachePolicy} as they arrive, in pipelined chunks of up to
+     * {@code weather.batch.write-size} entries written at most {@code weather.batch.write-window} after their first
+     * entry, so that the lease of each entry is released without waiting for the whole batch.
+     *
+     * <p>A failure for one city is reported in its {@link WeatherBatchItem} and does not fail the other cities. A city
+     * whose entry is past its hard expiry is fetched like a miss, and served from the expired entry if the external
+     * API is unavailable, or straight away while the {@link UpstreamQuota} budget is critical.
+     *
+     * @param cities The cities to fetch; duplicates are answered once.
+     * @return A {@link Flux} emitting one item per distinct city, hits first and then misses in completion order.
+     * @throws HttpClientErrorException if more than {@code weather.batch.max-size} cities are requested.
+     */
+    public Flux<WeatherBatchItem> getWeatherBatch(List<String> cities) {
+        if (cities.size() > maxBatchSize) {
+            return Flux.error(new HttpClientErrorException(HttpStatus.BAD_REQUEST,
+                    "Batch size " + cities.size() + " exceeds the limit of " + maxBatchSize));
+        }
+        Map<String, String> queries = new LinkedHashMap<>();
+        Map<String, String> keys = new HashMap<>();
+        for (String city : cities) {
+            String query = keyResolver.normalize(city);
+            queries.put(city, query);
+            keys.put(city, keyResolver.resolve(query));
+            popularity.record(keys.get(city), query);
+        }
+        Mono<Map<String, CachedWeather>> cached = cachePolicy.readsCache()
+                ? weatherCache.lookupAll(new HashSet<>(keys.values()))
+                : Mono.just(Map.of());
+        return cached.flatMapMany(found -> {
+            boolean prefersStale = upstreamQuota.getPressure().prefersStale();
+            List<WeatherBatchItem> hits = new ArrayList<>();
+            List<String> misses = new ArrayList<>();
+            for (String city : queries.keySet()) {
+                CachedWeather entry = found.get(keys.get(city));
+                if (entry == null || entry.isExpired() && !prefersStale) {
+                    misses.add(city);
+                    continue;
+                }
+                if (entry.isExpired()) {
+                    fallbackServed.increment();
+                    requests.get(RequestResult.FALLBACK).increment();
+                    recordDataAge(entry.getData());
+                    hits.add(WeatherBatchItem.success(city, entry.getData()));
+                    continue;
+                }
+                popularity.onServed(keys.get(city), entry);
+                if (entry.isStale()) {
+                    staleServed.increment();
+                    refreshInBackground(keys.get(city), queries.get(city));
+                }
+                requests.get(entry.isStale() ? RequestResult.STALE : RequestResult.HIT).increment();
+                recordDataAge(entry.getData());
+                hits.add(WeatherBatchItem.success(city, entry.getData()));
+            }
+            logger.info("Batch of {} cities: {} cached, {} to fetch", queries.size(), hits.size(), misses.size());
+            Sinks.Many<BatchWrite> loaded = Sinks.many().unicast().onBackpressureBuffer();
+            Mono<Void> writes = loaded.asFlux()
+                    .bufferTimeout(batchWriteSize, batchWriteWindow)
+                    .concatMap(this::storeAllInCache)
+                    .then()
+                    .cache();
+            writes.subscribe(done -> { }, e -> logger.error("Batch cache write failed: {}", e.getMessage()));
+            Flux<WeatherBatchItem> fetched = Flux.fromIterable(misses)
+                    .flatMap(city -> fetchBatchItem(city, keys.get(city), queries.get(city), found.get(keys.get(city)), loaded),
+                            batchConcurrency)
+                    .doFinally(signal -> {
+                        synchronized (loaded) {
+                            loaded.tryEmitComplete();
+                        }
+                    });
+            Flux<WeatherBatchItem> items = Flux.fromIterable(hits).concatWith(fetched);
+            return cachePolicy.awaitsWrite() ? items.concatWith(writes.then(Mono.empty())) : items;
+        });
+    }
+
+    private Mono<WeatherBatchItem> fetchBatchItem(String city, String key, String query, CachedWeather expired,
+                                                  Sinks.Many<BatchWrite> loaded) {
+        Mono<CachedWeather> fetch = cachePolicy.writesCache()
+                ? requestCoalescer.execute(BATCH_KEY_PREFIX + key, () -> clusterCoalescer.execute(key, Duration.ZERO,
+                                () -> loadForBatch(query, loaded))
+                        .doOnNext(entry -> keyResolver.learn(query, entry.getData().getLocation())))
+                : requestCoalescer.execute(BATCH_KEY_PREFIX + key, () -> loadFromService(query));
+        return fetch
+                .doOnNext(entry -> requests.get(RequestResult.MISS).increment())
+                .doOnNext(entry -> recordDataAge(entry.getData()))
+                .map(entry -> WeatherBatchItem.success(city, entry.getData()))
+                .onErrorResume(e -> expired != null && UpstreamGuard.isUpstreamFailure(e),
+                        e -> serveFallback(city, expired, e.getMessage())
+                                .doOnNext(entry -> requests.get(RequestResult.FALLBACK).increment())
+                                .doOnNext(entry -> recordDataAge(entry.getData()))
+                                .map(entry -> WeatherBatchItem.success(city, entry.getData())))
+                .onErrorResume(e -> {
+                    requests.get(RequestResult.ERROR).increment();
+                    logger.error("Failed to fetch weather data for {}: {}", city, e.getMessage());
+                    return Mono.just(WeatherBatchItem.failure(city, e.getMessage()));
+                });
+    }
+
+    /**
+     * Requests the weather of a batch miss and hands the entry to the batch to be written with its next chunk.
+     */
+    private Mono<ClusterRequestCoalescer.Fetched> loadForBatch(String query, Sinks.Many<BatchWrite> loaded) {
+        return loadFromService(query).map(entry -> {
+            String key = keyResolver.learn(query, entry.getData().getLocation());
+            BatchWrite write = new BatchWrite(key, entry, Sinks.empty());
+            synchronized (loaded) {
+                if (loaded.tryEmitNext(write).isFailure()) {
+                    write.written().tryEmitError(new IllegalStateException("Batch was cancelled before the write"));
+                }
+            }
+            return new ClusterRequestCoalescer.Fetched(entry, key, write.written().asMono());
+        });
+    }
+
+    /**
+     * Writes a chunk of the entries fetched for a batch, and signals the write of each entry.
+     */
+    private Mono<Void> storeAllInCache(List<BatchWrite> chunk) {
+        if (cachePolicy.queuesWrite()) {
+            return Flux.fromIterable(chunk)
+                    .concatMap(write -> {
+                        WriteBehindQueue.Enqueued enqueued = writeBehind.enqueue(write.key(), write.entry());
+                        enqueued.written().subscribe(done -> { }, write.written()::tryEmitError,
+                                write.written()::tryEmitEmpty);
+                        return enqueued.accepted()
+                                .onErrorResume(e -> {
+                                    logger.error("Cache write failed for {}: {}", write.key(), e.getMessage());
+                                    return Mono.empty();
+                                });
+                    })
+                    .then();
+        }
+        Map<String, CachedWeather> entries = new LinkedHashMap<>();
+        chunk.forEach(write -> entries.put(write.key(), write.entry()));
+        return weatherCache.putAll(entries)
+                .onErrorResume(e -> Mono.just(Set.of()))
+                .doOnNext(written -> chunk.forEach(write -> {
+                    if (written.contains(write.key())) {
+                        write.written().tryEmitEmpty();
+                    } else {
+                        write.written().tryEmitError(new IllegalStateException("Write to Redis failed"));
+                    }
+                }))
+                .then();
+    }
+
+    /**
+     * Requests the weather for a normalized query and stores it under the canonical key of the location the API
+     * resolved the query to, recording the query as an alias of that key.
+     */
+    private Mono<ClusterRequestCoalescer.Fetched> requestFromService(String query) {
+        return loadFromService(query)
+                .flatMap(entry -> storeInCache(keyResolver.learn(query, entry.getData().getLocation()), entry));
+    }
+
+    /**
+     * Requests the weather for a normalized query, counting the call against the {@link UpstreamQuota} once the
+     * {@link UpstreamGuard} lets it through. The TTL of the entry is chosen by {@link AdaptiveTtl} and lengthened by
+     * the factor of the current quota pressure, and no call is made once the monthly quota is used up.
+     */
+    private Mono<CachedWeather> loadFromService(String query) {
+        return Mono.defer(() -> {
+            if (!upstreamQuota.allowsCall()) {
+                return Mono.error(new UpstreamUnavailableException("Monthly quota of the weather API is used up"));
+            }
+            int ttlMultiplier = upstreamQuota.getPressure().ttlMultiplier();
+            return requestUpstream(query)
+                    .map(weatherData -> adaptiveTtl.newEntry(weatherData, softTtl, hardTtl, ttlMultiplier));
+        });
+    }
+
+    private Mono<WeatherData> requestUpstream(String query) {
+        return upstreamGuard.protect(webClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/current.json")
+                        .queryParam("key", "{key}")
+                        .queryParam("q", "{q}")
+                        .build(token, query))
                 .retrieve()
                 .onStatus(HttpStatusCode::is4xxClientError, clientResponse ->
                         Mono.error(new HttpClientErrorException("Request failed with status: 400" , clientResponse.statusCode()  ,clientResponse.toString()   , null, null, null)))
                 .onStatus(HttpStatusCode::is5xxServerError, clientResponse ->
                         Mono.error(new HttpServerErrorException("Server error occurred", clientResponse.statusCode(),  clientResponse.toString(), null, null, null)))
-                .bodyToMono(Map.class)
-                .map(this::convertToWeatherData)
-                .flatMap(weatherData -> weatherCache.put(city, weatherData, Duration.ofMinutes(60))
-                        .thenReturn(weatherData))
-                .doOnNext(data -> logger.info("Data has been pushed in cache: " + data));
+                .bodyToMono(WeatherData.class)
+                .doOnSubscribe(subscription -> upstreamQuota.record()));
+    }
+
+    private void recordDataAge(WeatherData data) {
+        if (data != null && data.getCurrentWeather() != null && data.getCurrentWeather().getLastUpdatedEpoch() > 0) {
+            long age = System.currentTimeMillis() - data.getCurrentWeather().getLastUpdatedEpoch() * 1000;
+            dataAge.record(Math.max(0, age), TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
-     * Converts the raw JSON response from the weather API into a structured {@link WeatherData} object.
-     *
-     * <p>This method parses the JSON response to extract weather information and maps it to the {@link WeatherData} model.
-     * The response is expected to contain location and current weather details, which are used to create a {@link WeatherData}
-     * object.
-     *
-     * @param data The raw JSON data received from the weather API. This is a map with string keys and object values
-     *             representing the JSON structure.
-     * @return A {@link WeatherData} object constructed from the provided JSON data. This object encapsulates weather
-     *         information such as location details and current weather conditions.
-     * @throws IllegalArgumentException if the JSON data does not conform to the expected structure or contains invalid values.
+     * Stores a fetched entry according to the {@link CachePolicy}. The write of the returned entry has already
+     * completed if the policy waits for it; otherwise it runs once its {@link ClusterRequestCoalescer.Fetched#written()}
+     * signal is subscribed, or completes when the write-behind queue has written the entry.
      */
-    public WeatherData convertToWeatherData(Map<String, Object> data) {
-        ObjectMapper objectMapper = new ObjectMapper();
-        Map<String, Object> currentMap = (Map<String, Object>) data.get("current");
-
-        Location location = objectMapper.convertValue(data.get("location"), Location.class);
-        Condition condition = objectMapper.convertValue(currentMap.get("condition"), Condition.class);
-        CurrentWeather currentWeather = objectMapper.convertValue(data.get("current"), CurrentWeather.class);
-        currentWeather.setCondition(condition);
-        logger.info("JSON has been parsed");
-        return new WeatherData(location, currentWeather);
+    private Mono<ClusterRequestCoalescer.Fetched> storeInCache(String city, CachedWeather entry) {
+        if (!cachePolicy.writesCache()) {
+            return Mono.just(new ClusterRequestCoalescer.Fetched(entry, city, Mono.empty()));
+        }
+        if (cachePolicy.queuesWrite()) {
+            WriteBehindQueue.Enqueued enqueued = writeBehind.enqueue(city, entry);
+            return enqueued.accepted()
+                    .onErrorResume(e -> {
+                        logger.error("Cache write failed for {}: {}", city, e.getMessage());
+                        return Mono.empty();
+                    })
+                    .thenReturn(new ClusterRequestCoalescer.Fetched(entry, city, enqueued.written()));
+        }
+        Mono<Void> write = weatherCache.put(city, entry)
+                .doOnNext(written -> logger.debug("Data has been pushed in cache: {}", entry::getData))
+                .then();
+        if (cachePolicy.awaitsWrite()) {
+            return write.thenReturn(new ClusterRequestCoalescer.Fetched(entry, city, Mono.empty()));
+        }
+        return Mono.just(new ClusterRequestCoalescer.Fetched(entry, city, write));
     }
 
     @PostConstruct
     private void init() {
         logger.info("Weather service started");
-        meterRegistry.gauge( "weather_request_active_count",  Tags.of("request", "waiting "),  0L);
+        for (RequestResult result : RequestResult.values()) {
+            requests.put(result, Counter.builder("weather_requests")
+                    .tag("result", result.tag)
+                    .description("Weather requests, by how they were answered")
+                    .register(meterRegistry));
+            requestLatency.put(result, Timer.builder("weather_request_latency")
+                    .tag("result", result.tag)
+                    .description("Time to answer a weather request, by how it was answered")
+                    .publishPercentileHistogram()
+                    .serviceLevelObjectives(Duration.ofMillis(5), Duration.ofMillis(25), Duration.ofMillis(100),
+                            Duration.ofMillis(250), Duration.ofSeconds(1))
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(meterRegistry));
+        }
+        Gauge.builder("weather_requests_in_flight", requestsInFlight, AtomicInteger::get)
+                .description("Weather requests currently being answered")
+                .register(meterRegistry);
+        staleServed = Counter.builder("weather_cache_stale_served")
+                .description("Requests answered with an entry past its soft expiry")
+                .register(meterRegistry);
+        fallbackServed = Counter.builder("weather_cache_fallback_served")
+                .description("Requests answered with an expired entry because the weather API was unavailable")
+                .register(meterRegistry);
+        aliasHits = Counter.builder("weather_cache_alias_hits")
+                .description("Cache hits found through a learned location alias rather than the query itself")
+                .register(meterRegistry);
+        refreshLatency = Timer.builder("weather_cache_refresh_latency")
+                .description("Duration of background refreshes of stale entries")
+                .register(meterRegistry);
+        dataAge = Timer.builder("weather_served_data_age")
+                .description("Age of the observation returned to clients, from its last_updated_epoch")
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(Duration.ofMinutes(5), Duration.ofMinutes(15), Duration.ofMinutes(30),
+                        Duration.ofMinutes(60))
+                .minimumExpectedValue(Duration.ofSeconds(1))
+                .maximumExpectedValue(Duration.ofHours(6))
+                .register(meterRegistry);
     }
 }
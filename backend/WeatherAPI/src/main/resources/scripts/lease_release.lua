@@ -0,0 +1,12 @@
+-- Releases the lease in KEYS[1] if it is still held with the token in ARGV[1]: replaces it with the marker in
+-- ARGV[2] for ARGV[3] milliseconds, or deletes it if ARGV[2] is empty.
+-- Returns 1 if the lease was released, 0 if it had expired or is held by another instance.
+if redis.call('GET', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+if ARGV[2] == '' then
+    redis.call('DEL', KEYS[1])
+else
+    redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+end
+return 1
@@ -0,0 +1,15 @@
+-- Takes a token from the bucket in KEYS[1] with the generic cell rate algorithm.
+-- ARGV[1]: microseconds between two tokens, ARGV[2]: microseconds a full bucket covers.
+-- Returns {allowed (1 or 0), remaining tokens, microseconds until the next token}.
+local interval = tonumber(ARGV[1])
+local tolerance = tonumber(ARGV[2])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local arrival = tonumber(redis.call('GET', KEYS[1]) or now)
+local next = math.max(arrival, now) + interval
+local wait = next - now - tolerance
+if wait > 0 then
+    return {0, 0, wait}
+end
+redis.call('SET', KEYS[1], string.format('%.0f', next), 'PX', math.ceil((next - now) / 1000))
+return {1, math.floor((tolerance - (next - now)) / interval), 0}
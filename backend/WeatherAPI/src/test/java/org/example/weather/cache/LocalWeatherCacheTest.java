@@ -0,0 +1,90 @@
+package org.example.weather.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.models.CurrentWeather;
+import org.example.weather.models.Location;
+import org.example.weather.models.WeatherData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class LocalWeatherCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private LocalWeatherCache localCache;
+
+    private CachedWeather entry;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        localCache = new LocalWeatherCache();
+        localCache.meterRegistry = meterRegistry;
+        localCache.enabled = true;
+        localCache.maximumWeight = 1_000_000;
+        localCache.maxTtl = Duration.ofMinutes(5);
+        localCache.objectMapper = new ObjectMapper();
+        localCache.encodedResponses = true;
+        localCache.init();
+        entry = entry(Duration.ofMinutes(60));
+    }
+
+    @Test
+    void testPutAndGet() {
+        localCache.put("london", entry);
+
+        assertSame(entry, localCache.get("london"));
+        assertNull(localCache.get("paris"));
+        assertEquals(1.0, meterRegistry.get("cache.gets").tags("cache", "weather.l1", "result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tags("cache", "weather.l1", "result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void testEncodedResponseIsAttachedOnce() throws Exception {
+        localCache.put("london", entry);
+        EncodedWeather encoded = localCache.get("london").getEncoded();
+        localCache.put("london", entry);
+
+        assertArrayEquals(new ObjectMapper().writeValueAsBytes(entry.getData()), encoded.body());
+        assertEquals(32, encoded.contentHash().length());
+        assertSame(encoded, localCache.get("london").getEncoded());
+    }
+
+    @Test
+    void testEntryDoesNotOutliveHardExpiry() throws InterruptedException {
+        localCache.put("london", entry(Duration.ofMillis(20)));
+        Thread.sleep(100);
+
+        assertNull(localCache.get("london"));
+    }
+
+    @Test
+    void testEmptyAndExpiredValuesAreNotStored() {
+        localCache.put("empty", CachedWeather.of(new WeatherData(), Duration.ofMinutes(60), Duration.ofMinutes(60)));
+        localCache.put("expired", entry(Duration.ofSeconds(-2)));
+
+        assertNull(localCache.get("empty"));
+        assertNull(localCache.get("expired"));
+    }
+
+    @Test
+    void testDisabledCacheNeverHits() {
+        localCache.enabled = false;
+        localCache.put("london", entry);
+
+        assertNull(localCache.get("london"));
+    }
+
+    private static CachedWeather entry(Duration hardTtl) {
+        WeatherData weatherData = new WeatherData(Location.builder().name("London").build(), CurrentWeather.builder().build());
+        return CachedWeather.of(weatherData, hardTtl, hardTtl);
+    }
+}
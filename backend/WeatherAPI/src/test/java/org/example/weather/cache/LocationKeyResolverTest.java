@@ -0,0 +1,132 @@
+package org.example.weather.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.models.Location;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LocationKeyResolverTest {
+
+    @Mock
+    private ReactiveStringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private ReactiveValueOperations<String, String> valueOperations;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private LocationKeyResolver keyResolver;
+
+    private final Location london = Location.builder()
+            .name("London")
+            .region("City of London, Greater London")
+            .country("United Kingdom")
+            .build();
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(stringRedisTemplate.scan(any(ScanOptions.class)))
+                .thenReturn(Flux.just(LocationKeyResolver.ALIAS_KEY_PREFIX + "londres"));
+        when(valueOperations.multiGet(anyCollection())).thenReturn(Mono.just(List.of("paris-should-not-matter")));
+        when(valueOperations.set(anyString(), anyString(), any(Duration.class))).thenReturn(Mono.just(true));
+
+        keyResolver = newKeyResolver();
+    }
+
+    @Test
+    void testNormalize() {
+        assertEquals("london", keyResolver.normalize("  London "));
+        assertEquals("london", keyResolver.normalize("LONDON"));
+        assertEquals("new york", keyResolver.normalize("New   York"));
+        assertEquals("london,uk", keyResolver.normalize("London , UK"));
+    }
+
+    @Test
+    void testAliasesLoadedFromRedis() {
+        assertEquals("paris-should-not-matter", keyResolver.resolve("londres"));
+        assertEquals(1.0, meterRegistry.get("weather_alias_table_size").gauge().value());
+    }
+
+    @Test
+    void testLearnedAliasesResolveToCanonicalKey() {
+        String canonicalKey = keyResolver.learn("london,uk", london);
+        keyResolver.learn("london", london);
+
+        assertEquals("london|city of london,greater london|united kingdom", canonicalKey);
+        assertEquals(canonicalKey, keyResolver.resolve("london,uk"));
+        assertEquals(canonicalKey, keyResolver.resolve("london"));
+        assertEquals(canonicalKey, keyResolver.resolve(canonicalKey));
+        assertEquals("paris", keyResolver.resolve("paris"));
+        verify(valueOperations, times(1))
+                .set(LocationKeyResolver.ALIAS_KEY_PREFIX + "london", canonicalKey, Duration.ofDays(30));
+    }
+
+    @Test
+    void testLoadStopsOnceTheIndexIsFull() {
+        when(stringRedisTemplate.scan(any(ScanOptions.class))).thenReturn(Flux.fromStream(
+                IntStream.range(0, 50).mapToObj(i -> LocationKeyResolver.ALIAS_KEY_PREFIX + "query" + i)));
+        when(valueOperations.multiGet(anyCollection())).thenAnswer(invocation -> Mono.just(
+                invocation.<Collection<String>>getArgument(0).stream().map(key -> "london").toList()));
+
+        LocationKeyResolver loaded = newKeyResolver();
+
+        assertEquals(10, loaded.size());
+        assertEquals("london", loaded.resolve("query0"));
+        assertEquals("query10", loaded.resolve("query10"));
+    }
+
+    @Test
+    void testLocationWithoutNameUsesRoundedCoordinates() {
+        Location location = Location.builder().lat(51.5234).lon(-0.1149).build();
+
+        assertEquals("51.52,-0.11", keyResolver.canonicalKey(location));
+    }
+
+    @Test
+    void testAliasTableIsBoundedAndKeepsLearning() {
+        for (int i = 0; i < 20; i++) {
+            keyResolver.learn("query" + i, london);
+        }
+
+        assertEquals(10, keyResolver.size());
+
+        Location paris = Location.builder().name("Paris").region("Ile-de-France").country("France").build();
+        String canonicalKey = keyResolver.learn("paris", paris);
+
+        assertEquals(canonicalKey, keyResolver.resolve("paris"));
+        assertEquals(10, keyResolver.size());
+    }
+
+    private LocationKeyResolver newKeyResolver() {
+        LocationKeyResolver resolver = new LocationKeyResolver();
+        resolver.stringRedisTemplate = stringRedisTemplate;
+        resolver.meterRegistry = meterRegistry;
+        resolver.maxSize = 10;
+        resolver.ttl = Duration.ofDays(30);
+        resolver.init();
+        return resolver;
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.weather.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.loadtest.RedisStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveStringCommands;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a batch written through the pipeline connection reaches Redis in flushes of the configured size.
+ */
+public class RedisPipelineTest {
+
+    private RedisStub redis;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private RedisPipeline pipeline;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        redis = RedisStub.start();
+        connectionFactory = new LettuceConnectionFactory("127.0.0.1", redis.getPort());
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        meterRegistry = new SimpleMeterRegistry();
+
+        pipeline = new RedisPipeline();
+        pipeline.connectionFactory = connectionFactory;
+        pipeline.meterRegistry = meterRegistry;
+        pipeline.enabled = true;
+        pipeline.flushAfter = 4;
+        pipeline.init();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        pipeline.destroy();
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Test
+    void testBatchIsFlushedEveryFlushAfterCommands() {
+        List<ReactiveStringCommands.SetCommand> commands = IntStream.range(0, 10)
+                .mapToObj(i -> ReactiveStringCommands.SetCommand.set(bytes("city-" + i))
+                        .value(bytes("weather-" + i))
+                        .expiring(Expiration.from(Duration.ofMinutes(5))))
+                .toList();
+
+        List<ReactiveRedisConnection.BooleanResponse<ReactiveStringCommands.SetCommand>> responses =
+                pipeline.set(commands).collectList().block();
+
+        assertEquals(10, responses.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(commands.get(i), responses.get(i).getInput());
+            assertTrue(responses.get(i).getOutput());
+        }
+        assertEquals(10, redis.size());
+        assertEquals(3, meterRegistry.get("weather_redis_pipeline_flush_size").summary().count());
+        assertEquals(10.0, meterRegistry.get("weather_redis_pipeline_flush_size").summary().totalAmount());
+    }
+
+    private static ByteBuffer bytes(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.weather.cache;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.weather.models.WeatherData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WeatherRedisSerializerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final WeatherRedisSerializer jsonSerializer = new WeatherRedisSerializer(WeatherCodec.JSON, objectMapper);
+
+    private final WeatherRedisSerializer binarySerializer = new WeatherRedisSerializer(WeatherCodec.BINARY, objectMapper);
+
+    private CachedWeather entry;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        WeatherData data = objectMapper.readValue(new ClassPathResource("fixtures/current-london.json").getInputStream(), WeatherData.class);
+        entry = new CachedWeather(data, 1_700_000_000_000L, 1_700_000_900_000L);
+    }
+
+    @Test
+    void testBinaryRoundTrip() {
+        byte[] bytes = binarySerializer.serialize(entry);
+
+        assertEquals(WeatherRedisSerializer.VERSION, bytes[0]);
+        assertEquals(entry, binarySerializer.deserialize(bytes));
+    }
+
+    @Test
+    void testBinaryIsSmallerThanJson() {
+        int jsonSize = jsonSerializer.serialize(entry).length;
+        int binarySize = binarySerializer.serialize(entry).length;
+
+        assertTrue(binarySize * 2 < jsonSize, "binary " + binarySize + " bytes, json " + jsonSize + " bytes");
+    }
+
+    @Test
+    void testEitherCodecReadsBothFormats() {
+        byte[] json = jsonSerializer.serialize(entry);
+        byte[] binary = binarySerializer.serialize(entry);
+
+        assertEquals('{', json[0]);
+        assertEquals(entry, binarySerializer.deserialize(json));
+        assertEquals(entry, jsonSerializer.deserialize(binary));
+    }
+
+    @Test
+    void testMissingSectionsAndNullStrings() {
+        CachedWeather partial = new CachedWeather(new WeatherData(entry.getData().getLocation(), null), 1L, 2L);
+        partial.getData().getLocation().setRegion(null);
+
+        assertEquals(partial, binarySerializer.deserialize(binarySerializer.serialize(partial)));
+    }
+
+    @Test
+    void testUnknownVersionAndEmptyValues() {
+        assertThrows(SerializationException.class, () -> binarySerializer.deserialize(new byte[]{42, 0, 0}));
+        assertNull(binarySerializer.deserialize(new byte[0]));
+        assertNull(binarySerializer.deserialize("".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,160 @@
+package org.example.weather.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.models.CurrentWeather;
+import org.example.weather.models.Location;
+import org.example.weather.models.WeatherData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that snapshots survive a restart, carry over entries of the previous snapshot, reject corrupt files and
+ * answer Redis reads that fail.
+ */
+public class WeatherSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private LocalWeatherCache localCache;
+
+    private WeatherSnapshot snapshot;
+
+    @BeforeEach
+    public void setUp() {
+        localCache = localCache();
+        snapshot = snapshot(localCache, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testRestartIsWarm() throws IOException {
+        localCache.put("london", entry("London"));
+        localCache.put("paris", entry("Paris"));
+
+        long size = snapshot.write();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        LocalWeatherCache restartedCache = localCache();
+        WeatherSnapshot restarted = snapshot(restartedCache, meterRegistry);
+
+        assertEquals(2, restarted.warmLoad());
+        assertEquals("Paris", restartedCache.get("paris").getData().getLocation().getName());
+        assertEquals(size, Files.size(directory.resolve("weather.snapshot")));
+        assertEquals(size, meterRegistry.get("weather_snapshot_size_bytes").gauge().value());
+        assertEquals(2, meterRegistry.get("weather_snapshot_entries").gauge().value());
+        assertTrue(meterRegistry.get("weather_snapshot_warm_load").timeGauge().value() > 0);
+    }
+
+    @Test
+    void testEntriesOfPreviousSnapshotAreCarriedOver() throws IOException {
+        localCache.put("london", entry("London"));
+        localCache.put("paris", entry("Paris"));
+        snapshot.write();
+        localCache.invalidate("paris");
+        localCache.put("rome", entry("Rome"));
+
+        snapshot.write();
+
+        assertEquals(3, snapshot.size());
+        assertEquals("Paris", snapshot.lookup("paris").getData().getLocation().getName());
+    }
+
+    @Test
+    void testCorruptSnapshotIsIgnored() throws IOException {
+        localCache.put("london", entry("London"));
+        snapshot.write();
+        Path file = directory.resolve("weather.snapshot");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+
+        LocalWeatherCache restartedCache = localCache();
+        WeatherSnapshot restarted = snapshot(restartedCache, new SimpleMeterRegistry());
+
+        assertEquals(0, restarted.warmLoad());
+        assertEquals(0, restarted.size());
+        assertNull(restartedCache.get("london"));
+    }
+
+    @Test
+    void testRedisFailureIsAnsweredFromSnapshot() throws IOException {
+        localCache.put("london", entry("London"));
+        snapshot.write();
+        localCache.invalidate("london");
+
+        @SuppressWarnings("unchecked")
+        ReactiveRedisTemplate<String, CachedWeather> redisTemplate = mock(ReactiveRedisTemplate.class);
+        @SuppressWarnings("unchecked")
+        ReactiveValueOperations<String, CachedWeather> valueOperations = mock(ReactiveValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(anyString()))
+                .thenReturn(Mono.error(new RedisConnectionFailureException("Unable to connect to Redis")));
+        WeatherCache weatherCache = new WeatherCache();
+        weatherCache.redisTemplate = redisTemplate;
+        weatherCache.localCache = localCache;
+        weatherCache.snapshot = snapshot;
+        weatherCache.meterRegistry = new SimpleMeterRegistry();
+        weatherCache.graceTtl = Duration.ofHours(6);
+        ReflectionTestUtils.invokeMethod(weatherCache, "initCache");
+
+        CachedWeather served = weatherCache.lookup("london").block();
+
+        assertNotNull(served);
+        assertEquals("London", served.getData().getLocation().getName());
+        assertNotNull(localCache.get("london"));
+        assertThrows(RedisConnectionFailureException.class, () -> weatherCache.lookup("paris").block());
+    }
+
+    private LocalWeatherCache localCache() {
+        LocalWeatherCache localCache = new LocalWeatherCache();
+        localCache.meterRegistry = new SimpleMeterRegistry();
+        localCache.enabled = true;
+        localCache.maximumWeight = 1_000_000;
+        localCache.maxTtl = Duration.ofMinutes(5);
+        localCache.objectMapper = new ObjectMapper();
+        localCache.encodedResponses = false;
+        localCache.init();
+        return localCache;
+    }
+
+    private WeatherSnapshot snapshot(LocalWeatherCache localCache, SimpleMeterRegistry meterRegistry) {
+        WeatherSnapshot snapshot = new WeatherSnapshot();
+        snapshot.localCache = localCache;
+        snapshot.objectMapper = new ObjectMapper();
+        snapshot.meterRegistry = meterRegistry;
+        snapshot.enabled = false;
+        snapshot.path = directory.resolve("weather.snapshot");
+        snapshot.interval = Duration.ofHours(1);
+        snapshot.maxEntries = 100;
+        snapshot.graceTtl = Duration.ofHours(6);
+        snapshot.init();
+        return snapshot;
+    }
+
+    private static CachedWeather entry(String city) {
+        WeatherData weatherData = new WeatherData(Location.builder().name(city).build(),
+                CurrentWeather.builder().tempC(17.0).build());
+        return CachedWeather.of(weatherData, Duration.ofMinutes(15), Duration.ofMinutes(60));
+    }
+}
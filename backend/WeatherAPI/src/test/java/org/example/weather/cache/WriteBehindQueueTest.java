@@ -0,0 +1,148 @@
+package org.example.weather.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.models.Location;
+import org.example.weather.models.WeatherData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that queued entries are coalesced by key and written in batches, and what each overflow policy does with
+ * an entry that does not fit.
+ */
+public class WriteBehindQueueTest {
+
+    @Mock
+    private WeatherCache weatherCache;
+
+    @Mock
+    private LocalWeatherCache localCache;
+
+    @Captor
+    private ArgumentCaptor<Map<String, CachedWeather>> batches;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        when(weatherCache.putAll(anyMap())).thenAnswer(invocation ->
+                Mono.just(Set.copyOf(invocation.<Map<String, CachedWeather>>getArgument(0).keySet())));
+        when(weatherCache.put(anyString(), any(CachedWeather.class))).thenReturn(Mono.just(true));
+    }
+
+    @Test
+    void testEntriesAreCoalescedAndWrittenOnceABatchIsFull() {
+        WriteBehindQueue queue = queue(10, 3, Duration.ofHours(1), WriteBehindQueue.Overflow.DROP_OLDEST);
+        CachedWeather newerLondon = entry("London");
+
+        Mono<Void> londonWritten = queue.enqueue("london", entry("London")).written();
+        queue.enqueue("paris", entry("Paris")).accepted().block();
+        queue.enqueue("london", newerLondon).accepted().block();
+
+        assertEquals(2, queue.getDepth());
+        verify(weatherCache, never()).putAll(anyMap());
+        verify(localCache, times(2)).put(eq("london"), any(CachedWeather.class));
+
+        queue.enqueue("rome", entry("Rome")).accepted().block();
+
+        verify(weatherCache).putAll(batches.capture());
+        assertEquals(List.of("london", "paris", "rome"), List.copyOf(batches.getValue().keySet()));
+        assertSame(newerLondon, batches.getValue().get("london"));
+        assertEquals(0, queue.getDepth());
+        londonWritten.block(Duration.ofSeconds(1));
+        assertEquals(3.0, count("written"));
+        assertEquals(1.0, count("coalesced"));
+        assertEquals(3, meterRegistry.get("weather_cache_write_behind_lag").timer().count());
+    }
+
+    @Test
+    void testQueueIsFlushedAfterTheFlushInterval() {
+        WriteBehindQueue queue = queue(10, 64, Duration.ofMillis(50), WriteBehindQueue.Overflow.DROP_OLDEST);
+
+        queue.enqueue("london", entry("London")).accepted().block();
+
+        verify(weatherCache, timeout(2000)).putAll(batches.capture());
+        assertEquals(List.of("london"), List.copyOf(batches.getValue().keySet()));
+        assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    void testOverflowPolicies() {
+        WriteBehindQueue dropOldest = queue(2, 64, Duration.ofHours(1), WriteBehindQueue.Overflow.DROP_OLDEST);
+        Mono<Void> oldestWritten = dropOldest.enqueue("london", entry("London")).written();
+        fill(dropOldest);
+        assertThrows(IllegalStateException.class, oldestWritten::block);
+        dropOldest.flush().block();
+
+        WriteBehindQueue dropNewest = queue(2, 64, Duration.ofHours(1), WriteBehindQueue.Overflow.DROP_NEWEST);
+        fill(dropNewest);
+        dropNewest.flush().block();
+
+        verify(weatherCache, times(2)).putAll(batches.capture());
+        assertEquals(List.of("paris", "rome"), List.copyOf(batches.getAllValues().get(0).keySet()));
+        assertEquals(List.of("london", "paris"), List.copyOf(batches.getAllValues().get(1).keySet()));
+        assertEquals(2.0, count("dropped"));
+
+        WriteBehindQueue backpressure = queue(2, 64, Duration.ofHours(1), WriteBehindQueue.Overflow.BACKPRESSURE);
+        fill(backpressure);
+
+        verify(weatherCache).put(eq("rome"), any(CachedWeather.class));
+        assertEquals(2, backpressure.getDepth());
+        assertEquals(1.0, count("direct"));
+    }
+
+    private WriteBehindQueue queue(int capacity, int batchSize, Duration flushInterval,
+                                   WriteBehindQueue.Overflow overflow) {
+        WriteBehindQueue queue = new WriteBehindQueue();
+        queue.weatherCache = weatherCache;
+        queue.localCache = localCache;
+        queue.meterRegistry = meterRegistry;
+        queue.capacity = capacity;
+        queue.batchSize = batchSize;
+        queue.flushInterval = flushInterval;
+        queue.overflow = overflow;
+        queue.shutdownTimeout = Duration.ofSeconds(1);
+        queue.init();
+        return queue;
+    }
+
+    private static void fill(WriteBehindQueue queue) {
+        queue.enqueue("london", entry("London")).accepted().block();
+        queue.enqueue("paris", entry("Paris")).accepted().block();
+        queue.enqueue("rome", entry("Rome")).accepted().block();
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("weather_cache_write_behind_entries").tag("result", result).counter().count();
+    }
+
+    private static CachedWeather entry(String city) {
+        WeatherData weatherData = new WeatherData(Location.builder().name(city).build(), null);
+        return CachedWeather.of(weatherData, Duration.ofMinutes(15), Duration.ofMinutes(60));
+    }
+}
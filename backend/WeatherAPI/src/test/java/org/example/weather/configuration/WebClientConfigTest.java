@@ -0,0 +1,125 @@
+package org.example.weather.configuration;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.models.WeatherData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives sustained concurrent traffic through the upstream client against a local stub and checks that the pooled
+ * connections are reused rather than opened per request.
+ */
+public class WebClientConfigTest {
+
+    private static final int MAX_CONNECTIONS = 8;
+
+    private final AtomicInteger acceptedConnections = new AtomicInteger();
+
+    private final Set<String> acceptEncodings = ConcurrentHashMap.newKeySet();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private DisposableServer upstream;
+
+    private ConnectionProvider connectionProvider;
+
+    private WebClient webClient;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        Metrics.addRegistry(meterRegistry);
+        String body = new ClassPathResource("fixtures/current-london.json").getContentAsString(StandardCharsets.UTF_8);
+        upstream = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .compress(true)
+                .doOnChannelInit((observer, channel, remoteAddress) -> acceptedConnections.incrementAndGet())
+                .handle((request, response) -> {
+                    acceptEncodings.add(String.valueOf(request.requestHeaders().get(HttpHeaders.ACCEPT_ENCODING)));
+                    return response.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .sendString(Mono.just(body).delayElement(Duration.ofMillis(2)));
+                })
+                .bindNow();
+
+        WebClientConfig config = new WebClientConfig();
+        ReflectionTestUtils.setField(config, "baseUrl", "http://127.0.0.1:" + upstream.port() + "/v1");
+        ReflectionTestUtils.setField(config, "connectTimeout", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(config, "responseTimeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(config, "maxConnections", MAX_CONNECTIONS);
+        ReflectionTestUtils.setField(config, "pendingAcquireMaxCount", 1024);
+        ReflectionTestUtils.setField(config, "pendingAcquireTimeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(config, "maxIdleTime", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(config, "maxLifeTime", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(config, "evictInBackground", Duration.ofSeconds(15));
+        connectionProvider = config.weatherConnectionProvider();
+        webClient = config.webClient(WebClient.builder(), connectionProvider,
+                Jackson2ObjectMapperBuilder.json().build(), meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionProvider.dispose();
+        upstream.disposeNow();
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void testConnectionsAreReusedUnderSustainedTraffic() {
+        Long responses = Flux.range(0, 500)
+                .flatMap(i -> webClient.get()
+                        .uri(uriBuilder -> uriBuilder.path("/current.json").queryParam("q", "city" + (i % 50)).build())
+                        .retrieve()
+                        .bodyToMono(String.class), 32)
+                .filter(response -> response.contains("\"London\""))
+                .count()
+                .block(Duration.ofSeconds(30));
+
+        assertEquals(500L, responses);
+        assertTrue(acceptedConnections.get() <= MAX_CONNECTIONS,
+                acceptedConnections.get() + " connections opened for 500 requests");
+        assertEquals(Set.of("gzip"), acceptEncodings);
+    }
+
+    @Test
+    void testPoolMetricsArePublished() {
+        webClient.get().uri("/current.json").retrieve().toBodilessEntity().block(Duration.ofSeconds(5));
+
+        assertNotNull(meterRegistry.find("reactor.netty.connection.provider.total.connections")
+                .tag("name", "weather-upstream")
+                .gauge());
+        assertNotNull(meterRegistry.find("reactor.netty.http.client.data.received").meter());
+    }
+
+    @Test
+    void testDecodeTimeIsRecorded() {
+        WeatherData data = webClient.get().uri("/current.json").retrieve().bodyToMono(WeatherData.class)
+                .block(Duration.ofSeconds(5));
+
+        assertEquals("London", data.getLocation().getName());
+        assertEquals(1L, meterRegistry.get("weather_upstream_decode_latency").timer().count());
+    }
+}
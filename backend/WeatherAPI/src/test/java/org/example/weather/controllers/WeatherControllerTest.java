@@ -2,96 +2,220 @@ package org.example.weather.controllers;
 
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.models.CurrentWeather;
+import org.example.weather.models.Location;
+import org.example.weather.models.WeatherBatchItem;
 import org.example.weather.models.WeatherData;
 import org.example.weather.services.WeatherService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
-import org.mockito.Mock;
-import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.test.web.servlet.MockMvc;
-import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
-import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebFluxTest(WeatherController.class)
+@Import(SimpleMeterRegistry.class)
 public class WeatherControllerTest {
 
+    private static final long LAST_UPDATED_EPOCH = 1722348900L;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
     @Autowired
-    private MockMvc mockMvc;
+    private ObjectMapper objectMapper;
 
-    @Mock
+    @MockBean
     private WeatherService weatherService;
 
-    @InjectMocks
-    private WeatherController weatherController;
+    @MockBean
+    private ReactiveStringRedisTemplate stringRedisTemplate;
+
+    private WeatherData weatherData;
+
+    private String eTag;
 
     @BeforeEach
-    public void setUp() {
-        MockitoAnnotations.openMocks(this);
+    public void setUp() throws Exception {
+        weatherData = new WeatherData(Location.builder().name("London").build(),
+                CurrentWeather.builder().lastUpdatedEpoch(LAST_UPDATED_EPOCH).tempC(17.0).build());
+        eTag = "\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(weatherData)) + "\"";
     }
 
     @Test
     void testGetWeatherSuccess() throws Exception {
-        WeatherData weatherData = new WeatherData();
-        when(weatherService.getWeather(anyString())).thenReturn(Mono.just(weatherData));
-
-        mockMvc.perform(MockMvcRequestBuilders.get("/weatherAPI/v1/getWeather/London").accept(MediaType.APPLICATION_JSON))
-                .andExpect(status().isOk())
-                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(MockMvcResultMatchers.header().string("X-Weather-API-Version", "1.0"))
-                .andExpect(MockMvcResultMatchers.header().string("X-Weather-API-Status", "Success"))
-                .andExpect(MockMvcResultMatchers.header().string("Content-Language", "en-US"))
-                .andExpect(MockMvcResultMatchers.header().string("X-RateLimit-Limit", "1000"))
-                .andExpect(MockMvcResultMatchers.header().string("Accept-Language", "en-US"))
-                .andExpect(MockMvcResultMatchers.header().string("Cache-Control", "max-age=1200, must-revalidate"))
-                .andExpect(MockMvcResultMatchers.header().string("Access-Control-Allow-Origin", "*"))
-                .andExpect(MockMvcResultMatchers.header().string("ETag", String.valueOf(System.identityHashCode(weatherData))));
+        when(weatherService.getCachedWeather(anyString())).thenReturn(Mono.just(
+                CachedWeather.of(weatherData, Duration.ofMinutes(15), Duration.ofMinutes(60))));
+        byte[] body = objectMapper.writeValueAsBytes(weatherData);
+
+        webTestClient.get().uri("/weatherAPI/v1/getWeather/London").accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectHeader().contentLength(body.length)
+                .expectHeader().valueEquals("X-Weather-API-Version", "1.0")
+                .expectHeader().valueEquals("X-Weather-API-Status", "Success")
+                .expectHeader().valueEquals("Content-Language", "en-US")
+                .expectHeader().valueEquals("X-RateLimit-Limit", "1000")
+                .expectHeader().exists("X-RateLimit-Remaining")
+                .expectHeader().valueEquals("Accept-Language", "en-US")
+                .expectHeader().valueMatches("Cache-Control", "max-age=(899|900), must-revalidate")
+                .expectHeader().valueEquals("Access-Control-Allow-Origin", "*")
+                .expectHeader().valueEquals("ETag", eTag)
+                .expectHeader().lastModified(LAST_UPDATED_EPOCH * 1000)
+                .expectHeader().valueEquals("X-Cache-Status", "fresh")
+                .expectBody().json(new String(body));
     }
 
     @Test
-    void testGetWeatherClientError() throws Exception {
-        when(weatherService.getWeather(anyString())).thenReturn(Mono.error(
-                new WebClientResponseException(HttpStatus.BAD_REQUEST.value(), "Bad Request", null, null, null)));
-
-        mockMvc.perform(MockMvcRequestBuilders.get("/weatherAPI/v1/getWeather/InvalidCity")
-                .accept(MediaType.APPLICATION_JSON))
-                .andExpect(status().isBadRequest())
-                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(MockMvcResultMatchers.header().string("X-Weather-API-Version", "1.0"))
-                .andExpect(MockMvcResultMatchers.header().string("X-Weather-API-Status", "Error"))
-                .andExpect(MockMvcResultMatchers.header().string("Content-Language", "en-US"))
-                .andExpect(MockMvcResultMatchers.header().string("X-RateLimit-Limit", "1000"))
-                .andExpect(MockMvcResultMatchers.header().string("Accept-Language", "en-US"))
-                .andExpect(MockMvcResultMatchers.header().string("Cache-Control", "max-age=1200, must-revalidate"))
-                .andExpect(MockMvcResultMatchers.header().string("Access-Control-Allow-Origin", "*"));
+    void testMatchingIfNoneMatchReturnsNotModified() {
+        when(weatherService.getCachedWeather(anyString())).thenReturn(Mono.just(
+                CachedWeather.of(weatherData, Duration.ofMinutes(15), Duration.ofMinutes(60))));
+
+        webTestClient.get().uri("/weatherAPI/v1/getWeather/London")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals("ETag", eTag)
+                .expectHeader().valueMatches("Cache-Control", "max-age=(899|900), must-revalidate")
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void testUnchangedIfModifiedSinceReturnsNotModified() {
+        when(weatherService.getCachedWeather(anyString())).thenReturn(Mono.just(
+                CachedWeather.of(weatherData, Duration.ofMinutes(15), Duration.ofMinutes(60))));
+        String lastUpdated = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.ofInstant(Instant.ofEpochSecond(LAST_UPDATED_EPOCH), ZoneOffset.UTC));
+
+        webTestClient.get().uri("/weatherAPI/v1/getWeather/London")
+                .header(HttpHeaders.IF_MODIFIED_SINCE, lastUpdated)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
 
+    @Test
+    void testChangedContentIsReturnedInFull() {
+        when(weatherService.getCachedWeather(anyString())).thenReturn(Mono.just(
+                CachedWeather.of(weatherData, Duration.ofMinutes(15), Duration.ofMinutes(60))));
+
+        webTestClient.get().uri("/weatherAPI/v1/getWeather/London")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"outdated\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", eTag);
+    }
+
+    @Test
+    void testStaleEntryIsNotCacheable() {
+        when(weatherService.getCachedWeather(anyString())).thenReturn(Mono.just(new CachedWeather(
+                weatherData, System.currentTimeMillis() - 1, System.currentTimeMillis() + 60_000)));
+
+        webTestClient.get().uri("/weatherAPI/v1/getWeather/London")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("Cache-Control", "max-age=0, must-revalidate")
+                .expectHeader().valueEquals("X-Cache-Status", "stale");
+    }
+
+    @Test
+    void testGetWeatherClientError() {
+        when(weatherService.getCachedWeather(anyString())).thenReturn(Mono.error(
+                new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Request failed with status: 400")));
+
+        webTestClient.get().uri("/weatherAPI/v1/getWeather/InvalidCity").accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectHeader().valueEquals("X-Weather-API-Version", "1.0")
+                .expectHeader().valueEquals("X-Weather-API-Status", "Error")
+                .expectHeader().valueEquals("Cache-Control", "no-store")
+                .expectHeader().valueEquals("Access-Control-Allow-Origin", "*");
+    }
+
+    @Test
+    void testGetWeatherServerError() {
+        when(weatherService.getCachedWeather(anyString())).thenReturn(Mono.error(
+                new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR, "Server error occurred")));
+
+        webTestClient.get().uri("/weatherAPI/v1/getWeather/London").accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR)
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectHeader().valueEquals("X-Weather-API-Version", "1.0")
+                .expectHeader().valueEquals("X-Weather-API-Status", "Error")
+                .expectHeader().valueEquals("Cache-Control", "no-store")
+                .expectHeader().valueEquals("Access-Control-Allow-Origin", "*");
+    }
+
+    @Test
+    void testStreamWritesCachedCitiesBeforeUpstreamResultsAsNdjson() {
+        WeatherData paris = new WeatherData(Location.builder().name("Paris").build(), null);
+        Sinks.One<WeatherBatchItem> upstream = Sinks.one();
+        when(weatherService.getWeatherBatch(List.of("London", "Paris"))).thenReturn(
+                Flux.just(WeatherBatchItem.success("London", weatherData)).concatWith(upstream.asMono()));
+
+        Flux<WeatherData> body = webTestClient.get().uri("/weatherAPI/v1/getWeather/stream?cities=London,Paris")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(WeatherData.class)
+                .getResponseBody();
+        Iterator<WeatherData> cities = body.toIterable().iterator();
+
+        assertEquals("London", cities.next().getLocation().getName());
+        upstream.tryEmitValue(WeatherBatchItem.success("Paris", paris));
+        assertEquals("Paris", cities.next().getLocation().getName());
+        assertFalse(cities.hasNext());
     }
 
     @Test
-    void testGetWeatherServerError() throws Exception {
-        when(weatherService.getWeather(anyString())).thenReturn(Mono.error(
-                new WebClientResponseException(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Internal Server Error", null, null, null)));
-
-        mockMvc.perform(MockMvcRequestBuilders.get("/weatherAPI/v1/getWeather/London")
-                .accept(MediaType.APPLICATION_JSON))
-                .andExpect(status().isInternalServerError())
-                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(MockMvcResultMatchers.header().string("X-Weather-API-Version", "1.0"))
-                .andExpect(MockMvcResultMatchers.header().string("X-Weather-API-Status", "Error"))
-                .andExpect(MockMvcResultMatchers.header().string("Content-Language", "en-US"))
-                .andExpect(MockMvcResultMatchers.header().string("X-RateLimit-Limit", "1000"))
-                .andExpect(MockMvcResultMatchers.header().string("Accept-Language", "en-US"))
-                .andExpect(MockMvcResultMatchers.header().string("Cache-Control", "max-age=1200, must-revalidate"))
-                .andExpect(MockMvcResultMatchers.header().string("Access-Control-Allow-Origin", "*"));
+    void testStreamLeavesOutFailedCitiesAsServerSentEvents() {
+        when(weatherService.getWeatherBatch(List.of("London", "Nowhere"))).thenReturn(Flux.just(
+                WeatherBatchItem.success("London", weatherData),
+                WeatherBatchItem.failure("Nowhere", "Request failed with status: 400")));
+
+        List<WeatherData> body = webTestClient.get().uri("/weatherAPI/v1/getWeather/stream?cities=London,Nowhere")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .returnResult(WeatherData.class)
+                .getResponseBody()
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(1, body.size());
+        assertEquals("London", body.get(0).getLocation().getName());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package org.example.weather.filters;
+
+import org.apache.logging.log4j.ThreadContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Checks the correlation IDs and sampling decisions the filter attaches to requests.
+ */
+public class CorrelationIdFilterTest {
+
+    private CorrelationIdFilter filter;
+
+    private final AtomicReference<ContextView> context = new AtomicReference<>();
+
+    private final AtomicReference<String> threadContextId = new AtomicReference<>();
+
+    private final WebFilterChain chain = exchange -> Mono.deferContextual(context -> {
+        this.context.set(context);
+        return Mono.empty();
+    }).publishOn(Schedulers.boundedElastic())
+            .doOnTerminate(() -> threadContextId.set(ThreadContext.get(CorrelationIdFilter.REQUEST_ID_KEY)))
+            .then();
+
+    @BeforeEach
+    public void setUp() {
+        filter = new CorrelationIdFilter();
+        filter.header = "X-Request-Id";
+        filter.sampleRate = 1.0;
+        filter.init();
+    }
+
+    @Test
+    void testValidIdIsKeptAndEchoed() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/weatherAPI/v1/getWeather/London").header("X-Request-Id", "abc-123"));
+
+        filter.filter(exchange, chain).block();
+
+        assertEquals("abc-123", exchange.getResponse().getHeaders().getFirst("X-Request-Id"));
+        assertEquals("abc-123", context.get().get(CorrelationIdFilter.REQUEST_ID_KEY));
+        assertEquals("true", context.get().get(CorrelationIdFilter.SAMPLED_KEY));
+    }
+
+    @Test
+    void testInvalidIdIsReplaced() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/weatherAPI/v1/getWeather/London").header("X-Request-Id", "bad id\r\n"));
+
+        filter.filter(exchange, chain).block();
+
+        String requestId = exchange.getResponse().getHeaders().getFirst("X-Request-Id");
+        assertNotNull(requestId);
+        assertNotEquals("bad id\r\n", requestId);
+        assertEquals(requestId, context.get().get(CorrelationIdFilter.REQUEST_ID_KEY));
+    }
+
+    @Test
+    void testUnsampledRequestIsMarked() {
+        filter.sampleRate = 0;
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/weatherAPI/v1/getWeather/London"));
+
+        filter.filter(exchange, chain).block();
+
+        assertEquals("false", context.get().get(CorrelationIdFilter.SAMPLED_KEY));
+    }
+
+    @Test
+    void testIdReachesThreadContextOnOtherThreads() {
+        Hooks.enableAutomaticContextPropagation();
+        try {
+            MockServerWebExchange exchange = MockServerWebExchange.from(
+                    MockServerHttpRequest.get("/weatherAPI/v1/getWeather/London").header("X-Request-Id", "abc-123"));
+
+            filter.filter(exchange, chain).block();
+
+            assertEquals("abc-123", threadContextId.get());
+        } finally {
+            Hooks.disableAutomaticContextPropagation();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.example.weather.filters;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the token bucket arithmetic and the headers and status the filter sends in both modes.
+ */
+public class RateLimitFilterTest {
+
+    @Mock
+    private ReactiveStringRedisTemplate stringRedisTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private RateLimitFilter filter;
+
+    private final AtomicInteger chainCalls = new AtomicInteger();
+
+    private final WebFilterChain chain = exchange -> {
+        chainCalls.incrementAndGet();
+        return Mono.empty();
+    };
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new RateLimitFilter();
+        filter.stringRedisTemplate = stringRedisTemplate;
+        filter.meterRegistry = meterRegistry;
+        filter.enabled = true;
+        filter.mode = RateLimitMode.LOCAL;
+        filter.capacity = 3;
+        filter.period = Duration.ofMinutes(1);
+        filter.maxKeys = 1000;
+        filter.apiKeyHeader = "X-API-Key";
+        filter.apiKeys = Set.of("key-1", "key-2");
+        filter.pathPrefix = "/weatherAPI/";
+        filter.init();
+    }
+
+    @Test
+    void testBucketRefillsOneTokenPerInterval() {
+        LocalRateLimiter limiter = new LocalRateLimiter(3, Duration.ofSeconds(3), 10);
+        long now = 1_000_000_000L;
+
+        assertEquals(2, limiter.tryAcquire("client", now).remaining());
+        assertEquals(1, limiter.tryAcquire("client", now).remaining());
+        assertEquals(0, limiter.tryAcquire("client", now).remaining());
+        RateLimitDecision rejected = limiter.tryAcquire("client", now);
+        assertFalse(rejected.allowed());
+        assertEquals(TimeUnit.SECONDS.toNanos(1), rejected.retryAfterNanos());
+        assertEquals(1, rejected.retryAfterSeconds());
+
+        RateLimitDecision refilled = limiter.tryAcquire("client", now + TimeUnit.SECONDS.toNanos(1));
+        assertTrue(refilled.allowed());
+        assertEquals(0, refilled.remaining());
+        assertTrue(limiter.tryAcquire("other", now).allowed());
+    }
+
+    @Test
+    void testExhaustedClientGetsTooManyRequests() {
+        for (int i = 0; i < 3; i++) {
+            MockServerWebExchange exchange = exchange("key-1");
+            filter.filter(exchange, chain).block();
+            assertEquals(Long.toString(2 - i), exchange.getResponse().getHeaders().getFirst("X-RateLimit-Remaining"));
+        }
+
+        MockServerWebExchange rejected = exchange("key-1");
+        filter.filter(rejected, chain).block();
+
+        HttpHeaders headers = rejected.getResponse().getHeaders();
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, rejected.getResponse().getStatusCode());
+        assertEquals("3", headers.getFirst("X-RateLimit-Limit"));
+        assertEquals("0", headers.getFirst("X-RateLimit-Remaining"));
+        assertEquals("20", headers.getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(3, chainCalls.get());
+        assertEquals(1.0, meterRegistry.get("weather_ratelimit_requests").tag("result", "rejected").counter().count());
+
+        MockServerWebExchange otherKey = exchange("key-2");
+        filter.filter(otherKey, chain).block();
+        assertNull(otherKey.getResponse().getStatusCode());
+        assertEquals(4, chainCalls.get());
+    }
+
+    @Test
+    void testClientsWithoutKeyAreLimitedByAddressAndOtherPathsAreNot() {
+        for (int i = 0; i < 4; i++) {
+            filter.filter(exchange(null), chain).block();
+        }
+        MockServerWebExchange actuator = MockServerWebExchange.from(MockServerHttpRequest.get("/actuator/health")
+                .remoteAddress(new InetSocketAddress("10.0.0.1", 40000)));
+        filter.filter(actuator, chain).block();
+
+        assertEquals(4, chainCalls.get());
+        assertNull(actuator.getResponse().getHeaders().getFirst("X-RateLimit-Limit"));
+        assertEquals(1.0, meterRegistry.get("weather_ratelimit_requests").tag("result", "rejected").counter().count());
+    }
+
+    @Test
+    void testUnknownKeysAreLimitedByAddress() {
+        for (int i = 0; i < 4; i++) {
+            filter.filter(exchange("made-up-" + i), chain).block();
+        }
+        MockServerWebExchange issued = exchange("key-1");
+        filter.filter(issued, chain).block();
+
+        assertEquals(4, chainCalls.get());
+        assertEquals("2", issued.getResponse().getHeaders().getFirst("X-RateLimit-Remaining"));
+    }
+
+    @Test
+    void testClientsBehindTheLoadBalancerAreLimitedByForwardedAddress() {
+        for (int i = 0; i < 4; i++) {
+            filter.filter(forwarded("10.0.0.1", "203.0.113.7"), chain).block();
+        }
+        ServerWebExchange otherClient = forwarded("10.0.0.1", "203.0.113.8");
+        filter.filter(otherClient, chain).block();
+
+        assertEquals(4, chainCalls.get());
+        assertNull(otherClient.getResponse().getStatusCode());
+        assertEquals("2", otherClient.getResponse().getHeaders().getFirst("X-RateLimit-Remaining"));
+    }
+
+    @Test
+    void testSpoofedForwardedForHitsTheSameBucket() {
+        for (int i = 0; i < 4; i++) {
+            filter.filter(forwarded("198.51.100.9", "203.0.113." + i), chain).block();
+        }
+        ServerWebExchange spoofed = forwarded("198.51.100.9", "203.0.113.99");
+        filter.filter(spoofed, chain).block();
+
+        assertEquals(3, chainCalls.get());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, spoofed.getResponse().getStatusCode());
+        assertNull(spoofed.getRequest().getHeaders().getFirst("X-Forwarded-For"));
+        assertEquals("198.51.100.9", spoofed.getRequest().getRemoteAddress().getAddress().getHostAddress());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRedisModeUsesScriptAndFallsBackToLocalBuckets() {
+        filter.mode = RateLimitMode.REDIS;
+        filter.init();
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(Flux.just(List.of(0L, 0L, 2_500_000L)));
+
+        MockServerWebExchange limited = exchange("key-1");
+        filter.filter(limited, chain).block();
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, limited.getResponse().getStatusCode());
+        assertEquals("3", limited.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(List.of("weather:ratelimit:key:key-1")),
+                eq(List.of("20000000", "60000000")));
+
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(Flux.error(new IllegalStateException("Redis is down")));
+        MockServerWebExchange fallback = exchange("key-1");
+        filter.filter(fallback, chain).block();
+
+        assertEquals("2", fallback.getResponse().getHeaders().getFirst("X-RateLimit-Remaining"));
+        assertEquals(1, chainCalls.get());
+        assertEquals(1.0, meterRegistry.get("weather_ratelimit_redis_errors").counter().count());
+    }
+
+    /**
+     * An exchange received from the given address with an {@code X-Forwarded-For} of the given client, with the
+     * forwarded headers applied as the server does when only the load balancer at 10.0.0.1 is trusted.
+     */
+    private static ServerWebExchange forwarded(String remoteAddress, String client) {
+        TrustedProxyForwardedHeaderTransformer transformer = new TrustedProxyForwardedHeaderTransformer();
+        transformer.trustedProxies = Set.of("10.0.0.1");
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/weatherAPI/v1/getWeather/London")
+                        .remoteAddress(new InetSocketAddress(remoteAddress, 40000))
+                        .header("X-Forwarded-For", client));
+        return exchange.mutate().request(transformer.apply(exchange.getRequest())).build();
+    }
+
+    private MockServerWebExchange exchange(String apiKey) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/weatherAPI/v1/getWeather/London")
+                .remoteAddress(new InetSocketAddress("10.0.0.1", 40000));
+        if (apiKey != null) {
+            request.header("X-API-Key", apiKey);
+        }
+        return MockServerWebExchange.from(request);
+    }
+}
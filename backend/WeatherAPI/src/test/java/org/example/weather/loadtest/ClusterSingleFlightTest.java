@@ -0,0 +1,151 @@
+package org.example.weather.loadtest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.weather.services.ClusterRequestCoalescer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs three instances of the application against one Redis stub and one weather API stub, and checks that a city
+ * requested from all of them at once is fetched once per expiry, also when single and batch requests are mixed, and
+ * that a lease left behind by a dead instance is taken over once it expires.
+ */
+public class ClusterSingleFlightTest {
+
+    private static final Map<String, String> PROPERTIES = Map.of(
+            "weather.cache.adaptive.enabled", "false",
+            "weather.cache.soft-ttl", "3s",
+            "weather.cache.hard-ttl", "3s",
+            "weather.prefetch.enabled", "false",
+            "weather.cache.snapshot.enabled", "false",
+            "weather.cluster.single-flight.lease-ttl", "2s",
+            "weather.cluster.single-flight.result-ttl", "500ms",
+            "weather.cluster.single-flight.poll-interval", "20ms");
+
+    private static RedisStub redis;
+
+    private static UpstreamStub upstream;
+
+    private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    private static final List<WebClient> clients = new ArrayList<>();
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        redis = RedisStub.start();
+        upstream = UpstreamStub.start(new UpstreamStub.Profile(Duration.ofMillis(300), Duration.ZERO, 0));
+        for (int i = 0; i < 3; i++) {
+            ConfigurableApplicationContext node = LoadTestHarness.startApplication(redis, upstream, PROPERTIES);
+            nodes.add(node);
+            int port = node.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            clients.add(WebClient.create("http://127.0.0.1:" + port + "/weatherAPI/v1/getWeather/"));
+        }
+    }
+
+    @AfterAll
+    static void stopCluster() throws Exception {
+        nodes.forEach(ConfigurableApplicationContext::close);
+        upstream.close();
+        redis.close();
+    }
+
+    @Test
+    void testOneUpstreamCallPerKeyPerExpiry() throws InterruptedException {
+        long callsBefore = upstream.getCallCount();
+        double fetchesBefore = leases("acquired") + leases("takeover");
+        double sharedBefore = leases("shared");
+
+        requestFromAllNodes("London", 10);
+        assertEquals(1, upstream.getCallCount() - callsBefore);
+        requestFromAllNodes("London", 10);
+        assertEquals(1, upstream.getCallCount() - callsBefore);
+
+        Thread.sleep(3500);
+        requestFromAllNodes("London", 10);
+
+        assertEquals(2, upstream.getCallCount() - callsBefore);
+        assertEquals(2.0, leases("acquired") + leases("takeover") - fetchesBefore);
+        assertTrue(leases("shared") - sharedBefore >= 2, "shared: " + (leases("shared") - sharedBefore));
+    }
+
+    @Test
+    void testLeaseOfDeadInstanceIsTakenOver() {
+        nodes.get(0).getBean(ReactiveStringRedisTemplate.class).opsForValue()
+                .set(ClusterRequestCoalescer.KEY_PREFIX + "paris", "dead-instance", Duration.ofSeconds(1))
+                .block();
+        long callsBefore = upstream.getCallCount();
+        double takeoversBefore = leases("takeover");
+
+        long start = System.nanoTime();
+        HttpStatusCode status = request(clients.get(1), "Paris").block();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertTrue(status.is2xxSuccessful());
+        assertTrue(elapsed.compareTo(Duration.ofMillis(900)) > 0, elapsed.toString());
+        assertEquals(1, upstream.getCallCount() - callsBefore);
+        assertEquals(1.0, leases("takeover") - takeoversBefore);
+    }
+
+    @Test
+    void testBatchMissesShareTheLeaseWithSingleRequests() {
+        long callsBefore = upstream.getCallCount();
+
+        List<HttpStatusCode> statuses = Flux.fromIterable(clients)
+                .flatMap(client -> Flux.range(0, 10).map(i -> client))
+                .index()
+                .flatMap(request -> request.getT1() % 2 == 0
+                        ? request(request.getT2(), "Rome")
+                        : requestBatch(request.getT2(), "Rome"), 64)
+                .collectList()
+                .block();
+
+        statuses.forEach(status -> assertTrue(status.is2xxSuccessful(), status.toString()));
+        assertEquals(1, upstream.getCallCount() - callsBefore);
+    }
+
+    private static void requestFromAllNodes(String city, int perNode) {
+        List<HttpStatusCode> statuses = Flux.fromIterable(clients)
+                .flatMap(client -> Flux.range(0, perNode).map(i -> client))
+                .flatMap(client -> request(client, city), 64)
+                .collectList()
+                .block();
+        assertEquals(clients.size() * perNode, statuses.size());
+        statuses.forEach(status -> assertTrue(status.is2xxSuccessful(), status.toString()));
+    }
+
+    private static Mono<HttpStatusCode> request(WebClient client, String city) {
+        return client.get()
+                .uri("{city}", city)
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()));
+    }
+
+    private static Mono<HttpStatusCode> requestBatch(WebClient client, String city) {
+        return client.post()
+                .uri("batch")
+                .bodyValue(List.of(city))
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()));
+    }
+
+    private static double leases(String result) {
+        return nodes.stream()
+                .map(node -> node.getBean(MeterRegistry.class))
+                .mapToDouble(meterRegistry -> meterRegistry.get("weather_upstream_leases").tag("result", result)
+                        .counter().count())
+                .sum();
+    }
+}
@@ -0,0 +1,324 @@
+package org.example.weather.loadtest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.weather.ApplicationRun;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Self-contained load test of {@code GET /weatherAPI/v1/getWeather/{city}}.
+ *
+ * <p>The application is started on a random port against an {@link UpstreamStub} of the weather API and a
+ * {@link RedisStub}, so no real API calls are made and no Redis server is needed. The endpoint is then driven by a
+ * fixed number of concurrent clients, asking for cities whose popularity follows a Zipf distribution, and the
+ * throughput, latency percentiles, cache hit ratio and number of upstream calls are reported. Optional thresholds
+ * turn the run into a regression gate: {@link #main} exits with status 1 when one of them is not met.
+ *
+ * <p>Run with {@code mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--requests=100000 --max-p99=50ms"}.
+ * Options:
+ * <ul>
+ *     <li>{@code --requests}, {@code --warmup}: measured requests and unmeasured requests sent before them;</li>
+ *     <li>{@code --concurrency}: requests in flight at any time;</li>
+ *     <li>{@code --cities}, {@code --zipf}: number of distinct cities and exponent of their popularity;</li>
+ *     <li>{@code --upstream-latency}, {@code --upstream-jitter}, {@code --upstream-error-rate}: the
+ *     {@link UpstreamStub.Profile};</li>
+ *     <li>{@code --max-p99}, {@code --min-throughput}, {@code --min-hit-ratio}: the regression thresholds.</li>
+ * </ul>
+ * Any other {@code --name=value} argument is passed to the application as a property, for example
+ * {@code --weather.cache.policy=READ_THROUGH}.
+ */
+public class LoadTestHarness {
+
+    /**
+     * Parameters of a load test run.
+     *
+     * @param requests      Measured requests.
+     * @param warmup        Requests sent before the measured ones, not included in the report.
+     * @param concurrency   Requests in flight at any time.
+     * @param cities        Number of distinct cities asked for.
+     * @param zipfExponent  Exponent of the Zipf distribution of city popularity; 0 makes all cities equally popular.
+     * @param upstream      Latency and error behaviour of the weather API stub.
+     * @param properties    Additional application properties.
+     * @param maxP99        Highest acceptable 99th percentile latency, or {@code null}.
+     * @param minThroughput Lowest acceptable throughput in requests per second, or {@code null}.
+     * @param minHitRatio   Lowest acceptable cache hit ratio, or {@code null}.
+     */
+    public record Options(int requests, int warmup, int concurrency, int cities, double zipfExponent,
+                          UpstreamStub.Profile upstream, Map<String, String> properties,
+                          Duration maxP99, Double minThroughput, Double minHitRatio) {
+
+        /**
+         * Parses command line arguments of the form {@code --name=value}.
+         *
+         * @param args The arguments.
+         * @return The options, with defaults for the arguments not given.
+         */
+        public static Options parse(String... args) {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (!arg.startsWith("--") || separator < 0) {
+                    throw new IllegalArgumentException("Expected --name=value: " + arg);
+                }
+                values.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+            String maxP99 = values.remove("max-p99");
+            String minThroughput = values.remove("min-throughput");
+            String minHitRatio = values.remove("min-hit-ratio");
+            return new Options(
+                    Integer.parseInt(remove(values, "requests", "20000")),
+                    Integer.parseInt(remove(values, "warmup", "2000")),
+                    Integer.parseInt(remove(values, "concurrency", "64")),
+                    Integer.parseInt(remove(values, "cities", "1000")),
+                    Double.parseDouble(remove(values, "zipf", "1.0")),
+                    new UpstreamStub.Profile(
+                            DurationStyle.detectAndParse(remove(values, "upstream-latency", "50ms")),
+                            DurationStyle.detectAndParse(remove(values, "upstream-jitter", "20ms")),
+                            Double.parseDouble(remove(values, "upstream-error-rate", "0"))),
+                    values,
+                    maxP99 == null ? null : DurationStyle.detectAndParse(maxP99),
+                    minThroughput == null ? null : Double.parseDouble(minThroughput),
+                    minHitRatio == null ? null : Double.parseDouble(minHitRatio));
+        }
+
+        private static String remove(Map<String, String> values, String name, String defaultValue) {
+            String value = values.remove(name);
+            return value == null ? defaultValue : value;
+        }
+    }
+
+    /**
+     * Results of the measured part of a run.
+     *
+     * @param requests       Requests sent.
+     * @param failures       Requests answered with an error status or not answered at all.
+     * @param elapsed        Wall-clock time of the measured requests.
+     * @param p50            Median latency.
+     * @param p99            99th percentile latency.
+     * @param p999           99.9th percentile latency.
+     * @param hitRatio       Share of requests answered from the cache, fresh or stale.
+     * @param upstreamCalls  Calls received by the weather API stub.
+     * @param upstreamErrors Calls the weather API stub answered with an error.
+     */
+    public record Report(long requests, long failures, Duration elapsed, Duration p50, Duration p99, Duration p999,
+                         double hitRatio, long upstreamCalls, long upstreamErrors) {
+
+        /**
+         * @return Requests completed per second.
+         */
+        public double throughput() {
+            return requests / (elapsed.toNanos() / 1e9);
+        }
+
+        /**
+         * Compares the report with the thresholds of a run.
+         *
+         * @param options The options holding the thresholds.
+         * @return A description of each threshold that was not met; empty if the run passed.
+         */
+        public List<String> violations(Options options) {
+            List<String> violations = new ArrayList<>();
+            if (failures > 0) {
+                violations.add(failures + " requests failed");
+            }
+            if (options.maxP99() != null && p99.compareTo(options.maxP99()) > 0) {
+                violations.add("p99 " + millis(p99) + " above " + millis(options.maxP99()));
+            }
+            if (options.minThroughput() != null && throughput() < options.minThroughput()) {
+                violations.add(String.format(Locale.ROOT, "throughput %.0f req/s below %.0f req/s",
+                        throughput(), options.minThroughput()));
+            }
+            if (options.minHitRatio() != null && hitRatio < options.minHitRatio()) {
+                violations.add(String.format(Locale.ROOT, "hit ratio %.3f below %.3f",
+                        hitRatio, options.minHitRatio()));
+            }
+            return violations;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, """
+                            requests:        %d (%d failed)
+                            elapsed:         %s
+                            throughput:      %.0f req/s
+                            latency p50:     %s
+                            latency p99:     %s
+                            latency p99.9:   %s
+                            cache hit ratio: %.3f
+                            upstream calls:  %d (%d failed)""",
+                    requests, failures, millis(elapsed), throughput(), millis(p50), millis(p99), millis(p999),
+                    hitRatio, upstreamCalls, upstreamErrors);
+        }
+
+        private static String millis(Duration duration) {
+            return String.format(Locale.ROOT, "%.3f ms", duration.toNanos() / 1e6);
+        }
+    }
+
+    /**
+     * Samples city indexes from a Zipf distribution by binary search over its cumulative distribution.
+     */
+    static final class ZipfSampler {
+
+        private final double[] cumulative;
+
+        ZipfSampler(int size, double exponent) {
+            cumulative = new double[size];
+            double total = 0;
+            for (int rank = 1; rank <= size; rank++) {
+                total += 1 / Math.pow(rank, exponent);
+                cumulative[rank - 1] = total;
+            }
+            for (int i = 0; i < size; i++) {
+                cumulative[i] /= total;
+            }
+        }
+
+        int next() {
+            int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+            return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+        }
+    }
+
+    /**
+     * Starts the stubs and the application, runs the load and shuts everything down.
+     *
+     * @param options The parameters of the run.
+     * @return The report of the measured requests.
+     * @throws Exception If the stubs or the application cannot be started.
+     */
+    public static Report run(Options options) throws Exception {
+        try (RedisStub redis = RedisStub.start();
+             UpstreamStub upstream = UpstreamStub.start(options.upstream());
+             ConfigurableApplicationContext context = startApplication(redis, upstream, options.properties())) {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            ConnectionProvider connectionProvider = ConnectionProvider.builder("load-test")
+                    .maxConnections(options.concurrency())
+                    .pendingAcquireMaxCount(-1)
+                    .build();
+            try {
+                WebClient client = WebClient.builder()
+                        .baseUrl("http://127.0.0.1:" + port + "/weatherAPI/v1/getWeather/")
+                        .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                        .build();
+                ZipfSampler sampler = new ZipfSampler(options.cities(), options.zipfExponent());
+                drive(client, sampler, options.warmup(), options.concurrency(), new long[options.warmup()]);
+
+                MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+                double hitsBefore = count(meterRegistry, "hit") + count(meterRegistry, "stale");
+                double totalBefore = hitsBefore + count(meterRegistry, "miss") + count(meterRegistry, "fallback")
+                        + count(meterRegistry, "error");
+                long callsBefore = upstream.getCallCount();
+                long errorsBefore = upstream.getErrorCount();
+
+                long[] latencies = new long[options.requests()];
+                long start = System.nanoTime();
+                long failures = drive(client, sampler, options.requests(), options.concurrency(), latencies);
+                Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+                double hits = count(meterRegistry, "hit") + count(meterRegistry, "stale") - hitsBefore;
+                double total = count(meterRegistry, "hit") + count(meterRegistry, "stale")
+                        + count(meterRegistry, "miss") + count(meterRegistry, "fallback")
+                        + count(meterRegistry, "error") - totalBefore;
+                Arrays.sort(latencies);
+                return new Report(options.requests(), failures, elapsed,
+                        percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                        total == 0 ? 0 : hits / total,
+                        upstream.getCallCount() - callsBefore, upstream.getErrorCount() - errorsBefore);
+            } finally {
+                connectionProvider.disposeLater().block();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        Report report = run(options);
+        System.out.println(report);
+        List<String> violations = report.violations(options);
+        if (!violations.isEmpty()) {
+            violations.forEach(violation -> System.out.println("FAILED: " + violation));
+            System.exit(1);
+        }
+    }
+
+    static ConfigurableApplicationContext startApplication(RedisStub redis, UpstreamStub upstream,
+                                                            Map<String, String> properties)
+            throws IOException {
+        Path snapshotDirectory = Files.createTempDirectory("weather-load-test");
+        snapshotDirectory.toFile().deleteOnExit();
+        Path snapshotPath = snapshotDirectory.resolve("weather-cache.snapshot");
+        snapshotPath.toFile().deleteOnExit();
+        Map<String, String> arguments = new LinkedHashMap<>();
+        arguments.put("server.port", "0");
+        arguments.put("spring.main.banner-mode", "off");
+        arguments.put("spring.data.redis.host", "127.0.0.1");
+        arguments.put("spring.data.redis.port", Integer.toString(redis.getPort()));
+        arguments.put("weather.upstream.base-url", upstream.getBaseUrl());
+        arguments.put("weather.ratelimit.enabled", "false");
+        arguments.put("weather.cache.snapshot.path", snapshotPath.toString());
+        arguments.put("logging.level.root", "warn");
+        arguments.putAll(properties);
+        String[] args = arguments.entrySet().stream()
+                .map(argument -> "--" + argument.getKey() + "=" + argument.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(ApplicationRun.class).run(args);
+    }
+
+    private static long drive(WebClient client, ZipfSampler sampler, int requests, int concurrency,
+                              long[] latencies) {
+        AtomicLong failures = new AtomicLong();
+        Flux.range(0, requests)
+                .flatMap(i -> Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return client.get()
+                            .uri("City {id}", sampler.next())
+                            .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))
+                            .onErrorReturn(HttpStatusCode.valueOf(599))
+                            .doOnNext(status -> {
+                                latencies[i] = System.nanoTime() - start;
+                                if (status.isError()) {
+                                    failures.incrementAndGet();
+                                }
+                            });
+                }), concurrency)
+                .blockLast();
+        return failures.get();
+    }
+
+    private static double count(MeterRegistry meterRegistry, String result) {
+        Counter counter = meterRegistry.find("weather_requests").tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static Duration percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return Duration.ZERO;
+        }
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return Duration.ofNanos(sortedLatencies[Math.max(0, index)]);
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.weather.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a short load test end to end, to check that the application works against both stubs and that the report
+ * adds up.
+ */
+public class LoadTestHarnessTest {
+
+    @Test
+    void testShortRunIsServedMostlyFromCache() throws Exception {
+        LoadTestHarness.Options options = new LoadTestHarness.Options(500, 0, 8, 20, 0.0,
+                new UpstreamStub.Profile(Duration.ofMillis(5), Duration.ZERO, 0), Map.of(), null, null, 0.9);
+
+        LoadTestHarness.Report report = LoadTestHarness.run(options);
+
+        assertEquals(500, report.requests());
+        assertEquals(0, report.failures());
+        assertTrue(report.upstreamCalls() >= 20 && report.upstreamCalls() <= 40, report.toString());
+        assertTrue(report.p50().compareTo(report.p99()) <= 0);
+        assertTrue(report.violations(options).isEmpty(), report.toString());
+    }
+
+    @Test
+    void testZipfSamplerFavoursLowRanks() {
+        LoadTestHarness.ZipfSampler sampler = new LoadTestHarness.ZipfSampler(100, 1.0);
+        int[] counts = new int[100];
+        for (int i = 0; i < 100_000; i++) {
+            counts[sampler.next()]++;
+        }
+
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[9] && counts[9] > counts[99]);
+        assertEquals(0.19, counts[0] / 100_000.0, 0.02);
+    }
+}
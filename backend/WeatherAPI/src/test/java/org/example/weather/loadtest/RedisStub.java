@@ -0,0 +1,344 @@
+package org.example.weather.loadtest;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+
+/**
+ * In-process stand-in for a Redis server, speaking enough RESP2 for the application to run against it without a
+ * real Redis: {@code GET}, {@code SET} (with {@code EX}/{@code PX}/{@code NX}/{@code XX}), {@code MGET},
+ * {@code INCRBY}, {@code EXPIRE}/{@code PEXPIRE}, {@code DEL}, {@code SCAN} (with {@code MATCH}) and {@code PING}.
+ * {@code EVALSHA} and {@code EVAL} are understood for the {@code scripts/lease_release.lua} script only, which is
+ * emulated rather than run. Any other command, including the {@code HELLO} handshake, is answered with an unknown
+ * command error, which makes Lettuce fall back to RESP2.
+ *
+ * <p>Keys expire lazily when they are read. Commands are executed one at a time, so {@code INCRBY} is atomic as in
+ * Redis. Each connection is served by its own virtual thread and replies are flushed once the pipelined commands
+ * already received have been answered.
+ */
+public class RedisStub implements AutoCloseable {
+
+    private static final RedisScript<Long> LEASE_RELEASE =
+            RedisScript.of(new ClassPathResource("scripts/lease_release.lua"), Long.class);
+
+    private final ServerSocket serverSocket;
+
+    private final Map<String, Value> strings = new HashMap<>();
+
+    private final AtomicLong commands = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    private static final Logger logger = LogManager.getLogger(RedisStub.class);
+
+    private record Value(byte[] bytes, long expiresAt) {
+
+        boolean isExpired(long now) {
+            return expiresAt > 0 && expiresAt <= now;
+        }
+    }
+
+    private RedisStub(ServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+    }
+
+    /**
+     * Starts a stub listening on a free port of the loopback interface.
+     *
+     * @return The running stub.
+     * @throws IOException If the port cannot be bound.
+     */
+    public static RedisStub start() throws IOException {
+        RedisStub stub = new RedisStub(new ServerSocket(0, 128, InetAddress.getLoopbackAddress()));
+        Thread.ofVirtual().name("redis-stub-accept").start(stub::accept);
+        return stub;
+    }
+
+    /**
+     * @return The port the stub listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return The number of commands executed so far.
+     */
+    public long getCommandCount() {
+        return commands.get();
+    }
+
+    /**
+     * @return The number of string keys stored, including expired keys not read since they expired.
+     */
+    public synchronized int size() {
+        return strings.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread.ofVirtual().name("redis-stub-connection").start(() -> serve(socket));
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Error accepting Redis stub connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            while (running) {
+                List<byte[]> command = readCommand(in);
+                commands.incrementAndGet();
+                execute(command, out);
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (EOFException e) {
+            // client disconnected
+        } catch (IOException e) {
+            if (running) {
+                logger.warn("Redis stub connection closed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void execute(List<byte[]> command, OutputStream out) throws IOException {
+        String name = string(command.get(0)).toUpperCase(Locale.ROOT);
+        long now = System.currentTimeMillis();
+        switch (name) {
+            case "PING" -> simple(out, "PONG");
+            case "GET" -> bulk(out, get(string(command.get(1)), now));
+            case "MGET" -> {
+                array(out, command.size() - 1);
+                for (int i = 1; i < command.size(); i++) {
+                    bulk(out, get(string(command.get(i)), now));
+                }
+            }
+            case "SET" -> set(command, now, out);
+            case "INCRBY" -> {
+                String key = string(command.get(1));
+                Value current = getValue(key, now);
+                long total = (current == null ? 0 : Long.parseLong(string(current.bytes())))
+                        + Long.parseLong(string(command.get(2)));
+                strings.put(key, new Value(Long.toString(total).getBytes(StandardCharsets.US_ASCII),
+                        current == null ? 0 : current.expiresAt()));
+                integer(out, total);
+            }
+            case "EXPIRE", "PEXPIRE" -> {
+                String key = string(command.get(1));
+                Value current = getValue(key, now);
+                long ttl = Long.parseLong(string(command.get(2)));
+                if (current != null) {
+                    strings.put(key, new Value(current.bytes(), now + (name.equals("EXPIRE") ? ttl * 1000 : ttl)));
+                }
+                integer(out, current == null ? 0 : 1);
+            }
+            case "DEL" -> {
+                long removed = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    String key = string(command.get(i));
+                    if (strings.remove(key) != null) {
+                        removed++;
+                    }
+                }
+                integer(out, removed);
+            }
+            case "SCAN" -> scan(command, now, out);
+            case "EVALSHA", "EVAL" -> {
+                boolean known = name.equals("EVAL")
+                        ? string(command.get(1)).equals(LEASE_RELEASE.getScriptAsString())
+                        : string(command.get(1)).equalsIgnoreCase(LEASE_RELEASE.getSha1());
+                if (!known) {
+                    error(out, "NOSCRIPT No matching script");
+                    return;
+                }
+                releaseLease(command, now, out);
+            }
+            default -> error(out, "ERR unknown command '" + name + "'");
+        }
+    }
+
+    private void set(List<byte[]> command, long now, OutputStream out) throws IOException {
+        String key = string(command.get(1));
+        long expiresAt = 0;
+        boolean onlyIfAbsent = false;
+        boolean onlyIfPresent = false;
+        for (int i = 3; i < command.size(); i++) {
+            switch (string(command.get(i)).toUpperCase(Locale.ROOT)) {
+                case "EX" -> expiresAt = now + Long.parseLong(string(command.get(++i))) * 1000;
+                case "PX" -> expiresAt = now + Long.parseLong(string(command.get(++i)));
+                case "NX" -> onlyIfAbsent = true;
+                case "XX" -> onlyIfPresent = true;
+                default -> {
+                    error(out, "ERR syntax error");
+                    return;
+                }
+            }
+        }
+        boolean present = getValue(key, now) != null;
+        if ((onlyIfAbsent && present) || (onlyIfPresent && !present)) {
+            bulk(out, null);
+            return;
+        }
+        strings.put(key, new Value(command.get(2), expiresAt));
+        simple(out, "OK");
+    }
+
+    /**
+     * Returns all keys matching the {@code MATCH} pattern, in which only {@code *} is special, in a single page.
+     */
+    private void scan(List<byte[]> command, long now, OutputStream out) throws IOException {
+        Pattern match = null;
+        for (int i = 2; i + 1 < command.size(); i += 2) {
+            if (string(command.get(i)).equalsIgnoreCase("MATCH")) {
+                match = Pattern.compile(Arrays.stream(string(command.get(i + 1)).split("\\*", -1))
+                        .map(Pattern::quote)
+                        .collect(Collectors.joining(".*")));
+            }
+        }
+        List<String> keys = new ArrayList<>();
+        for (String key : List.copyOf(strings.keySet())) {
+            if (getValue(key, now) != null && (match == null || match.matcher(key).matches())) {
+                keys.add(key);
+            }
+        }
+        array(out, 2);
+        bulk(out, "0".getBytes(StandardCharsets.US_ASCII));
+        array(out, keys.size());
+        for (String key : keys) {
+            bulk(out, key.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Does what {@code scripts/lease_release.lua} does with {@code KEYS[1]} and {@code ARGV[1..3]}.
+     */
+    private void releaseLease(List<byte[]> command, long now, OutputStream out) throws IOException {
+        String key = string(command.get(3));
+        Value held = getValue(key, now);
+        if (held == null || !Arrays.equals(held.bytes(), command.get(4))) {
+            integer(out, 0);
+            return;
+        }
+        if (command.get(5).length == 0) {
+            strings.remove(key);
+        } else {
+            strings.put(key, new Value(command.get(5), now + Long.parseLong(string(command.get(6)))));
+        }
+        integer(out, 1);
+    }
+
+    private byte[] get(String key, long now) {
+        Value value = getValue(key, now);
+        return value == null ? null : value.bytes();
+    }
+
+    private Value getValue(String key, long now) {
+        Value value = strings.get(key);
+        if (value != null && value.isExpired(now)) {
+            strings.remove(key);
+            return null;
+        }
+        return value;
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int marker = in.read();
+        if (marker == -1) {
+            throw new EOFException();
+        }
+        if (marker != '*') {
+            throw new IOException("Inline commands are not supported");
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<byte[]> arguments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Expected a bulk string");
+            }
+            byte[] argument = in.readNBytes(Integer.parseInt(readLine(in)));
+            in.skipNBytes(2);
+            arguments.add(argument);
+        }
+        return arguments;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new EOFException();
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void simple(OutputStream out, String value) throws IOException {
+        out.write(('+' + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void error(OutputStream out, String message) throws IOException {
+        out.write(('-' + message + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void integer(OutputStream out, long value) throws IOException {
+        out.write((":" + value + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void array(OutputStream out, int size) throws IOException {
+        out.write(("*" + size + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void bulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        out.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(value);
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+    }
+}
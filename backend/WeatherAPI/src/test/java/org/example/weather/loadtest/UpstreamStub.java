@@ -0,0 +1,126 @@
+package org.example.weather.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import org.springframework.core.io.ClassPathResource;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * In-process stand-in for the {@code /v1/current.json} endpoint of the weather API. Every location is answered
+ * with the checked-in {@code fixtures/current-london.json} payload, renamed to the queried city so that each city
+ * gets its own cache key. The latency and error rate of the answers follow a {@link Profile}.
+ */
+public class UpstreamStub implements AutoCloseable {
+
+    private static final String FIXTURE_NAME = "\"name\":\"London\"";
+
+    /**
+     * Latency and error behaviour of the stub.
+     *
+     * @param latency   Minimum time before a response is sent.
+     * @param jitter    Upper bound of a uniformly distributed delay added to the latency.
+     * @param errorRate Fraction of calls, between 0 and 1, answered with 503 (Service Unavailable).
+     */
+    public record Profile(Duration latency, Duration jitter, double errorRate) {
+
+        /**
+         * A profile that answers every call at once.
+         */
+        public static final Profile INSTANT = new Profile(Duration.ZERO, Duration.ZERO, 0);
+    }
+
+    private final DisposableServer server;
+
+    private final Profile profile;
+
+    private final String payload;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private UpstreamStub(Profile profile, String payload) {
+        this.profile = profile;
+        this.payload = payload;
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes.get("/v1/current.json", this::current))
+                .bindNow();
+    }
+
+    /**
+     * Starts a stub listening on a free port of the loopback interface.
+     *
+     * @param profile The latency and error behaviour of the stub.
+     * @return The running stub.
+     * @throws IOException If the fixture cannot be read.
+     */
+    public static UpstreamStub start(Profile profile) throws IOException {
+        String payload = new ClassPathResource("fixtures/current-london.json")
+                .getContentAsString(StandardCharsets.UTF_8);
+        return new UpstreamStub(profile, payload);
+    }
+
+    /**
+     * @return The value of {@code weather.upstream.base-url} that points the application at this stub.
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.port() + "/v1";
+    }
+
+    /**
+     * @return The number of calls received so far.
+     */
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * @return The number of calls answered with an error so far.
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Mono<Void> current(HttpServerRequest request, HttpServerResponse response) {
+        calls.incrementAndGet();
+        List<String> query = new QueryStringDecoder(request.uri()).parameters().get("q");
+        String city = query == null || query.isEmpty() ? "" : query.get(0);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = profile.latency().toNanos()
+                + (profile.jitter().isZero() ? 0 : random.nextLong(profile.jitter().toNanos()));
+        boolean failed = random.nextDouble() < profile.errorRate();
+        Mono<Void> answer = Mono.defer(() -> {
+            if (failed) {
+                errors.incrementAndGet();
+                return response.status(HttpResponseStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                        .sendString(Mono.just("{\"error\":{\"code\":9999,\"message\":\"Internal application error.\"}}"))
+                        .then();
+            }
+            return response.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                    .sendString(Mono.just(payload.replace(FIXTURE_NAME, "\"name\":\"" + city + "\"")))
+                    .then();
+        });
+        return delay == 0 ? answer : Mono.delay(Duration.ofNanos(delay)).then(answer);
+    }
+}
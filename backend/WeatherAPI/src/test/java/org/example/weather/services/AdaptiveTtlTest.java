@@ -0,0 +1,169 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.LocationKeyResolver;
+import org.example.weather.models.CurrentWeather;
+import org.example.weather.models.Location;
+import org.example.weather.models.WeatherData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the TTL chosen from the observation cadence and popularity of a location, and compares the upstream calls
+ * and served data age of adaptive and fixed TTLs over a simulated day.
+ */
+public class AdaptiveTtlTest {
+
+    private static final long START = Instant.parse("2024-07-30T00:00:00Z").toEpochMilli();
+
+    private static final long OBSERVATION_INTERVAL = Duration.ofMinutes(15).toMillis();
+
+    private CityPopularity popularity;
+
+    private AdaptiveTtl adaptiveTtl;
+
+    @BeforeEach
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        popularity = new CityPopularity();
+        popularity.meterRegistry = meterRegistry;
+        popularity.width = 1024;
+        popularity.depth = 4;
+        popularity.topK = 10;
+        popularity.decayInterval = Duration.ofHours(1);
+        popularity.init();
+
+        adaptiveTtl = new AdaptiveTtl();
+        adaptiveTtl.keyResolver = new LocationKeyResolver();
+        adaptiveTtl.popularity = popularity;
+        adaptiveTtl.meterRegistry = meterRegistry;
+        adaptiveTtl.enabled = true;
+        adaptiveTtl.minTtl = Duration.ofMinutes(1);
+        adaptiveTtl.maxTtl = Duration.ofMinutes(60);
+        adaptiveTtl.defaultInterval = Duration.ofMinutes(15);
+        adaptiveTtl.slack = Duration.ofMinutes(1);
+        adaptiveTtl.popularRequests = 10;
+        adaptiveTtl.maxSkippedUpdates = 2;
+        adaptiveTtl.maxLocations = 1000;
+        adaptiveTtl.init();
+    }
+
+    @Test
+    void testPopularEntryIsFreshUntilTheNextObservation() {
+        request("london||", 10);
+        at(START);
+
+        assertEquals(Duration.ofMinutes(11), adaptiveTtl.freshTtl(data("London", START - Duration.ofMinutes(5).toMillis())));
+        assertEquals(Duration.ofMinutes(1), adaptiveTtl.freshTtl(data("London", START - Duration.ofMinutes(20).toMillis())));
+        assertEquals(Duration.ofMinutes(15), adaptiveTtl.freshTtl(data("London", START - Duration.ofHours(3).toMillis())));
+    }
+
+    @Test
+    void testColdEntrySkipsObservations() {
+        request("oslo||", 1);
+        at(START);
+
+        assertEquals(Duration.ofMinutes(41), adaptiveTtl.freshTtl(data("Oslo", START - Duration.ofMinutes(5).toMillis())));
+
+        CachedWeather entry = adaptiveTtl.newEntry(data("Oslo", START - Duration.ofMinutes(5).toMillis()),
+                Duration.ofMinutes(15), Duration.ofMinutes(60), 2);
+        assertTrue(entry.getFreshTtl().compareTo(Duration.ofMinutes(81)) > 0);
+        assertTrue(entry.getRemainingTtl().compareTo(entry.getFreshTtl().plusMinutes(89)) > 0);
+    }
+
+    @Test
+    void testIntervalIsLearnedAcrossSkippedObservations() {
+        long observedAt = START;
+        for (int i = 0; i < 40; i++) {
+            observedAt += Duration.ofMinutes(i % 3 == 0 ? 20 : 10).toMillis();
+            at(observedAt);
+            adaptiveTtl.freshTtl(data("Paris", observedAt));
+        }
+
+        Duration interval = adaptiveTtl.getInterval("paris||");
+        assertTrue(interval.compareTo(Duration.ofMinutes(9)) > 0 && interval.compareTo(Duration.ofMinutes(11)) < 0,
+                interval.toString());
+    }
+
+    @Test
+    void testAdaptiveTtlServesFresherDataAndCallsLessForColdCities() {
+        Simulation popularFixed = simulate("Rome", Duration.ofMinutes(1), false);
+        Simulation popularAdaptive = simulate("Madrid", Duration.ofMinutes(1), true);
+        Simulation coldFixed = simulate("Lisbon", Duration.ofMinutes(20), false);
+        Simulation coldAdaptive = simulate("Porto", Duration.ofMinutes(20), true);
+
+        assertTrue(popularAdaptive.maxAge < popularFixed.maxAge, popularAdaptive + " vs " + popularFixed);
+        assertTrue(popularAdaptive.calls <= popularFixed.calls, popularAdaptive + " vs " + popularFixed);
+        assertTrue(coldAdaptive.calls < coldFixed.calls * 0.6, coldAdaptive + " vs " + coldFixed);
+        assertTrue(coldAdaptive.maxAge <= Duration.ofMinutes(62).toMillis(), coldAdaptive.toString());
+    }
+
+    /**
+     * Requests a city at a fixed rate for a day while the weather API publishes an observation every 15 minutes, 30
+     * seconds after taking it, and counts the calls made and the age of the observations served. The first hour only
+     * warms up the popularity of the city and is not counted.
+     */
+    private Simulation simulate(String city, Duration requestInterval, boolean adaptive) {
+        adaptiveTtl.enabled = adaptive;
+        Simulation simulation = new Simulation();
+        long observedAt = 0;
+        long softExpiresAt = 0;
+        long nextDecay = START;
+        for (long now = START - Duration.ofHours(1).toMillis(); now < START + Duration.ofDays(1).toMillis();
+             now += requestInterval.toMillis()) {
+            while (now >= nextDecay) {
+                popularity.decay();
+                nextDecay += Duration.ofMinutes(10).toMillis();
+            }
+            popularity.record(city.toLowerCase() + "||", city.toLowerCase());
+            at(now);
+            if (now >= softExpiresAt) {
+                simulation.calls += now >= START ? 1 : 0;
+                long published = now - Duration.ofSeconds(30).toMillis();
+                observedAt = published - Math.floorMod(published, OBSERVATION_INTERVAL);
+                Duration fresh = adaptive ? adaptiveTtl.freshTtl(data(city, observedAt)) : Duration.ofMinutes(15);
+                softExpiresAt = now + fresh.toMillis();
+            }
+            if (now >= START) {
+                simulation.maxAge = Math.max(simulation.maxAge, now - observedAt);
+            }
+        }
+        return simulation;
+    }
+
+    private static final class Simulation {
+
+        private int calls;
+
+        private long maxAge;
+
+        @Override
+        public String toString() {
+            return calls + " calls, max age " + Duration.ofMillis(maxAge);
+        }
+    }
+
+    private void request(String key, int times) {
+        for (int i = 0; i < times; i++) {
+            popularity.record(key, key);
+        }
+    }
+
+    private void at(long millis) {
+        adaptiveTtl.clock = Clock.fixed(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    private static WeatherData data(String city, long observedAt) {
+        return new WeatherData(Location.builder().name(city).build(),
+                CurrentWeather.builder().lastUpdatedEpoch(observedAt / 1000).build());
+    }
+}
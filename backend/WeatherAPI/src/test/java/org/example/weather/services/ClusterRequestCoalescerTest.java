@@ -0,0 +1,126 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.WeatherCache;
+import org.example.weather.loadtest.RedisStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that a lease is only released with the marker of its entry once the entry is in Redis, and deleted if the
+ * entry could not be written or its holder cancelled.
+ */
+public class ClusterRequestCoalescerTest {
+
+    private RedisStub redis;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private ReactiveStringRedisTemplate stringRedisTemplate;
+
+    private ClusterRequestCoalescer coalescer;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        redis = RedisStub.start();
+        connectionFactory = new LettuceConnectionFactory("127.0.0.1", redis.getPort());
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        stringRedisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+
+        WeatherCache weatherCache = mock(WeatherCache.class);
+        when(weatherCache.lookupShared(anyString())).thenReturn(Mono.empty());
+
+        coalescer = new ClusterRequestCoalescer();
+        coalescer.stringRedisTemplate = stringRedisTemplate;
+        coalescer.weatherCache = weatherCache;
+        coalescer.meterRegistry = new SimpleMeterRegistry();
+        coalescer.enabled = true;
+        coalescer.leaseTtl = Duration.ofSeconds(10);
+        coalescer.resultTtl = Duration.ofSeconds(10);
+        coalescer.pollInterval = Duration.ofMillis(20);
+        coalescer.maxWait = Duration.ofSeconds(15);
+        coalescer.init();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Test
+    void testMarkerIsPublishedOnceTheEntryIsWritten() {
+        CachedWeather entry = new CachedWeather();
+        Sinks.Empty<Void> written = Sinks.empty();
+
+        CachedWeather fetched = coalescer.execute("london", Duration.ZERO, () -> Mono.just(
+                new ClusterRequestCoalescer.Fetched(entry, "london", written.asMono()))).block();
+
+        assertSame(entry, fetched);
+        String lease = lease("london");
+        assertNotNull(lease);
+        assertFalse(lease.startsWith(ClusterRequestCoalescer.DONE_PREFIX), lease);
+
+        written.tryEmitEmpty();
+
+        assertEquals(ClusterRequestCoalescer.DONE_PREFIX + "london", awaitLeaseChange("london", lease));
+    }
+
+    @Test
+    void testLeaseIsDeletedIfTheWriteFails() {
+        Sinks.Empty<Void> written = Sinks.empty();
+
+        coalescer.execute("paris", Duration.ZERO, () -> Mono.just(
+                new ClusterRequestCoalescer.Fetched(new CachedWeather(), "paris", written.asMono()))).block();
+        String lease = lease("paris");
+        written.tryEmitError(new IllegalStateException("Write to Redis failed"));
+
+        assertNull(awaitLeaseChange("paris", lease));
+    }
+
+    @Test
+    void testLeaseIsDeletedIfTheHolderCancels() {
+        Sinks.One<ClusterRequestCoalescer.Fetched> fetched = Sinks.one();
+        Disposable holder = coalescer.execute("rome", Duration.ZERO, fetched::asMono).subscribe();
+        String lease = awaitLeaseChange("rome", null);
+        assertNotNull(lease);
+
+        holder.dispose();
+
+        assertNull(awaitLeaseChange("rome", lease));
+    }
+
+    private String lease(String key) {
+        return stringRedisTemplate.opsForValue().get(ClusterRequestCoalescer.KEY_PREFIX + key).block();
+    }
+
+    private String awaitLeaseChange(String key, String held) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        String lease = lease(key);
+        while (Objects.equals(held, lease) && System.nanoTime() - deadline < 0) {
+            Thread.onSpinWait();
+            lease = lease(key);
+        }
+        return lease;
+    }
+}
@@ -0,0 +1,148 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.exceptions.UpstreamUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the guarded upstream call against a local stub that can be switched between healthy, failing and slow.
+ */
+public class UpstreamGuardTest {
+
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+
+    private final AtomicReference<HttpStatus> upstreamStatus = new AtomicReference<>(HttpStatus.OK);
+
+    private final AtomicLong upstreamDelayMillis = new AtomicLong();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private DisposableServer upstream;
+
+    private WebClient webClient;
+
+    private UpstreamGuard upstreamGuard;
+
+    @BeforeEach
+    public void setUp() {
+        upstream = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle((request, response) -> {
+                    upstreamRequests.incrementAndGet();
+                    return Mono.delay(Duration.ofMillis(upstreamDelayMillis.get()))
+                            .then(response.status(upstreamStatus.get().value()).sendString(Mono.just("{}")).then());
+                })
+                .bindNow();
+        webClient = WebClient.builder().baseUrl("http://127.0.0.1:" + upstream.port()).build();
+
+        meterRegistry = new SimpleMeterRegistry();
+        upstreamGuard = new UpstreamGuard();
+        upstreamGuard.meterRegistry = meterRegistry;
+        upstreamGuard.initialLimit = 8;
+        upstreamGuard.minLimit = 2;
+        upstreamGuard.maxLimit = 64;
+        upstreamGuard.backoffRatio = 0.5;
+        upstreamGuard.latencyThreshold = Duration.ofMillis(100);
+        upstreamGuard.windowSize = 20;
+        upstreamGuard.minimumCalls = 10;
+        upstreamGuard.failureRateThreshold = 0.5;
+        upstreamGuard.slowCallRateThreshold = 1.0;
+        upstreamGuard.slowCallDuration = Duration.ofSeconds(10);
+        upstreamGuard.openWait = Duration.ofMillis(200);
+        upstreamGuard.halfOpenCalls = 3;
+        upstreamGuard.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        upstream.disposeNow();
+    }
+
+    @Test
+    void testBreakerOpensOnFailuresAndStopsCallingUpstream() {
+        upstreamStatus.set(HttpStatus.INTERNAL_SERVER_ERROR);
+
+        List<Throwable> errors = callUpstream(15, 1);
+
+        assertEquals(15, errors.size());
+        assertEquals(10, upstreamRequests.get());
+        assertEquals(UpstreamCircuitBreaker.State.OPEN, upstreamGuard.getCircuitBreaker().getState());
+        assertTrue(errors.get(14) instanceof UpstreamUnavailableException);
+        assertEquals(5.0, meterRegistry.get("weather_upstream_rejected").tag("reason", "circuit_open").counter().count());
+        assertEquals(1.0, meterRegistry.get("weather_upstream_circuit_state").gauge().value());
+    }
+
+    @Test
+    void testBreakerClosesAfterHealthyTrialCalls() throws InterruptedException {
+        upstreamStatus.set(HttpStatus.BAD_GATEWAY);
+        callUpstream(10, 1);
+        assertEquals(UpstreamCircuitBreaker.State.OPEN, upstreamGuard.getCircuitBreaker().getState());
+
+        upstreamStatus.set(HttpStatus.OK);
+        Thread.sleep(250);
+        List<Throwable> errors = callUpstream(3, 1);
+
+        assertTrue(errors.isEmpty());
+        assertEquals(UpstreamCircuitBreaker.State.CLOSED, upstreamGuard.getCircuitBreaker().getState());
+        assertEquals(13, upstreamRequests.get());
+    }
+
+    @Test
+    void testSlowUpstreamLowersLimitAndRejectsExcessCalls() {
+        upstreamDelayMillis.set(300);
+
+        List<Throwable> errors = callUpstream(40, 40);
+
+        assertFalse(errors.isEmpty());
+        assertTrue(errors.stream().allMatch(e -> e instanceof UpstreamUnavailableException));
+        assertEquals(8, upstreamRequests.get());
+        assertEquals(2, upstreamGuard.getLimiter().getLimit());
+        assertEquals(0, upstreamGuard.getLimiter().getInFlight());
+    }
+
+    @Test
+    void testClientErrorsDoNotCountAsUpstreamFailures() {
+        upstreamStatus.set(HttpStatus.BAD_REQUEST);
+
+        callUpstream(15, 1);
+
+        assertEquals(15, upstreamRequests.get());
+        assertEquals(UpstreamCircuitBreaker.State.CLOSED, upstreamGuard.getCircuitBreaker().getState());
+        assertFalse(UpstreamGuard.isUpstreamFailure(new HttpClientErrorException(HttpStatus.BAD_REQUEST)));
+        assertTrue(UpstreamGuard.isUpstreamFailure(new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS)));
+    }
+
+    private List<Throwable> callUpstream(int calls, int concurrency) {
+        return Flux.range(0, calls)
+                .flatMap(i -> upstreamGuard.protect(webClient.get()
+                                .uri("/current.json")
+                                .retrieve()
+                                .onStatus(status -> status.is4xxClientError(), response ->
+                                        Mono.error(new HttpClientErrorException(response.statusCode())))
+                                .bodyToMono(String.class))
+                        .then(Mono.<Throwable>empty())
+                        .onErrorResume(Mono::just), concurrency)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+    }
+}
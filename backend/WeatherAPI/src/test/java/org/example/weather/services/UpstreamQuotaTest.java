@@ -0,0 +1,148 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the usage projection and pressure levels of the quota budget at a fixed point in a 30-day month.
+ */
+public class UpstreamQuotaTest {
+
+    private static final String KEY = "weather:quota:2026-06";
+
+    @Mock
+    private ReactiveStringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private ReactiveValueOperations<String, String> valueOperations;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private UpstreamQuota quota;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(KEY)).thenReturn(Mono.just("400"));
+        when(stringRedisTemplate.expire(anyString(), any(Duration.class))).thenReturn(Mono.just(true));
+
+        meterRegistry = new SimpleMeterRegistry();
+        quota = new UpstreamQuota();
+        quota.stringRedisTemplate = stringRedisTemplate;
+        quota.meterRegistry = meterRegistry;
+        quota.monthlyLimit = 1000;
+        quota.tightRatio = 0.8;
+        quota.criticalRatio = 1.0;
+        quota.minProjectionWindow = Duration.ofHours(6);
+        quota.flushInterval = Duration.ofHours(1);
+        quota.clock = Clock.fixed(Instant.parse("2026-06-16T00:00:00Z"), ZoneOffset.UTC);
+        quota.init();
+    }
+
+    @Test
+    void testUsageIsLoadedFromRedisAndProjected() {
+        assertEquals(400, quota.getUsed());
+        assertEquals(800, quota.getProjectedUsage());
+        assertNull(quota.getProjectedExhaustion());
+        assertEquals(UpstreamQuota.Pressure.TIGHT, quota.getPressure());
+        assertEquals(1.0, meterRegistry.get("weather_upstream_quota_pressure").gauge().value());
+    }
+
+    @Test
+    void testPressureRisesWithUsage() {
+        for (int i = 0; i < 100; i++) {
+            quota.record();
+        }
+
+        assertEquals(1000, quota.getProjectedUsage());
+        assertEquals(Instant.parse("2026-07-01T00:00:00Z"), quota.getProjectedExhaustion());
+        assertEquals(UpstreamQuota.Pressure.CRITICAL, quota.getPressure());
+        assertFalse(quota.allowsRefresh());
+        assertTrue(quota.allowsCall());
+
+        for (int i = 0; i < 500; i++) {
+            quota.record();
+        }
+
+        assertEquals(UpstreamQuota.Pressure.EXHAUSTED, quota.getPressure());
+        assertFalse(quota.allowsCall());
+        assertEquals(1.0, meterRegistry.get("weather_upstream_quota_refused").tag("reason", "exhausted").counter().count());
+    }
+
+    @Test
+    void testFlushAddsPendingCallsAndKeepsThemOnFailure() {
+        quota.record();
+        quota.record();
+        when(valueOperations.increment(KEY, 2L)).thenReturn(Mono.error(new IllegalStateException("down")));
+
+        quota.flush().onErrorResume(e -> Mono.empty()).block();
+
+        assertEquals(402, quota.getUsed());
+
+        when(valueOperations.increment(KEY, 2L)).thenReturn(Mono.just(450L));
+
+        assertEquals(450L, quota.flush().block());
+        assertEquals(450, quota.getUsed());
+        verify(stringRedisTemplate, never()).expire(anyString(), any(Duration.class));
+    }
+
+    @Test
+    void testNewMonthStartsFromZero() {
+        when(valueOperations.increment(anyString(), anyLong())).thenReturn(Mono.just(1L));
+        quota.clock = Clock.fixed(Instant.parse("2026-07-01T00:00:00Z"), ZoneOffset.UTC);
+        quota.record();
+
+        assertEquals(1, quota.getUsed());
+        assertEquals(UpstreamQuota.Pressure.NORMAL, quota.getPressure());
+        assertEquals(1L, quota.flush().block());
+        verify(valueOperations).increment("weather:quota:2026-07", 1L);
+        verify(stringRedisTemplate).expire("weather:quota:2026-07", Duration.ofDays(62));
+    }
+
+    @Test
+    void testCallsNotFlushedBeforeTheMonthEndsAreAddedToThatMonth() {
+        when(valueOperations.increment(anyString(), anyLong())).thenReturn(Mono.just(403L));
+        quota.record();
+        quota.record();
+        quota.record();
+        quota.clock = Clock.fixed(Instant.parse("2026-07-01T00:00:00Z"), ZoneOffset.UTC);
+
+        assertEquals(0, quota.getUsed());
+        verify(valueOperations).increment(KEY, 3L);
+        verify(valueOperations, never()).increment(eq("weather:quota:2026-07"), anyLong());
+    }
+
+    @Test
+    void testShutdownFlushErrorIsNotThrown() {
+        quota.record();
+        when(valueOperations.increment(KEY, 1L)).thenReturn(Mono.error(new IllegalStateException("down")));
+
+        quota.destroy();
+
+        assertEquals(401, quota.getUsed());
+    }
+}
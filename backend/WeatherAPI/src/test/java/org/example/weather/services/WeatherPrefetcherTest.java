@@ -0,0 +1,183 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.WeatherCache;
+import org.example.weather.models.CurrentWeather;
+import org.example.weather.models.Location;
+import org.example.weather.models.WeatherData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the sketch finds the most requested cities and that the prefetcher refreshes only those due, within
+ * its call budget and the quota budget.
+ */
+public class WeatherPrefetcherTest {
+
+    @Mock
+    private WeatherService weatherService;
+
+    @Mock
+    private WeatherCache weatherCache;
+
+    @Mock
+    private UpstreamQuota upstreamQuota;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CityPopularity popularity;
+
+    private WeatherPrefetcher prefetcher;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        popularity = new CityPopularity();
+        popularity.meterRegistry = meterRegistry;
+        popularity.width = 1024;
+        popularity.depth = 4;
+        popularity.topK = 10;
+        popularity.decayInterval = Duration.ofHours(1);
+        popularity.init();
+
+        prefetcher = new WeatherPrefetcher();
+        prefetcher.weatherService = weatherService;
+        prefetcher.weatherCache = weatherCache;
+        prefetcher.popularity = popularity;
+        prefetcher.upstreamQuota = upstreamQuota;
+        prefetcher.meterRegistry = meterRegistry;
+        prefetcher.enabled = false;
+        prefetcher.interval = Duration.ofSeconds(30);
+        prefetcher.topN = 5;
+        prefetcher.minRequests = 3;
+        prefetcher.leadTime = Duration.ofMinutes(2);
+        prefetcher.maxCalls = 1;
+        prefetcher.concurrency = 4;
+        prefetcher.init();
+
+        when(upstreamQuota.allowsRefresh()).thenReturn(true);
+        when(weatherCache.lookup(anyString())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void testSketchKeepsTheHeaviestKeys() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(256, 4, 3);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("cold-" + i, "cold " + i);
+            if (i % 2 == 0) {
+                sketch.add("london", "London");
+            }
+            if (i % 4 == 0) {
+                sketch.add("paris", "Paris");
+            }
+            if (i % 8 == 0) {
+                sketch.add("rome", "Rome");
+            }
+        }
+
+        List<HeavyHitterSketch.HeavyHitter> topK = sketch.topK();
+        assertEquals(List.of("london", "paris", "rome"), topK.stream().map(HeavyHitterSketch.HeavyHitter::key).toList());
+        assertEquals("London", topK.get(0).query());
+        assertTrue(sketch.estimate("london") >= 500);
+        assertTrue(sketch.estimate("rome") >= 125);
+        assertEquals(2048 * 4, sketch.sizeInBytes());
+
+        sketch.decay();
+        assertTrue(sketch.estimate("london") >= 250 && sketch.estimate("london") < 500);
+    }
+
+    @Test
+    void testPopularCitiesDueSoonArePrefetchedWithinBudget() {
+        request("london", 10);
+        request("paris", 8);
+        request("rome", 5);
+        request("oslo", 1);
+        when(weatherCache.lookup("london")).thenReturn(Mono.just(entry("London", Duration.ofMinutes(1))));
+        when(weatherCache.lookup("paris")).thenReturn(Mono.just(entry("Paris", Duration.ofSeconds(30))));
+        when(weatherCache.lookup("rome")).thenReturn(Mono.just(entry("Rome", Duration.ofMinutes(10))));
+        CachedWeather refreshed = entry("London", Duration.ofMinutes(15));
+        when(weatherService.prefetch("london", "london", Duration.ofMinutes(2))).thenReturn(Mono.just(refreshed));
+
+        assertEquals(1, prefetcher.prefetch().block());
+
+        verify(weatherService).prefetch("london", "london", Duration.ofMinutes(2));
+        verify(weatherService, never()).prefetch("paris", "paris", Duration.ofMinutes(2));
+        verify(weatherService, never()).prefetch("rome", "rome", Duration.ofMinutes(2));
+        verify(weatherCache, never()).lookup("oslo");
+        assertEquals(1.0, meterRegistry.get("weather_prefetch_calls").tag("result", "success").counter().count());
+        assertEquals(1.0, meterRegistry.get("weather_prefetch_deferred").counter().count());
+
+        popularity.onServed("london", entry("London", Duration.ofMinutes(15)));
+        assertEquals(0.0, popularity.getHitRate());
+        popularity.onServed("london", refreshed);
+        popularity.onServed("london", refreshed);
+        assertEquals(1, popularity.getHitCount());
+        assertEquals(1.0, meterRegistry.get("weather_prefetch_hit_ratio").gauge().value());
+    }
+
+    @Test
+    void testNothingIsPrefetchedWhileQuotaRefusesRefreshes() {
+        request("london", 10);
+        when(weatherCache.lookup("london")).thenReturn(Mono.just(entry("London", Duration.ofSeconds(10))));
+        when(upstreamQuota.allowsRefresh()).thenReturn(false);
+
+        assertEquals(0, prefetcher.prefetch().block());
+
+        verify(weatherService, never()).prefetch(anyString(), anyString(), any(Duration.class));
+        assertEquals(1.0, meterRegistry.get("weather_prefetch_skipped_rounds").counter().count());
+    }
+
+    @Test
+    void testCityWithALateObservationIsNotPrefetchedEveryRound() {
+        request("london", 10);
+        CachedWeather late = entry("London", Duration.ofMinutes(1), 1_700_000_000L);
+        when(weatherCache.lookup("london")).thenReturn(Mono.just(late));
+        when(weatherService.prefetch("london", "london", Duration.ofMinutes(2)))
+                .thenReturn(Mono.just(entry("London", Duration.ofMinutes(1), 1_700_000_000L)));
+
+        assertEquals(1, prefetcher.prefetch().block());
+        assertEquals(0, prefetcher.prefetch().block());
+        assertEquals(0, prefetcher.prefetch().block());
+        verify(weatherService, times(1)).prefetch("london", "london", Duration.ofMinutes(2));
+
+        CachedWeather observedAgain = entry("London", Duration.ofMinutes(1), 1_700_000_900L);
+        when(weatherCache.lookup("london")).thenReturn(Mono.just(observedAgain));
+
+        assertEquals(1, prefetcher.prefetch().block());
+        verify(weatherService, times(2)).prefetch("london", "london", Duration.ofMinutes(2));
+    }
+
+    private void request(String city, int times) {
+        for (int i = 0; i < times; i++) {
+            popularity.record(city, city);
+        }
+    }
+
+    private static CachedWeather entry(String city, Duration freshFor) {
+        WeatherData weatherData = new WeatherData(Location.builder().name(city).build(), null);
+        return CachedWeather.of(weatherData, freshFor, freshFor.plusMinutes(45));
+    }
+
+    private static CachedWeather entry(String city, Duration freshFor, long lastUpdatedEpoch) {
+        WeatherData weatherData = new WeatherData(Location.builder().name(city).build(),
+                CurrentWeather.builder().lastUpdatedEpoch(lastUpdatedEpoch).build());
+        return CachedWeather.of(weatherData, freshFor, freshFor.plusMinutes(45));
+    }
+}
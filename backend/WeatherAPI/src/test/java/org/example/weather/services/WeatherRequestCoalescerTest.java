@@ -0,0 +1,102 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.cache.CachedWeather;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class WeatherRequestCoalescerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private WeatherRequestCoalescer coalescer;
+
+    private AtomicInteger upstreamCalls;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new WeatherRequestCoalescer();
+        coalescer.meterRegistry = meterRegistry;
+        coalescer.init();
+        upstreamCalls = new AtomicInteger();
+    }
+
+    @Test
+    void testConcurrentCallersShareOneUpstreamCall() {
+        Sinks.One<CachedWeather> upstream = Sinks.one();
+        CachedWeather entry = new CachedWeather();
+
+        List<CompletableFuture<CachedWeather>> callers = subscribe("London", counting(upstream::asMono), 5);
+        assertEquals(1, coalescer.inFlightCount());
+
+        upstream.tryEmitValue(entry);
+
+        callers.forEach(caller -> assertSame(entry, caller.join()));
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(0, coalescer.inFlightCount());
+        assertEquals(1.0, meterRegistry.get("weather_upstream_calls").tag("call", "originating").counter().count());
+        assertEquals(4.0, meterRegistry.get("weather_upstream_calls").tag("call", "coalesced").counter().count());
+    }
+
+    @Test
+    void testErrorIsPassedToEveryWaiter() {
+        Sinks.One<CachedWeather> upstream = Sinks.one();
+        IllegalStateException failure = new IllegalStateException("upstream failed");
+
+        List<CompletableFuture<CachedWeather>> callers = subscribe("London", counting(upstream::asMono), 3);
+        upstream.tryEmitError(failure);
+
+        callers.forEach(caller -> assertSame(failure, assertThrows(CompletionException.class, caller::join).getCause()));
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    @Test
+    void testNextCallAfterCompletionStartsNewUpstreamCall() {
+        coalescer.execute("London", counting(() -> Mono.just(new CachedWeather()))).block();
+        coalescer.execute("London", counting(() -> Mono.just(new CachedWeather()))).block();
+
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void testDifferentKeysAreNotCoalesced() {
+        Sinks.One<CachedWeather> london = Sinks.one();
+        Sinks.One<CachedWeather> paris = Sinks.one();
+
+        subscribe("London", counting(london::asMono), 1);
+        subscribe("Paris", counting(paris::asMono), 1);
+
+        assertEquals(2, upstreamCalls.get());
+        assertEquals(2, coalescer.inFlightCount());
+    }
+
+    private Supplier<Mono<CachedWeather>> counting(Supplier<Mono<CachedWeather>> call) {
+        return () -> {
+            upstreamCalls.incrementAndGet();
+            return call.get();
+        };
+    }
+
+    private List<CompletableFuture<CachedWeather>> subscribe(String key, Supplier<Mono<CachedWeather>> loader, int callers) {
+        List<CompletableFuture<CachedWeather>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            futures.add(coalescer.execute(key, loader).toFuture());
+        }
+        return futures;
+    }
+}
@@ -0,0 +1,465 @@
+package org.example.weather.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weather.cache.CachePolicy;
+import org.example.weather.cache.CachedWeather;
+import org.example.weather.cache.LocalWeatherCache;
+import org.example.weather.cache.LocationKeyResolver;
+import org.example.weather.cache.RedisPipeline;
+import org.example.weather.cache.WeatherCache;
+import org.example.weather.cache.WriteBehindQueue;
+import org.example.weather.models.Location;
+import org.example.weather.models.WeatherBatchItem;
+import org.example.weather.models.WeatherData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisCallback;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Counts the Redis commands and upstream calls issued per request for each {@link CachePolicy}.
+ */
+public class WeatherServiceTest {
+
+    private static final String CANONICAL_KEY = "london|city of london,greater london|united kingdom";
+
+    @Mock
+    private ReactiveRedisTemplate<String, CachedWeather> redisTemplate;
+
+    @Mock
+    private ReactiveValueOperations<String, CachedWeather> valueOperations;
+
+    @Mock
+    private ReactiveStringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private ReactiveValueOperations<String, String> stringOperations;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private LocalWeatherCache localCache;
+
+    private UpstreamQuota upstreamQuota;
+
+    private WriteBehindQueue writeBehind;
+
+    private WeatherService weatherService;
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    private final AtomicReference<URI> lastUpstreamUrl = new AtomicReference<>();
+
+    private final AtomicBoolean upstreamDown = new AtomicBoolean();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        String body = new ClassPathResource("fixtures/current-london.json").getContentAsString(StandardCharsets.UTF_8);
+
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(anyString())).thenReturn(Mono.empty());
+        when(valueOperations.set(anyString(), any(CachedWeather.class), any(Duration.class))).thenReturn(Mono.just(true));
+        when(redisTemplate.getSerializationContext()).thenReturn(RedisSerializationContext
+                .<String, CachedWeather>newSerializationContext(new StringRedisSerializer())
+                .value(new Jackson2JsonRedisSerializer<>(CachedWeather.class))
+                .build());
+        when(redisTemplate.execute(anyCallback())).thenReturn(Flux.empty());
+
+        localCache = new LocalWeatherCache();
+        ReflectionTestUtils.setField(localCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(localCache, "enabled", false);
+        ReflectionTestUtils.setField(localCache, "maximumWeight", 1_000_000L);
+        ReflectionTestUtils.setField(localCache, "maxTtl", Duration.ofMinutes(5));
+        ReflectionTestUtils.invokeMethod(localCache, "init");
+
+        RedisPipeline pipeline = new RedisPipeline();
+        ReflectionTestUtils.setField(pipeline, "enabled", false);
+
+        WeatherCache weatherCache = new WeatherCache();
+        ReflectionTestUtils.setField(weatherCache, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(weatherCache, "pipeline", pipeline);
+        ReflectionTestUtils.setField(weatherCache, "localCache", localCache);
+        ReflectionTestUtils.setField(weatherCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(weatherCache, "graceTtl", Duration.ofHours(6));
+        ReflectionTestUtils.invokeMethod(weatherCache, "initCache");
+
+        when(stringRedisTemplate.opsForValue()).thenReturn(stringOperations);
+        when(stringRedisTemplate.scan(any(ScanOptions.class))).thenReturn(Flux.empty());
+        when(stringOperations.set(anyString(), anyString(), any(Duration.class))).thenReturn(Mono.just(true));
+        LocationKeyResolver keyResolver = new LocationKeyResolver();
+        ReflectionTestUtils.setField(keyResolver, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(keyResolver, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(keyResolver, "maxSize", 1000);
+        ReflectionTestUtils.setField(keyResolver, "ttl", Duration.ofDays(30));
+        ReflectionTestUtils.invokeMethod(keyResolver, "init");
+
+        WeatherRequestCoalescer coalescer = new WeatherRequestCoalescer();
+        coalescer.meterRegistry = meterRegistry;
+        coalescer.init();
+
+        ClusterRequestCoalescer clusterCoalescer = new ClusterRequestCoalescer();
+        clusterCoalescer.enabled = false;
+
+        writeBehind = new WriteBehindQueue();
+        ReflectionTestUtils.setField(writeBehind, "weatherCache", weatherCache);
+        ReflectionTestUtils.setField(writeBehind, "localCache", localCache);
+        ReflectionTestUtils.setField(writeBehind, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(writeBehind, "capacity", 100);
+        ReflectionTestUtils.setField(writeBehind, "batchSize", 64);
+        ReflectionTestUtils.setField(writeBehind, "flushInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(writeBehind, "overflow", WriteBehindQueue.Overflow.DROP_OLDEST);
+        ReflectionTestUtils.invokeMethod(writeBehind, "init");
+
+        WebClient webClient = WebClient.builder()
+                .baseUrl("https://api.weatherapi.com/v1")
+                .exchangeFunction(request -> {
+                    upstreamCalls.incrementAndGet();
+                    lastUpstreamUrl.set(request.url());
+                    if (upstreamDown.get()) {
+                        return Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+                    }
+                    if (request.url().getQuery().contains("q=nowhere")) {
+                        return Mono.just(ClientResponse.create(HttpStatus.BAD_REQUEST).build());
+                    }
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(body)
+                            .build());
+                })
+                .build();
+
+        UpstreamGuard upstreamGuard = new UpstreamGuard();
+        upstreamGuard.meterRegistry = meterRegistry;
+        upstreamGuard.initialLimit = 16;
+        upstreamGuard.minLimit = 2;
+        upstreamGuard.maxLimit = 128;
+        upstreamGuard.backoffRatio = 0.9;
+        upstreamGuard.latencyThreshold = Duration.ofSeconds(2);
+        upstreamGuard.windowSize = 50;
+        upstreamGuard.minimumCalls = 20;
+        upstreamGuard.failureRateThreshold = 0.5;
+        upstreamGuard.slowCallRateThreshold = 0.8;
+        upstreamGuard.slowCallDuration = Duration.ofSeconds(3);
+        upstreamGuard.openWait = Duration.ofSeconds(30);
+        upstreamGuard.halfOpenCalls = 3;
+        upstreamGuard.init();
+
+        when(stringOperations.get(anyString())).thenReturn(Mono.empty());
+        upstreamQuota = new UpstreamQuota();
+        upstreamQuota.stringRedisTemplate = stringRedisTemplate;
+        upstreamQuota.meterRegistry = meterRegistry;
+        upstreamQuota.monthlyLimit = 1_000_000;
+        upstreamQuota.tightRatio = 0.8;
+        upstreamQuota.criticalRatio = 1.0;
+        upstreamQuota.minProjectionWindow = Duration.ofHours(6);
+        upstreamQuota.flushInterval = Duration.ofHours(1);
+        upstreamQuota.init();
+
+        CityPopularity popularity = new CityPopularity();
+        popularity.meterRegistry = meterRegistry;
+        popularity.width = 1024;
+        popularity.depth = 4;
+        popularity.topK = 10;
+        popularity.decayInterval = Duration.ofHours(1);
+        popularity.init();
+
+        AdaptiveTtl adaptiveTtl = new AdaptiveTtl();
+        adaptiveTtl.keyResolver = keyResolver;
+        adaptiveTtl.popularity = popularity;
+        adaptiveTtl.meterRegistry = meterRegistry;
+        adaptiveTtl.enabled = true;
+        adaptiveTtl.minTtl = Duration.ofMinutes(1);
+        adaptiveTtl.maxTtl = Duration.ofMinutes(60);
+        adaptiveTtl.defaultInterval = Duration.ofMinutes(15);
+        adaptiveTtl.slack = Duration.ofMinutes(1);
+        adaptiveTtl.popularRequests = 10;
+        adaptiveTtl.maxSkippedUpdates = 2;
+        adaptiveTtl.maxLocations = 1000;
+        adaptiveTtl.init();
+
+        weatherService = new WeatherService();
+        weatherService.setMeterRegistry(meterRegistry);
+        weatherService.setWebClient(webClient);
+        weatherService.setToken("test");
+        weatherService.setWeatherCache(weatherCache);
+        weatherService.setRequestCoalescer(coalescer);
+        weatherService.setClusterCoalescer(clusterCoalescer);
+        weatherService.setWriteBehind(writeBehind);
+        weatherService.setKeyResolver(keyResolver);
+        weatherService.setUpstreamGuard(upstreamGuard);
+        weatherService.setUpstreamQuota(upstreamQuota);
+        weatherService.setPopularity(popularity);
+        weatherService.setAdaptiveTtl(adaptiveTtl);
+        weatherService.setCachePolicy(CachePolicy.WRITE_THROUGH);
+        weatherService.setSoftTtl(Duration.ofMinutes(15));
+        weatherService.setHardTtl(Duration.ofMinutes(60));
+        weatherService.setMaxBatchSize(500);
+        weatherService.setBatchConcurrency(8);
+        weatherService.setBatchWriteSize(64);
+        weatherService.setBatchWriteWindow(Duration.ofMillis(50));
+        ReflectionTestUtils.invokeMethod(weatherService, "init");
+    }
+
+    @Test
+    void testCacheHitReadsRedisOnce() {
+        WeatherData cached = new WeatherData(Location.builder().name("London").build(), null);
+        when(valueOperations.get("london")).thenReturn(Mono.just(
+                CachedWeather.of(cached, Duration.ofMinutes(15), Duration.ofMinutes(60))));
+
+        WeatherData result = weatherService.getWeather("London").block();
+
+        assertEquals(cached, result);
+        verify(valueOperations, times(1)).get("london");
+        verify(valueOperations, never()).set(anyString(), any(CachedWeather.class), any(Duration.class));
+        assertEquals(0, upstreamCalls.get());
+    }
+
+    @Test
+    void testRequestsAreCountedAndTimedByResult() {
+        WeatherData cached = new WeatherData(Location.builder().name("Paris").build(), null);
+        when(valueOperations.get("paris")).thenReturn(Mono.just(
+                CachedWeather.of(cached, Duration.ofMinutes(15), Duration.ofMinutes(60))));
+
+        weatherService.getWeather("Paris").block();
+        weatherService.getWeather("London").block();
+        weatherService.getWeather("Nowhere").onErrorResume(e -> Mono.empty()).block();
+
+        for (String result : List.of("hit", "miss", "error")) {
+            assertEquals(1.0, meterRegistry.get("weather_requests").tag("result", result).counter().count());
+            assertEquals(1L, meterRegistry.get("weather_request_latency").tag("result", result).timer().count());
+        }
+        assertEquals(0.0, meterRegistry.get("weather_requests_in_flight").gauge().value());
+        assertEquals(1L, meterRegistry.get("weather_redis_latency").tag("command", "set").timer().count());
+        assertEquals(1L, meterRegistry.get("weather_upstream_latency").tag("outcome", "success").timer().count());
+        assertEquals(1L, meterRegistry.get("weather_upstream_latency").tag("outcome", "client_error").timer().count());
+    }
+
+    @Test
+    void testRequestCancelledBeforeItIsAnsweredIsNotCountedAsMiss() {
+        when(valueOperations.get("london")).thenReturn(Mono.never());
+
+        weatherService.getCachedWeather("London").subscribe().dispose();
+
+        assertEquals(1.0, meterRegistry.get("weather_requests").tag("result", "cancelled").counter().count());
+        assertEquals(0.0, meterRegistry.get("weather_requests").tag("result", "miss").counter().count());
+        assertEquals(0.0, meterRegistry.get("weather_requests_in_flight").gauge().value());
+        assertEquals(0, upstreamCalls.get());
+    }
+
+    @Test
+    void testCacheMissReadsOnceAndWritesOnce() {
+        WeatherData result = weatherService.getWeather("London").block();
+
+        assertEquals("London", result.getLocation().getName());
+        verify(valueOperations, times(1)).get("london");
+        verify(valueOperations, times(1)).set(eq(CANONICAL_KEY), any(CachedWeather.class), any(Duration.class));
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void testStaleEntryIsServedAndRefreshedOnce() {
+        WeatherData stale = new WeatherData(Location.builder().name("Old London").build(), null);
+        when(valueOperations.get("london")).thenReturn(Mono.just(
+                new CachedWeather(stale, System.currentTimeMillis() - 1, System.currentTimeMillis() + 60_000)));
+
+        CachedWeather result = weatherService.getCachedWeather("London").block();
+
+        assertEquals(stale, result.getData());
+        assertTrue(result.isStale());
+        assertEquals(1, upstreamCalls.get());
+        verify(valueOperations, times(1)).set(eq(CANONICAL_KEY), any(CachedWeather.class), any(Duration.class));
+        assertEquals(1.0, meterRegistry.get("weather_cache_stale_served").counter().count());
+        assertEquals(1L, meterRegistry.get("weather_cache_refresh_latency").timer().count());
+    }
+
+    @Test
+    void testExpiredEntryIsServedWhileUpstreamIsDown() {
+        WeatherData expired = new WeatherData(Location.builder().name("Last Known London").build(), null);
+        when(valueOperations.get("london")).thenReturn(Mono.just(
+                new CachedWeather(expired, System.currentTimeMillis() - 60_000, System.currentTimeMillis() - 1)));
+        upstreamDown.set(true);
+
+        CachedWeather result = weatherService.getCachedWeather("London").block();
+
+        assertEquals(expired, result.getData());
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(1.0, meterRegistry.get("weather_cache_fallback_served").counter().count());
+    }
+
+    @Test
+    void testExpiredEntryIsReplacedWhenUpstreamIsUp() {
+        WeatherData expired = new WeatherData(Location.builder().name("Last Known London").build(), null);
+        when(valueOperations.get("london")).thenReturn(Mono.just(
+                new CachedWeather(expired, System.currentTimeMillis() - 60_000, System.currentTimeMillis() - 1)));
+
+        CachedWeather result = weatherService.getCachedWeather("London").block();
+
+        assertEquals("London", result.getData().getLocation().getName());
+        assertEquals(0.0, meterRegistry.get("weather_cache_fallback_served").counter().count());
+        assertEquals(0.0, meterRegistry.get("cache.gets").tags("cache", "weather.l2", "result", "hit").counter().count());
+    }
+
+    @Test
+    void testCriticalQuotaServesExpiredEntryWithoutCallingUpstream() {
+        upstreamQuota.criticalRatio = 0.0;
+        WeatherData expired = new WeatherData(Location.builder().name("Last Known London").build(), null);
+        when(valueOperations.get("london")).thenReturn(Mono.just(
+                new CachedWeather(expired, System.currentTimeMillis() - 60_000, System.currentTimeMillis() - 1)));
+        WeatherData stale = new WeatherData(Location.builder().name("Paris").build(), null);
+        when(valueOperations.get("paris")).thenReturn(Mono.just(
+                new CachedWeather(stale, System.currentTimeMillis() - 1, System.currentTimeMillis() + 60_000)));
+
+        assertEquals(expired, weatherService.getWeather("London").block());
+        assertEquals(stale, weatherService.getWeather("Paris").block());
+
+        assertEquals(0, upstreamCalls.get());
+        assertEquals(1.0, meterRegistry.get("weather_cache_fallback_served").counter().count());
+        assertEquals(1.0, meterRegistry.get("weather_upstream_quota_refused").tag("reason", "refresh").counter().count());
+    }
+
+    @Test
+    void testTightQuotaLengthensTtlAndCountsCalls() {
+        upstreamQuota.tightRatio = 0.0;
+
+        CachedWeather result = weatherService.getCachedWeather("London").block();
+
+        assertTrue(result.getRemainingTtl().compareTo(Duration.ofMinutes(119)) > 0);
+        assertEquals(1, upstreamQuota.getUsed());
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void testLocalTierServesRepeatedHitsWithoutRedis() {
+        ReflectionTestUtils.setField(localCache, "enabled", true);
+
+        weatherService.getWeather("London").block();
+        weatherService.getWeather("London").block();
+
+        verify(valueOperations, times(1)).get("london");
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void testSpellingVariantsShareOneEntry() {
+        ReflectionTestUtils.setField(localCache, "enabled", true);
+
+        weatherService.getWeather("London").block();
+        weatherService.getWeather("  LONDON ").block();
+
+        verify(valueOperations, times(1)).get(anyString());
+        verify(valueOperations, times(1)).set(eq(CANONICAL_KEY), any(CachedWeather.class), any(Duration.class));
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(1.0, meterRegistry.get("weather_cache_alias_hits").counter().count());
+    }
+
+    @Test
+    void testUpstreamUrlIsHttpsWithEncodedCity() {
+        weatherService.getWeather("São Paulo & Co").block();
+
+        URI url = lastUpstreamUrl.get();
+        assertEquals("https", url.getScheme());
+        assertEquals("/v1/current.json", url.getPath());
+        assertEquals("key=test&q=s%C3%A3o%20paulo%20%26%20co", url.getRawQuery());
+    }
+
+    @Test
+    void testBypassNeverTouchesRedis() {
+        weatherService.setCachePolicy(CachePolicy.BYPASS);
+
+        weatherService.getWeather("London").block();
+
+        verify(redisTemplate, never()).opsForValue();
+        verifyNoInteractions(valueOperations);
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void testWriteBehindAnswersBeforeTheEntryIsWritten() {
+        weatherService.setCachePolicy(CachePolicy.WRITE_BEHIND);
+
+        WeatherData result = weatherService.getWeather("London").block();
+
+        assertEquals("London", result.getLocation().getName());
+        verify(valueOperations, never()).set(anyString(), any(CachedWeather.class), any(Duration.class));
+        verify(redisTemplate, never()).execute(anyCallback());
+        assertEquals(1, writeBehind.getDepth());
+
+        ReflectionTestUtils.<Mono<Long>>invokeMethod(writeBehind, "flush").block();
+
+        verify(redisTemplate, times(1)).execute(anyCallback());
+        assertEquals(0, writeBehind.getDepth());
+    }
+
+    @Test
+    void testBatchReadsAllKeysWithOneMultiGetAndFetchesOnlyMisses() {
+        WeatherData paris = new WeatherData(Location.builder().name("Paris").build(), null);
+        when(valueOperations.multiGet(any())).thenAnswer(invocation -> {
+            List<String> keys = List.copyOf(invocation.getArgument(0));
+            return Mono.just(keys.stream()
+                    .map(key -> key.equals("paris") ? CachedWeather.of(paris, Duration.ofMinutes(15), Duration.ofMinutes(60)) : null)
+                    .collect(Collectors.toList()));
+        });
+
+        Map<String, WeatherBatchItem> items = weatherService.getWeatherBatch(Arrays.asList("Paris", "London", "Nowhere"))
+                .collectMap(WeatherBatchItem::getCity, Function.identity())
+                .block();
+
+        assertEquals(3, items.size());
+        assertEquals(paris, items.get("Paris").getData());
+        assertEquals("London", items.get("London").getData().getLocation().getName());
+        assertNull(items.get("Nowhere").getData());
+        assertNotNull(items.get("Nowhere").getError());
+        verify(valueOperations, times(1)).multiGet(any());
+        verify(valueOperations, never()).get(anyString());
+        verify(redisTemplate, times(1)).execute(anyCallback());
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    private static ReactiveRedisCallback<Object> anyCallback() {
+        return any();
+    }
+}